@@ -0,0 +1,104 @@
+package com.crisisconnect.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.StatusEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Shared, deterministic test data for the JMH benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    static final String[] STATUSES = {"SAFE", "SAFE", "SAFE", "INJURED", "NEED_HELP", "CRITICAL", "OFFLINE"};
+
+    static {
+        // Outside Spring Boot logback defaults to DEBUG; per-update service logs would swamp the output
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    private BenchmarkFixtures() {
+    }
+
+    static ObjectMapper objectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return mapper;
+    }
+
+    // A broker-less template: every send succeeds immediately
+    static SimpMessagingTemplate discardingTemplate() {
+        return new SimpMessagingTemplate((message, timeout) -> true);
+    }
+
+    static Message message(int i) {
+        Random random = new Random(i);
+        Message message = new Message();
+        message.setId(UUID.nameUUIDFromBytes(("message-" + i).getBytes()).toString());
+        message.setSenderId("user-" + random.nextInt(500));
+        message.setSenderName("Volunteer " + random.nextInt(500));
+        message.setContent("Status report " + i + ": water and blankets needed at shelter block " + (i % 12));
+        message.setType(i % 50 == 0 ? Message.MessageType.EMERGENCY : Message.MessageType.TEXT);
+        message.setPriority(Message.MessagePriority.values()[random.nextInt(4)]);
+        message.setTimestamp(LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(i));
+        message.setLatitude(23.70 + random.nextDouble() * 0.2);
+        message.setLongitude(90.30 + random.nextDouble() * 0.2);
+        return message;
+    }
+
+    static List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(i));
+        }
+        return messages;
+    }
+
+    static StatusEntry status(int i) {
+        Random random = new Random(i);
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId("user-" + i);
+        entry.setUserName("Resident " + i);
+        entry.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+        entry.setRole("Citizen");
+        entry.setMessage("Checking in");
+        entry.setTimestamp(LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(i));
+        entry.setBatteryLevel(random.nextInt(101));
+        entry.setHasInternet(random.nextBoolean());
+        entry.setLatitude(23.70 + random.nextDouble() * 0.2);
+        entry.setLongitude(90.30 + random.nextDouble() * 0.2);
+        return entry;
+    }
+
+    static Path tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix);
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
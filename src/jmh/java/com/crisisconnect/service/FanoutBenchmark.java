@@ -0,0 +1,154 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of broadcasting one message to N socket connections plus the STOMP broker: the old path that
+ * serialized once per recipient versus the shared {@link EncodedMessage}. Run with {@code -prof gc} to
+ * see bytes allocated per message ({@code gc.alloc.rate.norm}); the {@code serializations} counter shows
+ * Jackson encodes per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanoutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int connections;
+
+    private ObjectMapper objectMapper;
+    private MappingJackson2MessageConverter stompConverter;
+    private List<ClientConnection> sinks;
+    private Message message;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Serializations {
+        public long serializations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serializations = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        stompConverter = new MappingJackson2MessageConverter();
+        stompConverter.setObjectMapper(objectMapper);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConnectionHandler handler = new DiscardingHandler(registry);
+        sinks = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            sinks.add(new DiscardingConnection(handler));
+        }
+
+        message = BenchmarkFixtures.message(7);
+    }
+
+    @Benchmark
+    public void perRecipientSerialization(Serializations counter, Blackhole bh) throws Exception {
+        // convertAndSend("/topic/messages", message)
+        bh.consume(stompConverter.toMessage(message, null));
+        counter.serializations++;
+
+        // ClientConnection.sendMessage: writeValueAsString + println for every device
+        for (ClientConnection sink : sinks) {
+            String json = objectMapper.writeValueAsString(message);
+            sink.send(OutboundFrame.of((json + "\n").getBytes(StandardCharsets.UTF_8), message));
+            counter.serializations++;
+        }
+    }
+
+    @Benchmark
+    public void serializeOnce(Serializations counter, Blackhole bh) throws Exception {
+        EncodedMessage encoded = new EncodedMessage(message);
+        OutboundFrame frame = encoded.frame(objectMapper);
+        counter.serializations++;
+
+        bh.consume(frame.bytes());
+        for (ClientConnection sink : sinks) {
+            sink.send(frame);
+        }
+    }
+
+    private static final class DiscardingHandler implements ConnectionHandler {
+        private final SimpleMeterRegistry registry;
+
+        DiscardingHandler(SimpleMeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public OutboundQueue newOutboundQueue() {
+            return new OutboundQueue(1024, OutboundQueue.OverflowPolicy.DROP_OLDEST,
+                    registry.timer("lag"), registry.counter("dropped"));
+        }
+
+        @Override
+        public void onOpen(ClientConnection connection) {
+        }
+
+        @Override
+        public void onLine(ClientConnection connection, String line) {
+        }
+
+        @Override
+        public void onMessage(ClientConnection connection, Message message) {
+        }
+
+        @Override
+        public void onSendFailure(ClientConnection connection, SendFailure failure) {
+        }
+
+        @Override
+        public void onClose(ClientConnection connection) {
+        }
+    }
+
+    private static final class DiscardingConnection extends ClientConnection {
+
+        DiscardingConnection(ConnectionHandler handler) {
+            super(UUID.randomUUID().toString(), InetAddress.getLoopbackAddress(), handler);
+        }
+
+        @Override
+        protected void framesQueued() {
+            // Stand-in for the writer: take the frame straight off the queue
+            outbound().poll();
+        }
+
+        @Override
+        protected void closeTransport() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-history save and load through {@link FileStorageService} in each storage mode. Mapped loads only map
+ * the files; the {@code loadAndRead} variant also decodes the whole list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int messageCount;
+
+    @Param({"json", "journal", "mapped"})
+    private String mode;
+
+    private Path dataDir;
+    private List<Message> messages;
+    private FileStorageService writer;
+    private FileStorageService reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = BenchmarkFixtures.tempDir("crisis-storage-bench");
+        messages = BenchmarkFixtures.messages(messageCount);
+
+        // Seed the history that loadMessages() reads back
+        FileStorageService seed = newService();
+        seed.loadMessages();
+        seed.appendMessages(messages);
+        seed.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void openServices() {
+        writer = newService();
+        writer.loadMessages();
+        reader = newService();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeServices() {
+        writer.close();
+        reader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public void saveMessages() {
+        if ("json".equals(mode)) {
+            writer.saveMessages(messages);
+        } else {
+            writer.appendMessages(messages);
+        }
+    }
+
+    @Benchmark
+    public List<Message> loadMessages() {
+        return reader.loadMessages();
+    }
+
+    @Benchmark
+    public void loadAndRead(Blackhole bh) {
+        for (Message message : reader.loadMessages()) {
+            bh.consume(message);
+        }
+    }
+
+    private FileStorageService newService() {
+        return new FileStorageService(BenchmarkFixtures.objectMapper(), new SimpleMeterRegistry(),
+                dataDir.toString(), mode, 64 * 1024 * 1024, false, false, messageCount);
+    }
+}
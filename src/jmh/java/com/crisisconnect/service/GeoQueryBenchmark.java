@@ -0,0 +1,79 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geo queries on the status board through the grid index, against a full scan of the board (what a
+ * coordinator did client-side from {@code /api/status}). Users are spread over a ~22 km square city area.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoQueryBenchmark {
+
+    private static final Set<String> NEEDS_HELP = Set.of("NEED_HELP", "CRITICAL");
+
+    @Param({"10000", "100000"})
+    private int users;
+
+    @Param({"2"})
+    private double radiusKm;
+
+    private StatusService statusService;
+    private double latitude;
+    private double longitude;
+
+    @Setup
+    public void setUp() {
+        statusService = new StatusService(BenchmarkFixtures.discardingTemplate(), new SimpleMeterRegistry(), 0.01, 0, true);
+        for (int i = 0; i < users; i++) {
+            statusService.updateStatus(BenchmarkFixtures.status(i));
+        }
+        latitude = 23.80;
+        longitude = 90.40;
+    }
+
+    @Benchmark
+    public List<StatusEntry> radiusNeedingHelp() {
+        return statusService.findWithinRadius(latitude, longitude, radiusKm, NEEDS_HELP);
+    }
+
+    @Benchmark
+    public List<StatusEntry> boundingBox() {
+        return statusService.findInArea(latitude - 0.01, longitude - 0.01, latitude + 0.01, longitude + 0.01, null);
+    }
+
+    @Benchmark
+    public List<StatusEntry> nearest10() {
+        return statusService.findNearest(latitude, longitude, 10, null);
+    }
+
+    @Benchmark
+    public List<StatusEntry> radiusNeedingHelpFullScan() {
+        return statusService.getAllStatuses().stream()
+                .filter(entry -> entry.getLatitude() != null && NEEDS_HELP.contains(entry.getStatus()))
+                .filter(entry -> SpatialGridIndex.distanceKm(latitude, longitude, entry) <= radiusKm)
+                .sorted(Comparator.comparingDouble(entry -> SpatialGridIndex.distanceKm(latitude, longitude, entry)))
+                .toList();
+    }
+}
@@ -0,0 +1,95 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start with a long stored history: open the storage, restore the history buffer (as
+ * {@code MessageBroadcastService.init} does) and serve the first page of recent messages. JSON and journal
+ * mode decode everything up front; mapped mode should stay flat as the archive grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class HistoryStartupBenchmark {
+
+    private static final int CHUNK = 10_000;
+    private static final int FIRST_PAGE = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    private int archiveSize;
+
+    @Param({"json", "journal", "mapped"})
+    private String mode;
+
+    private Path dataDir;
+    private FileStorageService storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = BenchmarkFixtures.tempDir("crisis-startup-bench");
+        FileStorageService seed = newService();
+        seed.loadMessages();
+        if ("json".equals(mode)) {
+            seed.saveMessages(BenchmarkFixtures.messages(archiveSize));
+        } else {
+            for (int from = 0; from < archiveSize; from += CHUNK) {
+                List<Message> chunk = new ArrayList<>(CHUNK);
+                for (int i = from; i < Math.min(archiveSize, from + CHUNK); i++) {
+                    chunk.add(BenchmarkFixtures.message(i));
+                }
+                seed.appendMessages(chunk);
+            }
+        }
+        seed.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeService() {
+        if (storage != null) {
+            storage.close();
+            storage = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public List<Message> startAndReadFirstPage() {
+        storage = newService();
+        List<Message> stored = storage.loadMessages();
+        MessageHistoryBuffer history = new MessageHistoryBuffer(archiveSize);
+        RestoredHistory restored = RestoredHistory.of(stored, archiveSize);
+        history.restore(restored.firstSequence(), restored);
+        return history.latest(FIRST_PAGE);
+    }
+
+    private FileStorageService newService() {
+        return new FileStorageService(BenchmarkFixtures.objectMapper(), new SimpleMeterRegistry(),
+                dataDir.toString(), mode, 64 * 1024 * 1024, false, false, archiveSize);
+    }
+}
@@ -0,0 +1,64 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.StatusEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encode/decode of the two wire models with the application's mapper settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Message message;
+    private StatusEntry status;
+    private byte[] messageJson;
+    private byte[] statusJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        message = BenchmarkFixtures.message(42);
+        status = BenchmarkFixtures.status(42);
+        messageJson = objectMapper.writeValueAsBytes(message);
+        statusJson = objectMapper.writeValueAsBytes(status);
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message decodeMessage() throws Exception {
+        return objectMapper.readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public byte[] encodeStatusEntry() throws Exception {
+        return objectMapper.writeValueAsBytes(status);
+    }
+
+    @Benchmark
+    public StatusEntry decodeStatusEntry() throws Exception {
+        return objectMapper.readValue(statusJson, StatusEntry.class);
+    }
+}
@@ -0,0 +1,90 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageBroadcastService#broadcastMessage} and history reads at different history sizes. The
+ * history is pre-filled to capacity so every append also evicts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBroadcastBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int historySize;
+
+    @Param({"50"})
+    private int recentLimit;
+
+    @Param({"true", "false"})
+    private boolean search;
+
+    private Path dataDir;
+    private AsyncPersistenceService persistence;
+    private FileStorageService storage;
+    private MessageBroadcastService broadcastService;
+    private List<Message> messages;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataDir = BenchmarkFixtures.tempDir("crisis-broadcast-bench");
+        // Journal without fsync keeps the background writer from throttling the hot path
+        storage = new FileStorageService(BenchmarkFixtures.objectMapper(), new SimpleMeterRegistry(),
+                dataDir.toString(), "journal", 4 * 1024 * 1024, false, false, historySize);
+        persistence = new AsyncPersistenceService(storage, new SimpleMeterRegistry(), true, 100_000, 256, 50);
+        persistence.start();
+        broadcastService = new MessageBroadcastService(BenchmarkFixtures.discardingTemplate(), storage, persistence,
+                BenchmarkFixtures.objectMapper(), new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, true),
+                historySize, 500, search);
+        broadcastService.init();
+
+        messages = BenchmarkFixtures.messages(historySize * 2);
+        for (int i = 0; i < historySize; i++) {
+            broadcastService.broadcastMessage(messages.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        persistence.shutdown();
+        storage.close();
+        BenchmarkFixtures.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public void broadcastMessage() {
+        broadcastService.broadcastMessage(messages.get(next++ % messages.size()));
+    }
+
+    @Benchmark
+    public List<Message> getRecentMessages() {
+        return broadcastService.getRecentMessages(recentLimit);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return broadcastService.getAllMessages();
+    }
+}
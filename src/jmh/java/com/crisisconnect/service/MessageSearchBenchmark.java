@@ -0,0 +1,89 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History search over a full window. {@code search} runs one query against the index (plain term matching
+ * every message, a selective term, prefix, phrase, OR, and a term narrowed to emergencies); {@code add} is
+ * the cost a broadcast pays to keep the index current once the window has wrapped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MessageSearchBenchmark {
+
+    private static final String[] WORDS = {"insulin", "oxygen", "generator", "fuel", "boat", "rescue", "bridge",
+            "flooded", "children", "elderly", "medical", "road", "blocked", "power", "radio", "food"};
+
+    @Param({"100000"})
+    private int historySize;
+
+    @Param({"water", "insulin", "gen*", "\"block 7\"", "insulin OR oxygen", "emergency:water"})
+    private String query;
+
+    private MessageSearchIndex index;
+    private MessageSearchIndex.Query parsed;
+    private MessageSearchIndex.Filter filter;
+    private List<Message> incoming;
+    private long next;
+
+    @Setup
+    public void setUp() {
+        index = new MessageSearchIndex(historySize);
+        Random random = new Random(42);
+        for (int i = 0; i < historySize; i++) {
+            index.add(withExtraWords(BenchmarkFixtures.message(i), i, random));
+        }
+        next = historySize;
+
+        boolean emergencies = query.startsWith("emergency:");
+        parsed = MessageSearchIndex.Query.parse(emergencies ? query.substring("emergency:".length()) : query);
+        filter = emergencies
+                ? MessageSearchIndex.Filter.of(EnumSet.of(Message.MessageType.EMERGENCY), null, null, null)
+                : MessageSearchIndex.Filter.NONE;
+
+        incoming = BenchmarkFixtures.messages(4096);
+        for (int i = 0; i < incoming.size(); i++) {
+            withExtraWords(incoming.get(i), historySize + i, random);
+        }
+    }
+
+    @Benchmark
+    public MessageSearchIndex.Hits search() {
+        return index.search(parsed, filter, 50);
+    }
+
+    @Benchmark
+    public long add() {
+        Message message = incoming.get((int) (next % incoming.size()));
+        message.setSequence(next);
+        index.add(message);
+        return next++;
+    }
+
+    private static Message withExtraWords(Message message, long sequence, Random random) {
+        message.setSequence(sequence);
+        message.setContent(message.getContent() + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                + WORDS[random.nextInt(WORDS.length)]);
+        return message;
+    }
+}
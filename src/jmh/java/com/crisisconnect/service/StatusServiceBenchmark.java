@@ -0,0 +1,51 @@
+package com.crisisconnect.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status board counters as polled by {@code /api/stats}, on large boards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int boardSize;
+
+    private StatusService statusService;
+
+    @Setup
+    public void setUp() {
+        statusService = new StatusService(BenchmarkFixtures.discardingTemplate(), new SimpleMeterRegistry(), 0.01, 0, true);
+        for (int i = 0; i < boardSize; i++) {
+            statusService.updateStatus(BenchmarkFixtures.status(i));
+        }
+    }
+
+    @Benchmark
+    public long getActiveUserCount() {
+        return statusService.getActiveUserCount();
+    }
+
+    @Benchmark
+    public long getCriticalUserCount() {
+        return statusService.getCriticalUserCount();
+    }
+}
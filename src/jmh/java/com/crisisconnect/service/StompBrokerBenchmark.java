@@ -0,0 +1,177 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.config.TopicSubscriptionRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out through the STOMP simple broker with a few thousand subscribed sessions, with Spring's default
+ * subscription registry versus {@link TopicSubscriptionRegistry}. Sessions subscribe like the web app: everyone
+ * to the status topics, most to {@code /topic/messages}, a quarter by region to {@code /topic/messages/unscoped}
+ * plus four of 4096 area tiles.
+ * <ul>
+ *   <li>{@code broadcast}: one geo-tagged message, published to {@code /topic/messages} and its tile</li>
+ *   <li>{@code statusUpdate}: one {@code /topic/status} frame</li>
+ *   <li>{@code reconnect}: one session disconnects, connects again and resubscribes</li>
+ * </ul>
+ * The outbound channel delivers synchronously to a counting handler, so the scores are the broker's own cost;
+ * the {@code deliveries} counter is frames handed to sessions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompBrokerBenchmark {
+
+    private static final int TILES = 4096;
+    private static final int TILES_PER_REGION_SESSION = 4;
+
+    @Param({"default", "topic"})
+    private String registry;
+
+    @Param({"1000", "4000"})
+    private int sessions;
+
+    private SimpleBrokerMessageHandler broker;
+    private final Random random = new Random(42);
+    private byte[] payload;
+    private int nextSession;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Deliveries {
+        public long deliveries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            deliveries = 0;
+        }
+    }
+
+    // Outbound frames seen since the last invocation, moved into Deliveries after each one
+    private long delivered;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                delivered++;
+            }
+        });
+        broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutbound,
+                new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.setSelectorHeaderName(null);
+        if ("topic".equals(registry)) {
+            broker.setSubscriptionRegistry(new TopicSubscriptionRegistry());
+        }
+        broker.start();
+
+        payload = BenchmarkFixtures.objectMapper().writeValueAsBytes(BenchmarkFixtures.message(7));
+        for (int i = 0; i < sessions; i++) {
+            connect(i);
+        }
+        // Every tile has seen traffic, as after a while in production
+        for (int i = 0; i < TILES; i++) {
+            publish(GeoRoutingService.AREA_PREFIX + tile(i));
+        }
+        publish("/topic/messages");
+        publish("/topic/status");
+        delivered = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public void broadcast(Deliveries counter) {
+        publish("/topic/messages");
+        publish(GeoRoutingService.AREA_PREFIX + tile(random.nextInt(TILES)));
+        counter.deliveries += delivered;
+        delivered = 0;
+    }
+
+    @Benchmark
+    public void statusUpdate(Deliveries counter) {
+        publish("/topic/status");
+        counter.deliveries += delivered;
+        delivered = 0;
+    }
+
+    @Benchmark
+    public void reconnect() {
+        int session = nextSession;
+        nextSession = (nextSession + 1) % sessions;
+        broker.handleMessage(control(SimpMessageType.DISCONNECT, session));
+        connect(session);
+    }
+
+    private void connect(int session) {
+        broker.handleMessage(control(SimpMessageType.CONNECT, session));
+        List<String> destinations = new ArrayList<>();
+        destinations.add("/topic/status");
+        destinations.add("/topic/status/removed");
+        if (session % 4 == 0) {
+            destinations.add("/topic/messages/unscoped");
+            for (int i = 0; i < TILES_PER_REGION_SESSION; i++) {
+                destinations.add(GeoRoutingService.AREA_PREFIX + tile((session * 7 + i) % TILES));
+            }
+        } else {
+            destinations.add("/topic/messages");
+        }
+        for (int i = 0; i < destinations.size(); i++) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            accessor.setSessionId(sessionId(session));
+            accessor.setSubscriptionId("sub-" + i);
+            accessor.setDestination(destinations.get(i));
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+        }
+    }
+
+    private void publish(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> control(SimpMessageType type, int session) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId(session));
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static String sessionId(int session) {
+        return "session-" + session;
+    }
+
+    private static String tile(int index) {
+        return (index / 64) + "_" + (index % 64);
+    }
+}
@@ -0,0 +1,101 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Socket framings side by side: JSON lines versus compact binary frames, plain and with deflate at the
+ * default 512-byte threshold, for short chat messages and long situation reports. Encoding goes through
+ * {@link EncodedMessage} like a broadcast does; decoding is what a device (or the server, for inbound
+ * traffic) does per frame. Average bytes per message are printed once per fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int CORPUS = 1024;
+
+    @Param({"json", "compact", "compact-deflate"})
+    private String format;
+
+    @Param({"chat", "report"})
+    private String content;
+
+    private ObjectMapper objectMapper;
+    private SocketWire wire;
+    private List<Message> messages;
+    private byte[][] frames;
+    private CompactDecoder decoder;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        wire = new SocketWire(objectMapper, format.equals("compact-deflate") ? 512 : 0, 65536);
+        messages = BenchmarkFixtures.messages(CORPUS);
+        if (content.equals("report")) {
+            for (Message message : messages) {
+                message.setContent(message.getContent() + ". Shelter census, supplies and road status follow. "
+                        + "Block A: 112 people, water for two days, road open. ".repeat(24));
+            }
+        }
+
+        // The decoding side has already been sent every sender definition, as a connected device would have
+        decoder = new CompactDecoder();
+        frames = new byte[CORPUS][];
+        long bytes = 0;
+        for (int i = 0; i < CORPUS; i++) {
+            EncodedMessage encoded = new EncodedMessage(messages.get(i));
+            if (format.equals("json")) {
+                frames[i] = encoded.frame(objectMapper).bytes();
+            } else {
+                EncodedMessage.CompactFrame compact = wire.compact(encoded);
+                if (compact.senderRef() >= 0) {
+                    decoder.next(ByteBuffer.wrap(wire.sender(compact.senderRef()).bytes()));
+                }
+                frames[i] = compact.frame().bytes();
+            }
+            bytes += frames[i].length;
+        }
+        System.out.printf("%n[%s, %s] %.1f bytes/message%n", format, content, (double) bytes / CORPUS);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return encode(messages.get(next++ & (CORPUS - 1)));
+    }
+
+    @Benchmark
+    public Message decode() throws Exception {
+        byte[] frame = frames[next++ & (CORPUS - 1)];
+        if (format.equals("json")) {
+            return objectMapper.readValue(frame, Message.class);
+        }
+        return decoder.next(ByteBuffer.wrap(frame)).message();
+    }
+
+    private byte[] encode(Message message) throws Exception {
+        EncodedMessage encoded = new EncodedMessage(message);
+        return format.equals("json") ? encoded.frame(objectMapper).bytes() : wire.compact(encoded).frame().bytes();
+    }
+}
@@ -0,0 +1,97 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactCodec;
+import com.crisisconnect.protocol.CompactDecoder;
+import com.crisisconnect.protocol.SenderTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * Client end of the compact binary framing (see {@link CompactCodec}): negotiates it on a fresh socket, then
+ * sends and receives frames instead of JSON lines.
+ */
+class CompactLink {
+
+    private static final int COMPRESS_THRESHOLD = 512;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final CompactCodec codec = new CompactCodec(COMPRESS_THRESHOLD);
+    private final SenderTable senders = new SenderTable(1024);
+    private final BitSet definedSenders = new BitSet();
+    private final CompactDecoder decoder = new CompactDecoder();
+
+    private CompactLink(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Asks for compact framing and waits for the server to agree. Lines that arrive before the answer (such
+     * as the welcome message) go to {@code earlyLines}.
+     */
+    static CompactLink negotiate(Socket socket, Consumer<String> earlyLines) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        out.write((CompactCodec.NEGOTIATE + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        String line;
+        while ((line = readLine(in)) != null) {
+            if (line.equals(CompactCodec.ACCEPTED)) {
+                return new CompactLink(in, out);
+            }
+            if (line.equals(CompactCodec.REFUSED)) {
+                throw new IOException("Server does not accept binary framing");
+            }
+            earlyLines.accept(line);
+        }
+        throw new EOFException("Connection closed while negotiating binary framing");
+    }
+
+    synchronized void send(Message message) throws IOException {
+        int ref = senders.refFor(message.getSenderId(), message.getSenderName());
+        if (ref != SenderTable.NO_REF && !definedSenders.get(ref)) {
+            out.write(codec.encodeSender(ref, message.getSenderId(), message.getSenderName()));
+            definedSenders.set(ref);
+        }
+        out.write(codec.encodeMessage(message, ref));
+        out.flush();
+    }
+
+    synchronized void sendText(String text) throws IOException {
+        out.write(codec.encodeText(text));
+        out.flush();
+    }
+
+    /**
+     * Blocks for the next message or text reply; {@code null} once the server closes the connection.
+     */
+    CompactDecoder.Frame read() throws IOException {
+        return decoder.read(in);
+    }
+
+    // Byte-wise so nothing past the newline is buffered away from the frame decoder
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package com.crisisconnect.client;
 
 import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactDecoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
@@ -9,24 +10,33 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.UUID;
 
 /**
  * Simple socket client for testing CrisisConnect
  * Run this to connect to the server and send messages
+ * Run with --binary to use compact binary framing instead of JSON lines (see {@link CompactLink})
+ * Run with --load to simulate many devices instead (see {@link LoadGenerator})
  */
 public class CrisisConnectClient {
 
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 8888;
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    static final ObjectMapper objectMapper = new ObjectMapper();
 
     static {
         objectMapper.registerModule(new JavaTimeModule());
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--load")) {
+            LoadGenerator.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        boolean binary = Arrays.asList(args).contains("--binary");
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("═══════════════════════════════════════");
@@ -41,21 +51,28 @@ public class CrisisConnectClient {
                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
 
-            System.out.println("✅ Connected to CrisisConnect Server");
+            CompactLink link = binary ? CompactLink.negotiate(socket, CrisisConnectClient::displayLine) : null;
+            System.out.println("✅ Connected to CrisisConnect Server" + (binary ? " (binary framing)" : ""));
             System.out.println("Commands: 'status' (update status), 'emergency' (send emergency), 'quit' (exit)");
             System.out.println("═══════════════════════════════════════\n");
 
             // Start thread to receive messages
             Thread receiveThread = new Thread(() -> {
                 try {
+                    if (link != null) {
+                        CompactDecoder.Frame frame;
+                        while ((frame = link.read()) != null) {
+                            if (frame.message() != null) {
+                                displayMessage(frame.message());
+                            } else {
+                                System.out.println("📨 " + frame.text());
+                            }
+                        }
+                        return;
+                    }
                     String serverMessage;
                     while ((serverMessage = in.readLine()) != null) {
-                        try {
-                            Message msg = objectMapper.readValue(serverMessage, Message.class);
-                            displayMessage(msg);
-                        } catch (Exception e) {
-                            System.out.println("📨 " + serverMessage);
-                        }
+                        displayLine(serverMessage);
                     }
                 } catch (Exception e) {
                     System.out.println("❌ Connection lost");
@@ -73,8 +90,11 @@ public class CrisisConnectClient {
                 }
 
                 Message message = createMessage(userId, userName, input);
-                String json = objectMapper.writeValueAsString(message);
-                out.println(json);
+                if (link != null) {
+                    link.send(message);
+                } else {
+                    out.println(objectMapper.writeValueAsString(message));
+                }
             }
 
         } catch (Exception e) {
@@ -86,7 +106,7 @@ public class CrisisConnectClient {
         scanner.close();
     }
 
-    private static Message createMessage(String userId, String userName, String input) {
+    static Message createMessage(String userId, String userName, String input) {
         Message message = new Message();
         message.setId(UUID.randomUUID().toString());
         message.setSenderId(userId);
@@ -110,6 +130,14 @@ public class CrisisConnectClient {
         return message;
     }
 
+    private static void displayLine(String line) {
+        try {
+            displayMessage(objectMapper.readValue(line, Message.class));
+        } catch (Exception e) {
+            System.out.println("📨 " + line);
+        }
+    }
+
     private static void displayMessage(Message msg) {
         String icon = switch (msg.getType()) {
             case EMERGENCY -> "🚨";
@@ -0,0 +1,133 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end delivery latency, from the moment a simulated device sent a message to the moment another
+ * simulated device received it. Every device lives in this JVM, so the send time travels inside the
+ * message content as a {@link System#nanoTime()} stamp and needs no clock sync.
+ * <p>
+ * Latencies are kept in microseconds per (receiving transport, priority) in HDR histograms.
+ */
+class LatencyTracker {
+
+    private static final String MARKER = "[lg ";
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> totals = new TreeMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Prefixes {@code content} with a send stamp.
+     */
+    String stamp(String content) {
+        sent.increment();
+        return MARKER + sequence.incrementAndGet() + " " + System.nanoTime() + "] " + content;
+    }
+
+    /**
+     * Records the delivery of a stamped message; anything else (system notices, other users) is ignored.
+     */
+    void delivered(String transport, Message message) {
+        long sentNanos = sentNanos(message.getContent());
+        if (sentNanos < 0) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos);
+        String priority = message.getPriority() != null
+                ? message.getPriority().name().toLowerCase(Locale.ROOT) : "none";
+        recorders.computeIfAbsent(transport + "/" + priority, key -> new Recorder(3))
+                .recordValue(Math.max(0, micros));
+        received.increment();
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    static long sentNanos(String content) {
+        if (content == null || !content.startsWith(MARKER)) {
+            return -1;
+        }
+        int space = content.indexOf(' ', MARKER.length());
+        int end = content.indexOf(']', space + 1);
+        if (space < 0 || end < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(content.substring(space + 1, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Prints one line per histogram for the interval since the last call, and folds it into the totals.
+     */
+    synchronized void report(PrintStream out, long elapsedSeconds) {
+        out.printf("%n[%4ds] sent=%d delivered=%d errors=%d%n", elapsedSeconds, sent.sum(), received.sum(),
+                errors.sum());
+        Map<String, Histogram> interval = new TreeMap<>();
+        recorders.forEach((key, recorder) -> interval.put(key, recorder.getIntervalHistogram()));
+        interval.forEach((key, histogram) -> {
+            totals.computeIfAbsent(key, k -> new Histogram(3)).add(histogram);
+            if (histogram.getTotalCount() > 0) {
+                out.println("  " + summary(key, histogram));
+            }
+        });
+    }
+
+    /**
+     * Prints the run totals and writes each histogram as an {@code .hgrm} percentile distribution (ms).
+     */
+    synchronized void finish(PrintStream out, long elapsedSeconds, Path outputDir) throws IOException {
+        report(out, elapsedSeconds);
+        Files.createDirectories(outputDir);
+
+        out.println();
+        out.println("═══════════════════════════════════════");
+        out.printf("Total: sent=%d delivered=%d errors=%d%n", sent.sum(), received.sum(), errors.sum());
+        Histogram all = new Histogram(3);
+        for (Map.Entry<String, Histogram> entry : totals.entrySet()) {
+            Histogram histogram = entry.getValue();
+            all.add(histogram);
+            out.println("  " + summary(entry.getKey(), histogram));
+            write(outputDir.resolve(entry.getKey().replace('/', '-') + ".hgrm"), histogram);
+        }
+        out.println("  " + summary("all", all));
+        write(outputDir.resolve("all.hgrm"), all);
+        out.println("Histograms written to " + outputDir.toAbsolutePath());
+    }
+
+    private static String summary(String key, Histogram histogram) {
+        return String.format("%-16s n=%-8d p50=%8.2fms p99=%8.2fms p99.9=%8.2fms max=%8.2fms", key,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static void write(Path file, Histogram histogram) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
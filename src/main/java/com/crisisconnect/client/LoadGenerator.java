@@ -0,0 +1,205 @@
+package com.crisisconnect.client;
+
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless load mode of {@link CrisisConnectClient}: simulates many devices against a running server on
+ * both the raw socket port and the REST/STOMP endpoints, and reports end-to-end delivery latency.
+ * <p>
+ * Chat messages are sent at a fixed aggregate rate from random devices with a configurable priority mix.
+ * Each device also reports its status periodically, and devices are disconnected and reconnected at the
+ * configured churn rate.
+ */
+class LoadGenerator {
+
+    private static final long TICK_MILLIS = 10;
+
+    private final LoadProfile profile;
+    private final LatencyTracker tracker = new LatencyTracker();
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, daemon("load-scheduler"));
+    private final ExecutorService senders = Executors.newFixedThreadPool(
+            Math.max(4, Runtime.getRuntime().availableProcessors()), daemon("load-sender"));
+
+    private double messageCredit;
+    private double churnCredit;
+
+    LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    static void run(String[] args) {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(LoadProfile.USAGE);
+            return;
+        }
+        LoadProfile profile;
+        try {
+            profile = LoadProfile.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            System.err.println(LoadProfile.USAGE);
+            return;
+        }
+        try {
+            new LoadGenerator(profile).execute();
+        } catch (Exception e) {
+            System.err.println("❌ Load run failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    void execute() throws Exception {
+        System.out.println("═══════════════════════════════════════");
+        System.out.println("🚨 CrisisConnect Load Generator");
+        System.out.printf("%d socket + %d STOMP devices, %.1f msg/s for %ds against %s%n", profile.socketDevices(),
+                profile.stompDevices(), profile.messagesPerSecond(), profile.duration().toSeconds(), profile.host());
+        System.out.println("═══════════════════════════════════════");
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        HttpClient httpClient = HttpClient.newBuilder().executor(senders).build();
+        for (int i = 0; i < profile.socketDevices(); i++) {
+            devices.add(new SocketDevice("socket-" + i, tracker, profile.host(), profile.socketPort(),
+                    profile.binarySocket()));
+        }
+        for (int i = 0; i < profile.stompDevices(); i++) {
+            devices.add(new StompDevice("web-" + i, tracker, stompClient, httpClient, profile.host(),
+                    profile.httpPort()));
+        }
+
+        connectAll();
+
+        long started = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::sendTick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::churnTick, 1, 1, TimeUnit.SECONDS);
+        long reportMillis = profile.reportInterval().toMillis();
+        scheduler.scheduleAtFixedRate(() -> tracker.report(System.out, elapsedSeconds(started)),
+                reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+        scheduleStatusUpdates();
+
+        Thread.sleep(profile.duration().toMillis());
+        scheduler.shutdownNow();
+        // Give in-flight messages a moment to arrive before the final tally
+        Thread.sleep(2000);
+
+        tracker.finish(System.out, elapsedSeconds(started), profile.outputDir());
+        devices.forEach(SimulatedDevice::disconnect);
+        senders.shutdownNow();
+        stompClient.stop();
+    }
+
+    private void connectAll() throws InterruptedException {
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService connectors = Executors.newFixedThreadPool(32, daemon("load-connect"));
+        List<Future<?>> pending = new ArrayList<>();
+        for (SimulatedDevice device : devices) {
+            pending.add(connectors.submit(() -> {
+                try {
+                    device.connect();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    tracker.error();
+                }
+            }));
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                // Counted above
+            }
+        }
+        connectors.shutdown();
+        System.out.printf("✅ Connected %d/%d devices%n", devices.size() - failed.get(), devices.size());
+    }
+
+    private void scheduleStatusUpdates() {
+        long intervalMillis = profile.statusInterval().toMillis();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        for (SimulatedDevice device : devices) {
+            long initialDelay = ThreadLocalRandom.current().nextLong(intervalMillis);
+            scheduler.scheduleAtFixedRate(() -> submit(device::sendRandomStatus),
+                    initialDelay, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendTick() {
+        messageCredit += profile.messagesPerSecond() * TICK_MILLIS / 1000.0;
+        while (messageCredit >= 1) {
+            messageCredit--;
+            SimulatedDevice device = randomDevice();
+            if (device != null) {
+                submit(() -> device.sendChat(profile.nextPriority()));
+            }
+        }
+    }
+
+    private void churnTick() {
+        churnCredit += profile.churnPerMinute() / 60.0;
+        while (churnCredit >= 1) {
+            churnCredit--;
+            SimulatedDevice device = randomDevice();
+            if (device != null) {
+                submit(() -> {
+                    device.disconnect();
+                    device.connect();
+                });
+            }
+        }
+    }
+
+    private SimulatedDevice randomDevice() {
+        // A few tries so devices that are mid-reconnect don't stall the send rate
+        for (int attempt = 0; attempt < 4; attempt++) {
+            SimulatedDevice device = devices.get(ThreadLocalRandom.current().nextInt(devices.size()));
+            if (device.isConnected()) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    private void submit(DeviceAction action) {
+        senders.execute(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                tracker.error();
+            }
+        });
+    }
+
+    private static long elapsedSeconds(long started) {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    private interface DeviceAction {
+        void run() throws Exception;
+    }
+}
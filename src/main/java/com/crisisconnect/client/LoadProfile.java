@@ -0,0 +1,130 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Settings for a {@link LoadGenerator} run, parsed from {@code --key=value} arguments.
+ */
+record LoadProfile(
+        String host,
+        int socketPort,
+        int httpPort,
+        int socketDevices,
+        boolean binarySocket,
+        int stompDevices,
+        Duration duration,
+        double messagesPerSecond,
+        Map<Message.MessagePriority, Integer> priorityMix,
+        Duration statusInterval,
+        double churnPerMinute,
+        Duration reportInterval,
+        Path outputDir) {
+
+    private static final Set<String> OPTIONS = Set.of("host", "socket-port", "http-port", "socket-devices",
+            "socket-wire", "stomp-devices", "duration", "rate", "mix", "status-interval", "churn",
+            "report-interval", "output");
+
+    static final String USAGE = """
+            Usage: CrisisConnectClient --load [--key=value ...]
+              --host=localhost          server address
+              --socket-port=8888        raw socket port
+              --http-port=8080          REST / STOMP port
+              --socket-devices=500      simulated devices on the raw socket
+              --socket-wire=json        json lines or compact binary frames on the socket
+              --stomp-devices=500       simulated browsers (REST + STOMP)
+              --duration=60             run length in seconds
+              --rate=100                messages per second across all devices
+              --mix=low:10,normal:70,high:15,critical:5
+                                        priority mix (relative weights)
+              --status-interval=30      seconds between status updates per device (0 = off)
+              --churn=60                disconnect/reconnect cycles per minute
+              --report-interval=5       seconds between progress lines
+              --output=load-results     directory for HDR histogram (.hgrm) files
+            """;
+
+    static LoadProfile parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String key = arg.substring(2, eq);
+            if (!OPTIONS.contains(key)) {
+                throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+            options.put(key, arg.substring(eq + 1));
+        }
+
+        LoadProfile profile = new LoadProfile(
+                options.getOrDefault("host", "localhost"),
+                Integer.parseInt(options.getOrDefault("socket-port", "8888")),
+                Integer.parseInt(options.getOrDefault("http-port", "8080")),
+                Integer.parseInt(options.getOrDefault("socket-devices", "500")),
+                parseWire(options.getOrDefault("socket-wire", "json")),
+                Integer.parseInt(options.getOrDefault("stomp-devices", "500")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60"))),
+                Double.parseDouble(options.getOrDefault("rate", "100")),
+                parseMix(options.getOrDefault("mix", "low:10,normal:70,high:15,critical:5")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("status-interval", "30"))),
+                Double.parseDouble(options.getOrDefault("churn", "60")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("report-interval", "5"))),
+                Path.of(options.getOrDefault("output", "load-results")));
+        if (profile.socketDevices + profile.stompDevices <= 0) {
+            throw new IllegalArgumentException("At least one device is required");
+        }
+        return profile;
+    }
+
+    static boolean parseWire(String wire) {
+        return switch (wire.trim().toLowerCase(Locale.ROOT)) {
+            case "json" -> false;
+            case "binary" -> true;
+            default -> throw new IllegalArgumentException("Unknown socket wire format: " + wire);
+        };
+    }
+
+    static Map<Message.MessagePriority, Integer> parseMix(String spec) {
+        Map<Message.MessagePriority, Integer> mix = new EnumMap<>(Message.MessagePriority.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Bad priority mix entry: " + part);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in priority mix: " + part);
+            }
+            mix.put(Message.MessagePriority.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("Priority mix has no weight: " + spec);
+        }
+        return mix;
+    }
+
+    Message.MessagePriority nextPriority() {
+        int total = priorityMix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Message.MessagePriority, Integer> entry : priorityMix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return Message.MessagePriority.NORMAL;
+    }
+
+    int totalDevices() {
+        return socketDevices + stompDevices;
+    }
+}
@@ -0,0 +1,52 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+
+import java.util.UUID;
+
+/**
+ * One simulated user/device in a {@link LoadGenerator} run. Connecting again after {@link #disconnect()}
+ * keeps the same identity, like a phone dropping off the hotspot and rejoining.
+ */
+abstract class SimulatedDevice {
+
+    private static final String[] STATUSES = {"SAFE", "SAFE", "SAFE", "INJURED", "NEED_HELP", "CRITICAL"};
+
+    protected final String userId = UUID.randomUUID().toString();
+    protected final String userName;
+    protected final LatencyTracker tracker;
+
+    protected volatile boolean connected;
+
+    SimulatedDevice(String userName, LatencyTracker tracker) {
+        this.userName = userName;
+        this.tracker = tracker;
+    }
+
+    abstract void connect() throws Exception;
+
+    abstract void disconnect();
+
+    abstract void send(Message message) throws Exception;
+
+    abstract void sendStatus(String status) throws Exception;
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    void sendChat(Message.MessagePriority priority) throws Exception {
+        if (!connected) {
+            return;
+        }
+        String input = priority == Message.MessagePriority.CRITICAL ? "emergency" : "Supplies check from " + userName;
+        Message message = CrisisConnectClient.createMessage(userId, userName, input);
+        message.setPriority(priority);
+        message.setContent(tracker.stamp(message.getContent()));
+        send(message);
+    }
+
+    void sendRandomStatus() throws Exception {
+        sendStatus(STATUSES[(int) (Math.random() * STATUSES.length)]);
+    }
+}
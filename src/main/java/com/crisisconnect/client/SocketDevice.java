@@ -0,0 +1,126 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactDecoder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A device on the raw socket port, speaking the same line-delimited JSON as {@link CrisisConnectClient}, or
+ * compact binary frames when {@code binary} is set.
+ */
+class SocketDevice extends SimulatedDevice {
+
+    private final String host;
+    private final int port;
+    private final boolean binary;
+
+    private Socket socket;
+    private PrintWriter out;
+    private CompactLink link;
+
+    SocketDevice(String userName, LatencyTracker tracker, String host, int port, boolean binary) {
+        super(userName, tracker);
+        this.host = host;
+        this.port = port;
+        this.binary = binary;
+    }
+
+    @Override
+    synchronized void connect() throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        Runnable receiver;
+        if (binary) {
+            link = CompactLink.negotiate(socket, line -> { });
+            receiver = this::receiveFrames;
+        } else {
+            out = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            receiver = () -> receive(in);
+        }
+
+        Thread reader = new Thread(receiver, "load-socket-" + userName);
+        reader.setDaemon(true);
+        reader.start();
+        connected = true;
+    }
+
+    private void receive(BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    tracker.delivered("socket", CrisisConnectClient.objectMapper.readValue(line, Message.class));
+                } catch (IOException e) {
+                    tracker.error();
+                }
+            }
+        } catch (IOException e) {
+            // Closed by disconnect() or the server
+        }
+    }
+
+    private void receiveFrames() {
+        try {
+            CompactDecoder.Frame frame;
+            while ((frame = link.read()) != null) {
+                if (frame.message() != null) {
+                    tracker.delivered("socket", frame.message());
+                }
+            }
+        } catch (IOException e) {
+            // Closed by disconnect() or the server
+        }
+    }
+
+    @Override
+    synchronized void disconnect() {
+        connected = false;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+
+    @Override
+    synchronized void send(Message message) throws IOException {
+        if (!connected) {
+            return;
+        }
+        if (link != null) {
+            try {
+                link.send(message);
+            } catch (IOException e) {
+                tracker.error();
+                disconnect();
+            }
+            return;
+        }
+        out.println(CrisisConnectClient.objectMapper.writeValueAsString(message));
+        out.flush();
+        if (out.checkError()) {
+            tracker.error();
+            disconnect();
+        }
+    }
+
+    @Override
+    void sendStatus(String status) throws IOException {
+        if (!connected) {
+            return;
+        }
+        Message message = CrisisConnectClient.createMessage(userId, userName, "status: " + status);
+        message.setContent(tracker.stamp(message.getContent()));
+        send(message);
+    }
+}
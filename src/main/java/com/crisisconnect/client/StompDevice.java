@@ -0,0 +1,121 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.StatusEntry;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A browser-style device: subscribes to {@code /topic/messages} over STOMP, posts chat through the REST
+ * API and reports status over STOMP, the same way the web app does.
+ */
+class StompDevice extends SimulatedDevice {
+
+    private final WebSocketStompClient stompClient;
+    private final HttpClient httpClient;
+    private final String stompUrl;
+    private final URI messagesUri;
+
+    private volatile StompSession session;
+
+    StompDevice(String userName, LatencyTracker tracker, WebSocketStompClient stompClient, HttpClient httpClient,
+            String host, int port) {
+        super(userName, tracker);
+        this.stompClient = stompClient;
+        this.httpClient = httpClient;
+        // Raw WebSocket transport of the SockJS endpoint
+        this.stompUrl = "ws://" + host + ":" + port + "/ws-crisis/websocket";
+        this.messagesUri = URI.create("http://" + host + ":" + port + "/api/messages");
+    }
+
+    @Override
+    void connect() throws Exception {
+        session = stompClient.connectAsync(stompUrl, new StompSessionHandlerAdapter() {
+            @Override
+            public void handleTransportError(StompSession session, Throwable exception) {
+                if (connected) {
+                    tracker.error();
+                    connected = false;
+                }
+            }
+        }).get(30, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/messages", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                try {
+                    tracker.delivered("stomp",
+                            CrisisConnectClient.objectMapper.readValue((byte[]) payload, Message.class));
+                } catch (IOException e) {
+                    tracker.error();
+                }
+            }
+        });
+        connected = true;
+        sendStatus("SAFE");
+    }
+
+    @Override
+    void disconnect() {
+        connected = false;
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    @Override
+    void send(Message message) throws IOException {
+        if (!connected) {
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(messagesUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(
+                        CrisisConnectClient.objectMapper.writeValueAsBytes(message)))
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != 200) {
+                        tracker.error();
+                    }
+                });
+    }
+
+    @Override
+    void sendStatus(String status) throws IOException {
+        StompSession current = session;
+        if (!connected || current == null) {
+            return;
+        }
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setUserName(userName);
+        entry.setStatus(status);
+        entry.setRole("Citizen");
+        entry.setHasInternet(true);
+        entry.setBatteryLevel(50 + (int) (Math.random() * 50));
+
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/app/status");
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        current.send(headers, CrisisConnectClient.objectMapper.writeValueAsBytes(entry));
+    }
+}
@@ -0,0 +1,168 @@
+package com.crisisconnect.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscription registry for the simple broker, keyed by exact destination. Our clients subscribe to fixed
+ * topics ({@code /topic/messages}, {@code /topic/status}, one {@code /topic/area/<tile>} per watched tile),
+ * so a send is one map lookup returning a prebuilt, shared recipient map, whatever the number of sessions
+ * or destinations. Spring's default registry caches lookups for the last {@code cacheLimit} destinations
+ * only and scans every subscription with an {@link AntPathMatcher} on a miss, which area tiles make common,
+ * and it revisits every cached destination on each subscribe and disconnect.
+ * <p>
+ * Pattern subscriptions ({@code /topic/area/*}) still work and are matched one by one on every send.
+ * Selector headers are not supported.
+ */
+public class TopicSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NONE = CollectionUtils.unmodifiableMultiValueMap(
+            new LinkedMultiValueMap<>());
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final Map<Subscription, String> patterns = new ConcurrentHashMap<>();
+    // sessionId -> subscriptionId -> destination, guarded by this
+    private final Map<String, Map<String, String>> sessions = new HashMap<>();
+
+    @Override
+    protected synchronized void addSubscriptionInternal(String sessionId, String subscriptionId,
+            String destination, Message<?> message) {
+        String previous = sessions.computeIfAbsent(sessionId, id -> new HashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            remove(sessionId, subscriptionId, previous);
+        }
+        if (pathMatcher.isPattern(destination)) {
+            patterns.put(new Subscription(sessionId, subscriptionId), destination);
+        } else {
+            topics.computeIfAbsent(destination, d -> new Topic()).add(sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    protected synchronized void removeSubscriptionInternal(String sessionId, String subscriptionId,
+            Message<?> message) {
+        Map<String, String> subscriptions = sessions.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            remove(sessionId, subscriptionId, destination);
+        }
+        if (subscriptions.isEmpty()) {
+            sessions.remove(sessionId);
+        }
+    }
+
+    @Override
+    public synchronized void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) -> remove(sessionId, subscriptionId, destination));
+        }
+    }
+
+    // Caller holds this
+    private void remove(String sessionId, String subscriptionId, String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            patterns.remove(new Subscription(sessionId, subscriptionId));
+            return;
+        }
+        Topic topic = topics.get(destination);
+        if (topic != null && topic.remove(sessionId, subscriptionId)) {
+            topics.remove(destination);
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        Topic topic = topics.get(destination);
+        MultiValueMap<String, String> exact = topic != null ? topic.recipients(this) : NONE;
+        if (patterns.isEmpty()) {
+            return exact;
+        }
+        MultiValueMap<String, String> all = new LinkedMultiValueMap<>(exact.size() + 4);
+        exact.forEach((sessionId, ids) -> all.put(sessionId, new ArrayList<>(ids)));
+        patterns.forEach((subscription, pattern) -> {
+            if (pathMatcher.match(pattern, destination)) {
+                all.add(subscription.sessionId(), subscription.subscriptionId());
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Number of sessions with at least one subscription.
+     */
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TopicSubscriptionRegistry[" + topics.size() + " destinations, " + patterns.size() + " patterns]";
+    }
+
+    private record Subscription(String sessionId, String subscriptionId) {
+    }
+
+    /**
+     * Subscribers of one destination. The recipient map handed to the broker is rebuilt on the first send
+     * after a change and shared by every send until the next one. It is not wrapped unmodifiable, which costs
+     * an extra indirection per recipient; the broker only iterates it.
+     */
+    private static final class Topic {
+
+        // Guarded by the registry
+        private final Map<String, List<String>> subscribers = new LinkedHashMap<>();
+        private volatile MultiValueMap<String, String> recipients;
+
+        void add(String sessionId, String subscriptionId) {
+            subscribers.computeIfAbsent(sessionId, id -> new ArrayList<>(1)).add(subscriptionId);
+            recipients = null;
+        }
+
+        /**
+         * @return {@code true} if the destination has no subscribers left
+         */
+        boolean remove(String sessionId, String subscriptionId) {
+            List<String> ids = subscribers.get(sessionId);
+            if (ids != null && ids.remove(subscriptionId)) {
+                if (ids.isEmpty()) {
+                    subscribers.remove(sessionId);
+                }
+                recipients = null;
+            }
+            return subscribers.isEmpty();
+        }
+
+        MultiValueMap<String, String> recipients(Object lock) {
+            MultiValueMap<String, String> current = recipients;
+            if (current != null) {
+                return current;
+            }
+            synchronized (lock) {
+                if (recipients == null) {
+                    LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>(subscribers.size());
+                    subscribers.forEach((sessionId, ids) -> copy.put(sessionId, List.copyOf(ids)));
+                    recipients = copy;
+                }
+                return recipients;
+            }
+        }
+    }
+}
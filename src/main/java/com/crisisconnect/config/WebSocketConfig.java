@@ -1,20 +1,76 @@
 package com.crisisconnect.config;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    /**
+     * Subscription registry used by the simple broker.
+     */
+    public enum Registry {
+        // Exact-destination lookup, see TopicSubscriptionRegistry
+        TOPIC,
+        // Spring's pattern-matching registry with its destination cache
+        DEFAULT
+    }
+
+    private final int inboundThreads;
+    private final int inboundQueueCapacity;
+    private final int outboundThreads;
+    private final int outboundQueueCapacity;
+    private final int sendTimeLimitMs;
+    private final int sendBufferLimitBytes;
+    private final int messageSizeLimitBytes;
+
+    public WebSocketConfig(
+            @Value("${crisis.stomp.inbound.threads:0}") int inboundThreads,
+            @Value("${crisis.stomp.inbound.queue-capacity:10000}") int inboundQueueCapacity,
+            @Value("${crisis.stomp.outbound.threads:0}") int outboundThreads,
+            @Value("${crisis.stomp.outbound.queue-capacity:100000}") int outboundQueueCapacity,
+            @Value("${crisis.stomp.send-time-limit-ms:10000}") int sendTimeLimitMs,
+            @Value("${crisis.stomp.send-buffer-limit-bytes:524288}") int sendBufferLimitBytes,
+            @Value("${crisis.stomp.message-size-limit-bytes:65536}") int messageSizeLimitBytes) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.inboundThreads = inboundThreads > 0 ? inboundThreads : cores;
+        this.inboundQueueCapacity = inboundQueueCapacity;
+        // Outbound threads mostly wait on socket writes to slow clients
+        this.outboundThreads = outboundThreads > 0 ? outboundThreads : 2 * cores;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferLimitBytes = sendBufferLimitBytes;
+        this.messageSizeLimitBytes = messageSizeLimitBytes;
+    }
+
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        // Enable a simple memory-based message broker for broadcasting
-        config.enableSimpleBroker("/topic");
+        // Enable a simple memory-based message broker for broadcasting; our clients never send selectors
+        config.enableSimpleBroker("/topic").setSelectorHeaderName(null);
         // Prefix for messages from clients
         config.setApplicationDestinationPrefixes("/app");
     }
@@ -26,4 +82,72 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
-}
\ No newline at end of file
+
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        registration.taskExecutor(executor("crisis-stomp-in-", inboundThreads, inboundQueueCapacity));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        registration.taskExecutor(executor("crisis-stomp-out-", outboundThreads, outboundQueueCapacity));
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        // A session that can't take its frames within these limits is closed; the client reconnects and resumes
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferLimitBytes)
+                .setMessageSizeLimit(messageSizeLimitBytes);
+    }
+
+    // Fixed-size pool; when the queue is full the publishing thread delivers itself instead of dropping frames
+    private static ThreadPoolTaskExecutor executor(String prefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(prefix);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    // Read from the handler's own session stats; a session that hit the send limits above counts as a failure
+    @Bean
+    MeterBinder stompSessionMetrics(@Qualifier("subProtocolWebSocketHandler") WebSocketHandler handler) {
+        SubProtocolWebSocketHandler.Stats stats =
+                ((SubProtocolWebSocketHandler) WebSocketHandlerDecorator.unwrap(handler)).getStats();
+        return registry -> {
+            Gauge.builder("crisis.stomp.sessions", stats, SubProtocolWebSocketHandler.Stats::getTotalSessions)
+                    .description("Open STOMP sessions")
+                    .register(registry);
+            FunctionCounter.builder("crisis.stomp.send.failures", stats,
+                            SubProtocolWebSocketHandler.Stats::getLimitExceededSessions)
+                    .description("STOMP sessions closed because frames could not be delivered to them")
+                    .tag("reason", "slow-consumer")
+                    .register(registry);
+            FunctionCounter.builder("crisis.stomp.send.failures", stats,
+                            SubProtocolWebSocketHandler.Stats::getTransportErrorSessions)
+                    .description("STOMP sessions closed because frames could not be delivered to them")
+                    .tag("reason", "transport-error")
+                    .register(registry);
+        };
+    }
+
+    // Swaps the registry before the broker starts, so every subscription lands in it
+    @Bean
+    static BeanPostProcessor subscriptionRegistryInstaller(@Value("${crisis.stomp.registry:topic}") String registry) {
+        Registry type = Registry.valueOf(registry.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler broker && type == Registry.TOPIC) {
+                    broker.setSubscriptionRegistry(new TopicSubscriptionRegistry());
+                    log.info("📡 STOMP broker using the topic subscription registry");
+                }
+                return bean;
+            }
+        };
+    }
+}
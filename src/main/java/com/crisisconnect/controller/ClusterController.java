@@ -0,0 +1,56 @@
+package com.crisisconnect.controller;
+
+import com.crisisconnect.model.ReplicationBatch;
+import com.crisisconnect.service.ClusterService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Node-to-node replication endpoints; only answered in cluster mode
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+
+    @Autowired
+    private ClusterService clusterService;
+
+    // This node and what it knows about its peers
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getCluster() {
+        Map<String, Object> cluster = new HashMap<>();
+        cluster.put("nodeId", clusterService.getNodeId());
+        cluster.put("clusterMode", clusterService.isEnabled());
+        cluster.put("peers", clusterService.getPeers());
+        return ResponseEntity.ok(cluster);
+    }
+
+    // Batched changes pushed by a peer
+    @PostMapping("/replicate")
+    public ResponseEntity<Void> replicate(@RequestBody ReplicationBatch batch) {
+        if (!clusterService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        clusterService.apply(batch);
+        return ResponseEntity.ok().build();
+    }
+
+    // Anti-entropy: cheap summary first, the full status board only when it differs
+    @GetMapping("/digest")
+    public ResponseEntity<ClusterService.Digest> getDigest() {
+        if (!clusterService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(clusterService.digest());
+    }
+
+    @GetMapping("/statuses")
+    public ResponseEntity<ReplicationBatch> getStatuses() {
+        if (!clusterService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(clusterService.statusSnapshot());
+    }
+}
@@ -1,24 +1,39 @@
 package com.crisisconnect.controller;
 
+import com.crisisconnect.exception.InvalidQueryException;
 import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.MessageSearchResult;
 import com.crisisconnect.model.StatusEntry;
+import com.crisisconnect.service.GeoRoutingService;
 import com.crisisconnect.service.MessageBroadcastService;
+import com.crisisconnect.service.MessageDispatchService;
+import com.crisisconnect.service.RelayService;
 import com.crisisconnect.service.SocketServerService;
 import com.crisisconnect.service.StatusService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import jakarta.validation.Valid;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
@@ -30,6 +45,9 @@ import java.util.Enumeration;
 @Slf4j
 public class CrisisConnectController {
 
+    private static final int MAX_NEAREST = 1000;
+    private static final int MAX_SEARCH_RESULTS = 500;
+
     @Autowired
     private MessageBroadcastService broadcastService;
 
@@ -39,6 +57,24 @@ public class CrisisConnectController {
     @Autowired
     private SocketServerService socketServerService;
 
+    @Autowired
+    private MessageDispatchService dispatchService;
+
+    @Autowired
+    private GeoRoutingService geoRouting;
+
+    @Autowired
+    private RelayService relayService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Largest list (messages or statuses) whose rendered body is kept for the next poll
+    @Value("${crisis.http.body-cache.max-entries:5000}")
+    private int bodyCacheMaxEntries;
+
+    private final VersionedResponses versioned = new VersionedResponses();
+
     // Send a new message
     @PostMapping(value = "/messages", produces = "application/json")
     public ResponseEntity<Message> sendMessage(@Valid @RequestBody Message message) {
@@ -57,35 +93,72 @@ public class CrisisConnectController {
             statusService.updateStatus(newStatus);
         }
 
-        broadcastService.broadcastMessage(message);
-        socketServerService.broadcastMessage(message);
+        // Queued by priority; fan-out to STOMP and socket clients happens on the dispatcher
+        dispatchService.submit(message);
 
         log.info("Message sent via REST API: {}", message.getContent());
         return ResponseEntity.ok(message);
     }
 
-    // Get recent messages
+    // Get recent messages; 304 while nothing changed (If-None-Match)
     @GetMapping("/messages")
-    public ResponseEntity<List<Message>> getMessages(
-            @RequestParam(defaultValue = "50") int limit) {
-        return ResponseEntity.ok(broadcastService.getRecentMessages(limit));
+    public ResponseEntity<byte[]> getMessages(
+            @RequestParam(defaultValue = "50") int limit, WebRequest request) throws IOException {
+        String version = Long.toString(broadcastService.getHistoryVersion());
+        return versioned.respond(request, objectMapper, "messages." + limit, version, limit <= bodyCacheMaxEntries,
+                () -> broadcastService.getRecentMessages(limit));
     }
 
-    // Get all messages
+    // Get only the messages after a sequence the client already has (resume after a reconnect)
+    @GetMapping(value = "/messages", params = "since")
+    public ResponseEntity<MessageDelta> getMessagesSince(@RequestParam long since) {
+        return ResponseEntity.ok(broadcastService.getMessagesSince(since));
+    }
+
+    // Get all held messages, oldest first, streamed; page with after=<last sequence seen>&limit=
     @GetMapping("/messages/all")
-    public ResponseEntity<List<Message>> getAllMessages() {
-        return ResponseEntity.ok(broadcastService.getAllMessages());
+    public void getAllMessages(@RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit, WebRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!notModified(request, response, VersionedResponses.page("all", after, limit),
+                broadcastService.getHistoryVersion())) {
+            JsonStreams.writeArray(objectMapper, streamMessages(after, limit), response);
+        }
+    }
+
+    @GetMapping(value = "/messages/all", produces = JsonStreams.NDJSON)
+    public void getAllMessagesAsLines(@RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit, WebRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!notModified(request, response, VersionedResponses.page("all.lines", after, limit),
+                broadcastService.getHistoryVersion())) {
+            JsonStreams.writeLines(objectMapper, streamMessages(after, limit), response);
+        }
     }
 
-    // Update user status
+    // Full-text search over the held history: words are ANDed, "quoted phrases", prefix*, OR between alternatives
+    @GetMapping("/messages/search")
+    public ResponseEntity<MessageSearchResult> searchMessages(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(required = false) Set<Message.MessageType> type,
+            @RequestParam(required = false) Set<Message.MessagePriority> priority,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!broadcastService.isSearchEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(broadcastService.search(q, type, priority, from, to,
+                Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
+    // Update user status; StatusService publishes it to /topic/status/batch (conflated)
     @MessageMapping("/status")
-    @SendTo("/topic/status")
-    public StatusEntry updateStatus(@Payload StatusEntry statusEntry, SimpMessageHeaderAccessor headerAccessor) {
-        statusService.updateStatus(statusEntry);
+    public void updateStatus(@Payload StatusEntry statusEntry, SimpMessageHeaderAccessor headerAccessor) {
+        statusService.updateStatus(statusEntry, StatusService.UpdateSource.STOMP);
         if (headerAccessor != null && headerAccessor.getSessionId() != null) {
             statusService.registerSession(headerAccessor.getSessionId(), statusEntry.getUserId());
         }
-        return statusEntry;
     }
 
     // Update user status via REST
@@ -95,10 +168,72 @@ public class CrisisConnectController {
         return ResponseEntity.ok(statusEntry);
     }
 
-    // Get all statuses
+    // Get all statuses; 304 while the board is unchanged. A small whole board is served from the last render
     @GetMapping("/status")
-    public ResponseEntity<List<StatusEntry>> getAllStatuses() {
-        return ResponseEntity.ok(statusService.getAllStatuses());
+    public void getAllStatuses(@RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit, WebRequest request, HttpServletResponse response)
+            throws IOException {
+        long version = statusService.getVersion();
+        if (notModified(request, response, VersionedResponses.page("status", after, limit), version)) {
+            return;
+        }
+        if (after == null && limit == null && statusService.getUserCount() <= bodyCacheMaxEntries) {
+            byte[] body = versioned.body(objectMapper, "status", Long.toString(version), true,
+                    () -> statusService.streamStatuses(null, Long.MAX_VALUE));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+            return;
+        }
+        JsonStreams.writeArray(objectMapper, statusService.streamStatuses(after, pageLimit(limit)), response);
+    }
+
+    @GetMapping(value = "/status", produces = JsonStreams.NDJSON)
+    public void getAllStatusesAsLines(@RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit, WebRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!notModified(request, response, VersionedResponses.page("status.lines", after, limit),
+                statusService.getVersion())) {
+            JsonStreams.writeLines(objectMapper, statusService.streamStatuses(after, pageLimit(limit)), response);
+        }
+    }
+
+    // Users within radiusKm of a point, nearest first (e.g. status=NEED_HELP,CRITICAL)
+    @GetMapping("/status/nearby")
+    public ResponseEntity<List<StatusEntry>> getNearbyStatuses(
+            @RequestParam double lat, @RequestParam double lon, @RequestParam double radiusKm,
+            @RequestParam(required = false) Set<String> status) {
+        return ResponseEntity.ok(statusService.findWithinRadius(lat, lon, radiusKm, status));
+    }
+
+    // Users inside a bounding box
+    @GetMapping("/status/area")
+    public ResponseEntity<List<StatusEntry>> getStatusesInArea(
+            @RequestParam double minLat, @RequestParam double minLon,
+            @RequestParam double maxLat, @RequestParam double maxLon,
+            @RequestParam(required = false) Set<String> status) {
+        return ResponseEntity.ok(statusService.findInArea(minLat, minLon, maxLat, maxLon, status));
+    }
+
+    // The k users closest to a point
+    @GetMapping("/status/nearest")
+    public ResponseEntity<List<StatusEntry>> getNearestStatuses(
+            @RequestParam double lat, @RequestParam double lon,
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(required = false) Set<String> status) {
+        return ResponseEntity.ok(statusService.findNearest(lat, lon, Math.min(k, MAX_NEAREST), status));
+    }
+
+    // STOMP destinations to subscribe to for messages in (and untagged messages outside) a region
+    @GetMapping("/areas")
+    public ResponseEntity<Map<String, Object>> getAreaDestinations(
+            @RequestParam double minLat, @RequestParam double minLon,
+            @RequestParam double maxLat, @RequestParam double maxLon) {
+        Map<String, Object> areas = new HashMap<>();
+        areas.put("unscoped", GeoRoutingService.UNSCOPED_DESTINATION);
+        areas.put("destinations", geoRouting.destinationsFor(minLat, minLon, maxLat, maxLon));
+        areas.put("tileDegrees", geoRouting.getTileDegrees());
+        return ResponseEntity.ok(areas);
     }
 
     // Get specific user status
@@ -111,17 +246,34 @@ public class CrisisConnectController {
         return ResponseEntity.notFound().build();
     }
 
-    // Get network statistics
+    // Get network statistics; 304 while they are unchanged, and the timestamp is when they were last rendered
     @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getStats() {
+    public ResponseEntity<byte[]> getStats(WebRequest request) throws IOException {
+        String version = broadcastService.getHistoryVersion() + "." + statusService.getVersion() + "."
+                + socketServerService.getActiveConnectionCount();
+        return versioned.respond(request, objectMapper, "stats", version, true, this::stats);
+    }
+
+    private Map<String, Object> stats() {
         Map<String, Object> stats = new HashMap<>();
         stats.put("activeConnections", socketServerService.getActiveConnectionCount());
-        stats.put("totalMessages", broadcastService.getAllMessages().size());
+        stats.put("totalMessages", broadcastService.getMessageCount());
         stats.put("activeUsers", statusService.getActiveUserCount());
         stats.put("criticalUsers", statusService.getCriticalUserCount());
         stats.put("timestamp", LocalDateTime.now());
+        return stats;
+    }
 
-        return ResponseEntity.ok(stats);
+    // Relay topology: this node's upstream link (in relay mode) and the relays connected to it
+    @GetMapping("/relay")
+    public ResponseEntity<Map<String, Object>> getRelay() {
+        Map<String, Object> relay = new HashMap<>();
+        relay.put("nodeId", relayService.getNodeId());
+        relay.put("relayMode", relayService.isEnabled());
+        relay.put("upstream", relayService.getUpstream());
+        relay.put("outboxDepth", relayService.getOutboxDepth());
+        relay.put("downstream", socketServerService.getRelayNodes());
+        return ResponseEntity.ok(relay);
     }
 
     // Health check
@@ -207,4 +359,29 @@ public class CrisisConnectController {
         }
         return ResponseEntity.ok(info);
     }
-}
\ No newline at end of file
+
+    // Answers 304 if the client holds this version; otherwise tags the response that follows
+    private boolean notModified(WebRequest request, HttpServletResponse response, String variant, long version) {
+        String etag = versioned.etag(variant, Long.toString(version));
+        if (request.checkNotModified(etag)) {
+            return true;
+        }
+        response.setHeader(HttpHeaders.ETAG, etag);
+        return false;
+    }
+
+    private Iterator<Message> streamMessages(Long after, Integer limit) {
+        return broadcastService.streamMessages(after != null ? after : -1, pageLimit(limit));
+    }
+
+    // No limit: everything, which is still streamed
+    private static long pageLimit(Integer limit) {
+        if (limit == null) {
+            return Long.MAX_VALUE;
+        }
+        if (limit <= 0) {
+            throw new InvalidQueryException("limit must be positive: " + limit);
+        }
+        return limit;
+    }
+}
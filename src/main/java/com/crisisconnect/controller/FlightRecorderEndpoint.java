@@ -0,0 +1,141 @@
+package com.crisisconnect.controller;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/flightrecorder}: start a Java Flight Recorder recording (POST), list recordings (GET),
+ * download what one has captured so far as a {@code .jfr} file (GET {@code /{id}}) and close it (DELETE
+ * {@code /{id}}). Recordings include the per-message events of {@code MessageEvents}, which find where a
+ * message spent its time when opened in JDK Mission Control or {@code jfr print}.
+ */
+@Component
+@WebEndpoint(id = "flightrecorder")
+@Slf4j
+public class FlightRecorderEndpoint {
+
+    // Bounds the disk a recording started without a duration can use
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+
+    @ReadOperation
+    public WebEndpointResponse<List<Map<String, Object>>> recordings() {
+        if (!FlightRecorder.isAvailable()) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+        }
+        return new WebEndpointResponse<>(FlightRecorder.getFlightRecorder().getRecordings().stream()
+                .map(FlightRecorderEndpoint::describe)
+                .toList());
+    }
+
+    /**
+     * Starts a recording with one of the JDK's settings ({@code default}, the low-overhead one, or
+     * {@code profile}); it stops after {@code durationSeconds}, or keeps the last {@code maxAgeSeconds}.
+     */
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> start(@Nullable String settings, @Nullable Long durationSeconds,
+            @Nullable Long maxAgeSeconds) {
+        if (!FlightRecorder.isAvailable()) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+        }
+        String name = settings != null ? settings : "default";
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration(name));
+        } catch (IOException | ParseException e) {
+            throw new InvalidEndpointRequestException("Unknown recording settings: " + name, "Unknown settings");
+        }
+        recording.setName("crisis-connect-" + name);
+        recording.setToDisk(true);
+        if (durationSeconds != null) {
+            recording.setDuration(Duration.ofSeconds(durationSeconds));
+        }
+        recording.setMaxAge(maxAgeSeconds != null ? Duration.ofSeconds(maxAgeSeconds) : DEFAULT_MAX_AGE);
+        recording.start();
+        log.info("🎥 Flight recording {} started ({} settings)", recording.getId(), name);
+        return new WebEndpointResponse<>(describe(recording));
+    }
+
+    /**
+     * Everything the recording holds so far; a running recording keeps running.
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump(@Selector long id) throws IOException {
+        Recording recording = find(id);
+        if (recording == null || recording.getState() == RecordingState.NEW
+                || recording.getState() == RecordingState.CLOSED) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path file = Files.createTempFile("crisis-connect-", ".jfr");
+        try (Recording copy = recording.copy(true)) {
+            copy.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        // The file goes away once the response has been written
+        return new WebEndpointResponse<>(new InputStreamResource(
+                Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE)));
+    }
+
+    @DeleteOperation
+    public WebEndpointResponse<Map<String, Object>> close(@Selector long id) {
+        Recording recording = find(id);
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Map<String, Object> description = describe(recording);
+        recording.close();
+        log.info("🎥 Flight recording {} closed", id);
+        return new WebEndpointResponse<>(description);
+    }
+
+    private static Recording find(long id) {
+        if (!FlightRecorder.isAvailable()) {
+            return null;
+        }
+        return FlightRecorder.getFlightRecorder().getRecordings().stream()
+                .filter(recording -> recording.getId() == id)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("id", recording.getId());
+        description.put("name", recording.getName());
+        description.put("state", recording.getState());
+        description.put("startTime", recording.getStartTime());
+        description.put("durationSeconds", seconds(recording.getDuration()));
+        description.put("maxAgeSeconds", seconds(recording.getMaxAge()));
+        description.put("size", recording.getSize());
+        return description;
+    }
+
+    private static Long seconds(Duration duration) {
+        return duration != null ? duration.toSeconds() : null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.crisisconnect.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Strong ETags for polled endpoints, built from the version counters the services keep, and the last body
+ * rendered for each endpoint variant, so a poll that finds nothing new is answered with a 304 or with bytes
+ * already at hand instead of serializing the data again.
+ * <p>
+ * Callers read the version before the data it describes and services bump it only after a change is
+ * visible, so a body is never older than its tag. It may be slightly newer, which costs a client one extra
+ * download of the same content.
+ */
+final class VersionedResponses {
+
+    // Bounds the cache when clients pick arbitrary variants (e.g. many different limits)
+    private static final int MAX_VARIANTS = 32;
+
+    // Versions restart with the process; this keeps a tag from before a restart from matching after it
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, Rendered> bodies = new ConcurrentHashMap<>();
+
+    private record Rendered(String version, byte[] body) {
+    }
+
+    String etag(String variant, String version) {
+        return "\"" + epoch + "-" + variant + "-" + version + "\"";
+    }
+
+    /**
+     * The variant of a paged listing, so each page is tagged (and cached) apart from the whole listing and
+     * from other pages. Parameters are URL-encoded to keep quotes out of the tag.
+     */
+    static String page(String variant, Object after, Integer limit) {
+        if (after == null && limit == null) {
+            return variant;
+        }
+        return variant + "." + (after != null ? URLEncoder.encode(after.toString(), StandardCharsets.UTF_8) : "")
+                + "." + (limit != null ? limit : "");
+    }
+
+    /**
+     * A 304 (as {@code null}, which Spring has already answered) if the client holds this version, else the
+     * JSON body for it.
+     */
+    ResponseEntity<byte[]> respond(WebRequest request, ObjectMapper objectMapper, String variant, String version,
+            boolean cacheable, Supplier<?> data) throws IOException {
+        String etag = etag(variant, version);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body(objectMapper, variant, version, cacheable, data));
+    }
+
+    /**
+     * The compact JSON body of {@code variant} at {@code version}, rendered from {@code data} unless it is cached.
+     * It is kept for the next caller only when {@code cacheable}.
+     */
+    byte[] body(ObjectMapper objectMapper, String variant, String version, boolean cacheable, Supplier<?> data)
+            throws IOException {
+        Rendered rendered = bodies.get(variant);
+        if (rendered != null && rendered.version().equals(version)) {
+            return rendered.body();
+        }
+        byte[] body = JsonStreams.compact(objectMapper).writeValueAsBytes(data.get());
+        if (cacheable && (bodies.size() < MAX_VARIANTS || bodies.containsKey(variant))) {
+            bodies.put(variant, new Rendered(version, body));
+        } else if (rendered != null) {
+            // Don't keep an outdated body that has grown too large to cache around
+            bodies.remove(variant, rendered);
+        }
+        return body;
+    }
+}
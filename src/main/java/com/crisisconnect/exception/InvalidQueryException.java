@@ -0,0 +1,14 @@
+package com.crisisconnect.exception;
+
+/**
+ * A query parameter the caller got wrong (coordinates, an area, a limit), answered with 400. Other
+ * {@link IllegalArgumentException}s are bugs and stay server errors.
+ */
+public class InvalidQueryException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidQueryException(String message) {
+        super(message);
+    }
+}
@@ -1,10 +1,13 @@
 package com.crisisconnect.listener;
 
+import com.crisisconnect.service.GeoRoutingService;
 import com.crisisconnect.service.StatusService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
@@ -18,8 +21,24 @@ public class WebSocketEventListener {
     @Autowired
     private StatusService statusService;
 
+    @Autowired
+    private GeoRoutingService geoRouting;
+
     // messageBroadcastService removed as unused
 
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        geoRouting.stompSubscribed(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId(),
+                headerAccessor.getDestination());
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        geoRouting.stompUnsubscribed(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId());
+    }
+
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
@@ -44,5 +63,6 @@ public class WebSocketEventListener {
 
         // If StatusService tracks session IDs, we can remove them.
         statusService.handleDisconnect(event.getSessionId());
+        geoRouting.stompSessionClosed(event.getSessionId());
     }
 }
@@ -13,6 +13,9 @@ import java.time.LocalDateTime;
 public class Message {
     private String id;
 
+    // Position in the server's history, assigned on broadcast; clients resume from the last one they saw
+    private Long sequence;
+
     @NotBlank(message = "Sender ID cannot be empty")
     private String senderId;
 
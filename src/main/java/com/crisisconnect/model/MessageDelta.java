@@ -0,0 +1,24 @@
+package com.crisisconnect.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Reply to an incremental sync: the messages a client missed, or {@code gap = true} (and no messages)
+ * when it has to reload the recent history instead.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDelta {
+    private List<Message> messages;
+    private long latestSequence;
+    private boolean gap;
+
+    public static MessageDelta gap(long latestSequence) {
+        return new MessageDelta(List.of(), latestSequence, true);
+    }
+}
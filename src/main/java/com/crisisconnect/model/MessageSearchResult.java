@@ -0,0 +1,20 @@
+package com.crisisconnect.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Reply to a history search: the newest matching messages (newest first), how many matched in all, and
+ * whether restored history is still being indexed (older matches may be missing until it is done).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchResult {
+    private List<Message> messages;
+    private int total;
+    private boolean indexing;
+}
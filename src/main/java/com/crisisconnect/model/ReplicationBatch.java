@@ -0,0 +1,31 @@
+package com.crisisconnect.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes one cluster node sends its peers: new messages, status entries (latest per user) and status
+ * removals by user id with the time they happened.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationBatch {
+    private String nodeId;
+    private List<Message> messages = new ArrayList<>();
+    private List<StatusEntry> statuses = new ArrayList<>();
+    private Map<String, LocalDateTime> removedStatuses = new HashMap<>();
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return messages.isEmpty() && statuses.isEmpty() && removedStatuses.isEmpty();
+    }
+}
@@ -0,0 +1,253 @@
+package com.crisisconnect.protocol;
+
+import com.crisisconnect.model.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Compact binary framing for the raw socket port, an opt-in alternative to JSON lines for weak links.
+ * A device switches by sending the line {@value #NEGOTIATE}; the server answers {@value #ACCEPTED} as its
+ * last text line (or {@value #REFUSED} and stays on JSON lines), and from then on both directions carry
+ * frames:
+ * <pre>
+ *   varint length | kind | payload
+ * </pre>
+ * A MESSAGE payload has no field names: type and priority are one byte each, UUID ids are 16 raw bytes,
+ * timestamps are epoch milliseconds (the local date-time read as UTC, so it round-trips exactly to the
+ * millisecond), and the sender is a reference defined once per connection by a SENDER frame. TEXT frames
+ * carry what used to be a line: commands such as RESUME and the JSON replies to them.
+ * <p>
+ * Payloads of at least {@code compressThreshold} bytes are deflated when that makes them smaller; the
+ * {@link #DEFLATED} bit on the kind byte tells the decoder. Encoding is stateless and thread-safe.
+ */
+public final class CompactCodec {
+
+    public static final String NEGOTIATE = "BINARY";
+    public static final String ACCEPTED = "BINARY OK";
+    public static final String REFUSED = "BINARY NO";
+
+    static final int KIND_MESSAGE = 1;
+    static final int KIND_TEXT = 2;
+    static final int KIND_SENDER = 3;
+    static final int DEFLATED = 0x80;
+    static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    static final int HAS_UUID = 1;
+    static final int HAS_ID = 2;
+    static final int HAS_SEQUENCE = 4;
+    static final int HAS_TIMESTAMP = 8;
+    static final int HAS_LATITUDE = 16;
+    static final int HAS_LONGITUDE = 32;
+    static final int SENDER_INLINE = 64;
+
+    static final Message.MessageType[] TYPES = Message.MessageType.values();
+    static final Message.MessagePriority[] PRIORITIES = Message.MessagePriority.values();
+
+    // Room for the longest length prefix in front of the payload
+    private static final int HEADER_RESERVE = 4;
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold smallest payload worth deflating; 0 never compresses
+     */
+    public CompactCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * @param senderRef the message's reference in the connection's {@link SenderTable}, or
+     *                  {@link SenderTable#NO_REF} to write sender id and name inline
+     */
+    public byte[] encodeMessage(Message message, int senderRef) {
+        FrameWriter out = new FrameWriter(128);
+        String id = message.getId();
+        boolean uuid = isCanonicalUuid(id);
+        int flags = (uuid ? HAS_UUID : id != null ? HAS_ID : 0)
+                | (message.getSequence() != null ? HAS_SEQUENCE : 0)
+                | (message.getTimestamp() != null ? HAS_TIMESTAMP : 0)
+                | (message.getLatitude() != null ? HAS_LATITUDE : 0)
+                | (message.getLongitude() != null ? HAS_LONGITUDE : 0)
+                | (senderRef < 0 ? SENDER_INLINE : 0);
+        out.writeByte(flags);
+        out.writeByte(message.getType() != null ? message.getType().ordinal() + 1 : 0);
+        out.writeByte(message.getPriority() != null ? message.getPriority().ordinal() + 1 : 0);
+        if (uuid) {
+            UUID parsed = UUID.fromString(id);
+            out.writeLong(parsed.getMostSignificantBits());
+            out.writeLong(parsed.getLeastSignificantBits());
+        } else if (id != null) {
+            out.writeString(id);
+        }
+        if (message.getSequence() != null) {
+            out.writeVarlong(message.getSequence());
+        }
+        if (senderRef < 0) {
+            out.writeString(message.getSenderId());
+            out.writeString(message.getSenderName());
+        } else {
+            out.writeVarlong(senderRef);
+        }
+        out.writeString(message.getContent());
+        if (message.getTimestamp() != null) {
+            long millis = message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+            out.writeVarlong((millis << 1) ^ (millis >> 63));
+        }
+        if (message.getLatitude() != null) {
+            out.writeLong(Double.doubleToLongBits(message.getLatitude()));
+        }
+        if (message.getLongitude() != null) {
+            out.writeLong(Double.doubleToLongBits(message.getLongitude()));
+        }
+        return frame(KIND_MESSAGE, out);
+    }
+
+    public byte[] encodeText(String text) {
+        FrameWriter out = new FrameWriter(text.length() + 8);
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        return frame(KIND_TEXT, out);
+    }
+
+    public byte[] encodeSender(int ref, String senderId, String senderName) {
+        FrameWriter out = new FrameWriter(64);
+        out.writeVarlong(ref);
+        out.writeString(senderId);
+        out.writeString(senderName);
+        return frame(KIND_SENDER, out);
+    }
+
+    static LocalDateTime timestamp(long zigzagMillis) {
+        long millis = (zigzagMillis >>> 1) ^ -(zigzagMillis & 1);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private byte[] frame(int kind, FrameWriter payload) {
+        int length = payload.size();
+        if (compressThreshold > 0 && length >= compressThreshold) {
+            byte[] deflated = deflate(payload, length);
+            if (deflated != null) {
+                payload = new FrameWriter(deflated.length + 8);
+                payload.writeVarlong(length);
+                payload.writeBytes(deflated);
+                kind |= DEFLATED;
+            }
+        }
+        return payload.finish(kind);
+    }
+
+    // null when deflating doesn't save anything
+    private static byte[] deflate(FrameWriter payload, int length) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(payload.buffer(), HEADER_RESERVE, length);
+        deflater.finish();
+        byte[] out = new byte[length];
+        int written = deflater.deflate(out);
+        if (!deflater.finished() || written >= length - 4) {
+            return null;
+        }
+        return Arrays.copyOf(out, written);
+    }
+
+    private static boolean isCanonicalUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Growable payload buffer that leaves room in front for the frame header.
+     */
+    private static final class FrameWriter {
+
+        private byte[] buffer;
+        private int position = HEADER_RESERVE;
+
+        FrameWriter(int expectedPayload) {
+            buffer = new byte[HEADER_RESERVE + expectedPayload];
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        int size() {
+            return position - HEADER_RESERVE;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        // Length + 1, so that 0 can stand for null
+        void writeString(String value) {
+            if (value == null) {
+                writeByte(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarlong(bytes.length + 1L);
+            writeBytes(bytes);
+        }
+
+        byte[] finish(int kind) {
+            int length = size() + 1;
+            if (length > MAX_FRAME_BYTES) {
+                throw new IllegalArgumentException("Frame exceeds " + MAX_FRAME_BYTES + " bytes");
+            }
+            // Kind byte, then the varint length, written backwards into the reserved space
+            int start = HEADER_RESERVE - 1;
+            buffer[start] = (byte) kind;
+            int lengthBytes = length < 1 << 7 ? 1 : length < 1 << 14 ? 2 : 3;
+            start -= lengthBytes;
+            for (int i = 0; i < lengthBytes; i++) {
+                int bits = (length >>> (7 * i)) & 0x7F;
+                buffer[start + i] = (byte) (i < lengthBytes - 1 ? bits | 0x80 : bits);
+            }
+            return Arrays.copyOfRange(buffer, start, position);
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+    }
+}
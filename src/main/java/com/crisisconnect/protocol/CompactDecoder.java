@@ -0,0 +1,272 @@
+package com.crisisconnect.protocol;
+
+import com.crisisconnect.model.Message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads one direction of a {@link CompactCodec} stream. SENDER frames are absorbed into the decoder's own
+ * sender table; everything else comes out as a {@link Frame}. One instance per connection, not thread-safe.
+ */
+public final class CompactDecoder {
+
+    /**
+     * Either a message or a text line (a command or a JSON reply).
+     */
+    public record Frame(Message message, String text) {
+    }
+
+    private final Map<Integer, SenderTable.Sender> senders = new HashMap<>();
+    private final Inflater inflater = new Inflater();
+
+    // Partially received frame when fed from a ByteBuffer
+    private int length;
+    private int lengthShift;
+    private byte[] body;
+    private int filled;
+
+    /**
+     * Consumes bytes until a frame is complete; returns {@code null} once {@code data} runs out first.
+     */
+    public Frame next(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (body == null) {
+                byte b = data.get();
+                length |= (b & 0x7F) << lengthShift;
+                lengthShift += 7;
+                if ((b & 0x80) != 0) {
+                    if (lengthShift > 21) {
+                        throw new IOException("Malformed frame length");
+                    }
+                    continue;
+                }
+                body = new byte[checkLength(length)];
+                length = 0;
+                lengthShift = 0;
+                continue;
+            }
+            int n = Math.min(data.remaining(), body.length - filled);
+            data.get(body, filled, n);
+            filled += n;
+            if (filled == body.length) {
+                byte[] complete = body;
+                body = null;
+                filled = 0;
+                Frame frame = decode(complete);
+                if (frame != null) {
+                    return frame;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Blocks for the next frame; returns {@code null} at end of stream.
+     */
+    public Frame read(InputStream in) throws IOException {
+        while (true) {
+            int frameLength = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Stream ended inside a frame header");
+                }
+                if (shift > 14 && (b & 0x80) != 0) {
+                    throw new IOException("Malformed frame length");
+                }
+                frameLength |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            byte[] frame = in.readNBytes(checkLength(frameLength));
+            if (frame.length < frameLength) {
+                throw new EOFException("Stream ended inside a frame");
+            }
+            Frame decoded = decode(frame);
+            if (decoded != null) {
+                return decoded;
+            }
+        }
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 1 || length > CompactCodec.MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private Frame decode(byte[] frame) throws IOException {
+        int kind = frame[0] & 0xFF;
+        FrameReader in = new FrameReader(frame, 1, frame.length);
+        if ((kind & CompactCodec.DEFLATED) != 0) {
+            in = inflate(in);
+            kind &= ~CompactCodec.DEFLATED;
+        }
+        switch (kind) {
+            case CompactCodec.KIND_MESSAGE:
+                return new Frame(readMessage(in), null);
+            case CompactCodec.KIND_TEXT:
+                return new Frame(null, in.readRemainingString());
+            case CompactCodec.KIND_SENDER:
+                int ref = in.readVarint();
+                senders.put(ref, new SenderTable.Sender(in.readString(), in.readString()));
+                return null;
+            default:
+                throw new IOException("Unknown frame kind " + kind);
+        }
+    }
+
+    private FrameReader inflate(FrameReader in) throws IOException {
+        int rawLength = checkLength(in.readVarint());
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(in.bytes, in.position, in.limit - in.position);
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawLength) {
+                throw new IOException("Compressed frame is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame", e);
+        }
+        return new FrameReader(raw, 0, rawLength);
+    }
+
+    private Message readMessage(FrameReader in) throws IOException {
+        int flags = in.readByte();
+        Message message = new Message();
+        message.setType(in.readEnum(CompactCodec.TYPES));
+        message.setPriority(in.readEnum(CompactCodec.PRIORITIES));
+        if ((flags & CompactCodec.HAS_UUID) != 0) {
+            message.setId(new UUID(in.readLong(), in.readLong()).toString());
+        } else if ((flags & CompactCodec.HAS_ID) != 0) {
+            message.setId(in.readString());
+        }
+        if ((flags & CompactCodec.HAS_SEQUENCE) != 0) {
+            message.setSequence(in.readVarlong());
+        }
+        if ((flags & CompactCodec.SENDER_INLINE) != 0) {
+            message.setSenderId(in.readString());
+            message.setSenderName(in.readString());
+        } else {
+            int ref = in.readVarint();
+            SenderTable.Sender sender = senders.get(ref);
+            if (sender == null) {
+                throw new IOException("Unknown sender reference " + ref);
+            }
+            message.setSenderId(sender.id());
+            message.setSenderName(sender.name());
+        }
+        message.setContent(in.readString());
+        if ((flags & CompactCodec.HAS_TIMESTAMP) != 0) {
+            message.setTimestamp(CompactCodec.timestamp(in.readVarlong()));
+        }
+        if ((flags & CompactCodec.HAS_LATITUDE) != 0) {
+            message.setLatitude(Double.longBitsToDouble(in.readLong()));
+        }
+        if ((flags & CompactCodec.HAS_LONGITUDE) != 0) {
+            message.setLongitude(Double.longBitsToDouble(in.readLong()));
+        }
+        return message;
+    }
+
+    private static final class FrameReader {
+
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        FrameReader(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            int ordinal = readByte();
+            if (ordinal > values.length) {
+                throw new IOException("Unknown enum value " + ordinal);
+            }
+            return ordinal == 0 ? null : values[ordinal - 1];
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readVarint() throws IOException {
+            long value = readVarlong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Varint out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            require(length - 1);
+            String value = new String(bytes, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+
+        String readRemainingString() {
+            String value = new String(bytes, position, limit - position, StandardCharsets.UTF_8);
+            position = limit;
+            return value;
+        }
+
+        private void require(int count) throws IOException {
+            if (count > limit - position) {
+                throw new IOException("Truncated frame");
+            }
+        }
+    }
+}
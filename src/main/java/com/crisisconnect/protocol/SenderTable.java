@@ -0,0 +1,59 @@
+package com.crisisconnect.protocol;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small integer references for (sender id, sender name) pairs, so compact frames carry one varint instead of
+ * both strings. References are only ever added; once {@code capacity} pairs are known, further senders are
+ * written inline. Thread-safe.
+ */
+public final class SenderTable {
+
+    public static final int NO_REF = -1;
+
+    public record Sender(String id, String name) {
+    }
+
+    private final int capacity;
+    private final Map<Sender, Integer> refs = new ConcurrentHashMap<>();
+    private final Map<Integer, Sender> senders = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public SenderTable(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * The pair's reference, assigning one if there is room, else {@link #NO_REF}.
+     */
+    public int refFor(String senderId, String senderName) {
+        if (senderId == null) {
+            return NO_REF;
+        }
+        Sender sender = new Sender(senderId, senderName);
+        Integer ref = refs.get(sender);
+        if (ref != null) {
+            return ref;
+        }
+        // Nothing is recorded once full, so unknown senders can't grow the table
+        ref = refs.computeIfAbsent(sender, key -> {
+            if (next.get() >= capacity) {
+                return null;
+            }
+            int assigned = next.getAndIncrement();
+            senders.put(assigned, key);
+            return assigned;
+        });
+        return ref != null ? ref : NO_REF;
+    }
+
+    public Sender sender(int ref) {
+        return senders.get(ref);
+    }
+
+    public int size() {
+        return senders.size();
+    }
+}
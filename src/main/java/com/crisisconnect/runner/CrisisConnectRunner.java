@@ -1,5 +1,7 @@
 package com.crisisconnect.runner;
 
+import com.crisisconnect.service.ClusterService;
+import com.crisisconnect.service.RelayService;
 import com.crisisconnect.service.SocketServerService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +16,12 @@ public class CrisisConnectRunner implements ApplicationRunner {
     @Autowired
     private SocketServerService socketServerService;
 
+    @Autowired
+    private RelayService relayService;
+
+    @Autowired
+    private ClusterService clusterService;
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
         log.info("═══════════════════════════════════════════════════");
@@ -21,6 +29,8 @@ public class CrisisConnectRunner implements ApplicationRunner {
         log.info("═══════════════════════════════════════════════════");
 
         socketServerService.start();
+        relayService.start();
+        clusterService.start();
 
         log.info("✅ System ready for disaster communication");
         log.info("📱 Devices can connect via local network");
@@ -0,0 +1,232 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage in front of {@link FileStorageService}. Broadcasts only enqueue; a dedicated writer
+ * thread coalesces everything queued into one append per flush interval (or sooner once a full batch is
+ * waiting). A full queue blocks the producer, and shutdown drains whatever is left. A clear travels through
+ * the same queue, so it lands between the writes queued before and after it.
+ */
+@Service
+@Slf4j
+public class AsyncPersistenceService {
+
+    private final FileStorageService fileStorageService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<Entry> queue;
+
+    // Held while writing to storage, so synchronous writes can't interleave with a flush or a clear
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Messages with a lower sequence were broadcast before the last clear and are never written (guarded by flushLock)
+    private long clearedBefore = Long.MIN_VALUE;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter backpressureEvents;
+
+    private Thread writer;
+    private volatile boolean running;
+
+    public AsyncPersistenceService(FileStorageService fileStorageService, MeterRegistry meterRegistry,
+            @Value("${crisis.storage.write-behind.enabled:true}") boolean enabled,
+            @Value("${crisis.storage.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${crisis.storage.write-behind.batch-size:256}") int batchSize,
+            @Value("${crisis.storage.write-behind.flush-interval-ms:50}") long flushIntervalMs) {
+        this.fileStorageService = fileStorageService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("crisis.persistence.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting to be written to storage")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("crisis.persistence.flush")
+                .description("Time spent writing one coalesced batch to storage")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("crisis.persistence.flush.batch.size")
+                .description("Messages written per flush")
+                .register(meterRegistry);
+        this.backpressureEvents = Counter.builder("crisis.persistence.backpressure")
+                .description("Submissions that blocked because the persistence queue was full")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drainLoop, "crisis-persistence-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void submit(Message message) {
+        if (!enabled) {
+            write(List.of(message));
+            return;
+        }
+
+        Entry entry = Entry.of(message);
+        if (!queue.offer(entry)) {
+            backpressureEvents.increment();
+            try {
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Never drop an accepted message: fall back to a synchronous write
+                write(List.of(message));
+                return;
+            }
+        }
+
+        if (queue.size() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Clears the underlying storage once the writer reaches this point in the queue. Messages with a
+     * sequence below {@code before} (those the history held when it was cleared) are dropped, even if they
+     * are still queued or submitted afterwards; later ones are written after the clear.
+     */
+    public void clear(long before) {
+        if (!enabled) {
+            flushLock.lock();
+            try {
+                clearStorage(before);
+            } finally {
+                flushLock.unlock();
+            }
+            return;
+        }
+        try {
+            queue.put(Entry.clear(before));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing history clear", e);
+        }
+        LockSupport.unpark(writer);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (queue.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Persistence writer failed to flush batch", e);
+            }
+        }
+    }
+
+    private void flush() {
+        flushLock.lock();
+        try {
+            List<Entry> drained = new ArrayList<>(Math.max(queue.size(), 1));
+            queue.drainTo(drained);
+            if (drained.isEmpty()) {
+                return;
+            }
+            List<Message> batch = new ArrayList<>(drained.size());
+            for (Entry entry : drained) {
+                if (entry.message() == null) {
+                    clearStorage(entry.clearBefore());
+                    // Queued ahead of the clear but broadcast after it: still written, just after the clear
+                    batch.removeIf(this::cleared);
+                } else if (!cleared(entry.message())) {
+                    batch.add(entry.message());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            fileStorageService.appendMessages(batch);
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<Message> messages) {
+        flushLock.lock();
+        try {
+            if (!cleared(messages.get(0))) {
+                fileStorageService.appendMessages(messages);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void clearStorage(long before) {
+        clearedBefore = Math.max(clearedBefore, before);
+        fileStorageService.clearMessages();
+    }
+
+    private boolean cleared(Message message) {
+        Long sequence = message.getSequence();
+        return sequence != null && sequence < clearedBefore;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever was accepted before shutdown still reaches disk
+        flush();
+        log.info("Persistence writer stopped");
+    }
+
+    // A message to write, or (without one) the point where the storage is cleared
+    private record Entry(Message message, long clearBefore) {
+
+        static Entry of(Message message) {
+            return new Entry(message, 0);
+        }
+
+        static Entry clear(long before) {
+            return new Entry(null, before);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One connected device, independent of how its socket is driven. Engines feed received bytes in through
+ * {@link #received(ByteBuffer)} and drain {@link #outbound()} to the socket, so a sender never blocks on a
+ * slow device.
+ */
+@Slf4j
+abstract class ClientConnection {
+
+    private final String clientId;
+    private final InetAddress remoteAddress;
+    private final ConnectionHandler handler;
+    private final LineDecoder decoder = new LineDecoder();
+    // Set once the device negotiated compact framing; only touched by the thread feeding received()
+    private CompactDecoder compactDecoder;
+    // Sender references this device has been sent; non-null means compact framing outbound. Guarded by this
+    private BitSet knownSenders;
+    private final OutboundQueue outbound;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile String userName;
+    // Null until the device sends REGION; then it only gets geo-tagged messages inside it
+    private volatile GeoBox region;
+
+    protected ClientConnection(String clientId, InetAddress remoteAddress, ConnectionHandler handler) {
+        this.clientId = clientId;
+        this.remoteAddress = remoteAddress;
+        this.handler = handler;
+        this.outbound = handler.newOutboundQueue();
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    InetAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    String getUserName() {
+        return userName;
+    }
+
+    void setUserName(String userName) {
+        this.userName = userName;
+    }
+
+    GeoBox getRegion() {
+        return region;
+    }
+
+    void setRegion(GeoBox region) {
+        this.region = region;
+    }
+
+    boolean isOpen() {
+        return !closed.get();
+    }
+
+    OutboundQueue outbound() {
+        return outbound;
+    }
+
+    /**
+     * Queues one encoded frame for this device without blocking the caller.
+     */
+    void send(OutboundFrame frame) {
+        if (!isOpen()) {
+            return;
+        }
+        if (!outbound.offer(frame)) {
+            log.warn("Disconnecting slow consumer {} ({} frames queued, {} ms behind)",
+                    clientId, outbound.size(), outbound.lagMillis());
+            handler.onSendFailure(this, ConnectionHandler.SendFailure.SLOW_CONSUMER);
+            close();
+            return;
+        }
+        framesQueued();
+    }
+
+    /**
+     * Queues a message in whichever framing this device speaks, defining its sender first if needed.
+     */
+    synchronized void send(EncodedMessage message, SocketWire wire) {
+        if (knownSenders == null) {
+            send(wire.json(message));
+            return;
+        }
+        EncodedMessage.CompactFrame compact = wire.compact(message);
+        int ref = compact.senderRef();
+        if (ref >= 0 && !knownSenders.get(ref)) {
+            knownSenders.set(ref);
+            send(wire.sender(ref));
+        }
+        send(compact.frame());
+    }
+
+    /**
+     * Queues a protocol reply, as a line or a TEXT frame.
+     */
+    synchronized void sendControl(String text, SocketWire wire) {
+        send(wire.control(text, knownSenders != null));
+    }
+
+    synchronized boolean isCompact() {
+        return knownSenders != null;
+    }
+
+    /**
+     * Switches both directions to compact frames. {@code accepted} is the last line this device gets; must be
+     * called from {@link ConnectionHandler#onLine}, so that the rest of the current read is decoded as frames.
+     */
+    synchronized void switchToCompact(OutboundFrame accepted) {
+        send(accepted);
+        knownSenders = new BitSet();
+        compactDecoder = new CompactDecoder();
+    }
+
+    /**
+     * Lets the engine know there is something to drain.
+     */
+    protected abstract void framesQueued();
+
+    protected abstract void closeTransport();
+
+    protected void received(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (compactDecoder != null) {
+                MessageEvents.Parsed parsed = new MessageEvents.Parsed();
+                parsed.begin();
+                CompactDecoder.Frame frame = compactDecoder.next(data);
+                if (frame == null) {
+                    return;
+                }
+                if (frame.message() != null) {
+                    parsed.end();
+                    handler.onMessage(this, frame.message());
+                    parsed(parsed, frame.message(), true);
+                } else {
+                    handler.onLine(this, frame.text());
+                }
+            } else {
+                String line = decoder.next(data);
+                if (line == null) {
+                    return;
+                }
+                handler.onLine(this, line);
+            }
+        }
+    }
+
+    /**
+     * For engines whose socket write failed; a failure after the connection was closed is not reported.
+     */
+    protected void writeFailed(IOException e) {
+        if (isOpen()) {
+            log.error("Error sending message to client {}", clientId, e);
+            handler.onSendFailure(this, ConnectionHandler.SendFailure.WRITE_ERROR);
+        }
+        close();
+    }
+
+    /**
+     * Records the decoding of a message once it was handled (and so has an id).
+     */
+    void parsed(MessageEvents.Parsed event, Message message, boolean compact) {
+        if (event.shouldCommit()) {
+            event.messageId = message.getId();
+            event.clientId = clientId;
+            event.compact = compact;
+            event.commit();
+        }
+    }
+
+    /**
+     * For engines, once a frame was written to the socket.
+     */
+    protected void written(MessageEvents.Written event, OutboundFrame frame) {
+        event.end();
+        if (frame.messageId() != null && event.shouldCommit()) {
+            event.messageId = frame.messageId();
+            event.clientId = clientId;
+            event.sinceEncoded = System.nanoTime() - frame.createdNanos();
+            event.bytes = frame.bytes().length;
+            event.commit();
+        }
+    }
+
+    protected void opened() {
+        handler.onOpen(this);
+    }
+
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            closeTransport();
+            outbound.close();
+            handler.onClose(this);
+        }
+    }
+}
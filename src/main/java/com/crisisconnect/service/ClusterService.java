@@ -0,0 +1,451 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.NetworkNode;
+import com.crisisconnect.model.ReplicationBatch;
+import com.crisisconnect.model.StatusEntry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cluster mode: with {@code crisis.cluster.peers} set, every node replicates its message history and status
+ * board to the others over HTTP, so devices can use whichever node is nearest and still see the same picture.
+ * <ul>
+ *   <li>Push: messages dispatched here and local status changes are collected and POSTed to every peer as one
+ *   {@link ReplicationBatch} per {@code batch-ms} (statuses conflated to the latest per user).</li>
+ *   <li>Merge: messages are keyed by id (repeats are dropped by the dispatcher), statuses by user id with the
+ *   newest timestamp winning; removals are remembered for {@code tombstone-ttl-minutes} so an older update
+ *   can't bring a user back.</li>
+ *   <li>Anti-entropy: every {@code anti-entropy-ms}, and right after startup, each node pulls from every peer
+ *   the messages after the last peer sequence it saw ({@code /api/messages?since=}), and the peer's status
+ *   board when their digests differ. A node that was down or partitioned catches up this way.</li>
+ * </ul>
+ * Pushes to an unreachable peer are not retried; its own anti-entropy pulls repair the gap once it is back.
+ */
+@Service
+@Slf4j
+public class ClusterService {
+
+    /**
+     * Summary a node serves so peers can skip pulling its status board when nothing differs.
+     */
+    public record Digest(String nodeId, long statuses, int statusCount) {
+    }
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<>() {
+    };
+
+    private final MessageDispatchService dispatchService;
+    private final StatusService statusService;
+    private final ObjectMapper objectMapper;
+    private final List<Peer> peers;
+    private final String nodeId;
+    private final int batchSize;
+    private final long batchNanos;
+    private final long antiEntropyNanos;
+    private final Duration requestTimeout;
+    private final Duration tombstoneTtl;
+    private final HttpClient http;
+
+    // Changes waiting for the next push
+    private final BlockingQueue<Message> outgoingMessages = new LinkedBlockingQueue<>();
+    private final Map<String, StatusEntry> outgoingStatuses = new ConcurrentHashMap<>();
+    private final Map<String, LocalDateTime> outgoingRemovals = new ConcurrentHashMap<>();
+
+    private final Counter batchesSent;
+    private final DistributionSummary batchBytes;
+    private final Counter appliedMessages;
+    private final Counter appliedStatuses;
+
+    private Thread pusher;
+    private Thread antiEntropy;
+    private volatile boolean running;
+
+    public ClusterService(@Lazy MessageDispatchService dispatchService, StatusService statusService,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            @Value("${crisis.cluster.peers:}") String peers,
+            @Value("${crisis.cluster.node-id:}") String nodeId,
+            @Value("${crisis.cluster.batch-ms:50}") long batchMs,
+            @Value("${crisis.cluster.batch-size:256}") int batchSize,
+            @Value("${crisis.cluster.anti-entropy-ms:10000}") long antiEntropyMs,
+            @Value("${crisis.cluster.request-timeout-ms:2000}") long requestTimeoutMs,
+            @Value("${crisis.cluster.tombstone-ttl-minutes:60}") long tombstoneTtlMinutes) {
+        this.dispatchService = dispatchService;
+        this.statusService = statusService;
+        this.objectMapper = objectMapper;
+        this.peers = Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(peer -> new Peer(peerUri(peer)))
+                .toList();
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId.trim();
+        this.batchSize = batchSize;
+        this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMs);
+        this.antiEntropyNanos = TimeUnit.MILLISECONDS.toNanos(antiEntropyMs);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.tombstoneTtl = Duration.ofMinutes(tombstoneTtlMinutes);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .build();
+
+        this.batchesSent = Counter.builder("crisis.cluster.batches.sent")
+                .description("Replication batches pushed to peers")
+                .register(meterRegistry);
+        this.batchBytes = DistributionSummary.builder("crisis.cluster.batch.bytes")
+                .description("Size of one pushed replication batch")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.appliedMessages = applied(meterRegistry, "message");
+        this.appliedStatuses = applied(meterRegistry, "status");
+        Gauge.builder("crisis.cluster.peers.up", this.peers, list -> list.stream().filter(peer -> peer.up).count())
+                .description("Peers that answered the last push or sync")
+                .register(meterRegistry);
+    }
+
+    private static Counter applied(MeterRegistry meterRegistry, String kind) {
+        return Counter.builder("crisis.cluster.applied")
+                .description("Changes from peers that were new to this node")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private static URI peerUri(String peer) {
+        String url = peer.contains("://") ? peer : "http://" + peer;
+        return URI.create(url.endsWith("/") ? url : url + "/");
+    }
+
+    public boolean isEnabled() {
+        return !peers.isEmpty();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<NetworkNode> getPeers() {
+        List<NetworkNode> nodes = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            nodes.add(new NetworkNode(peer.nodeId, peer.base.getHost(), null, peer.base.getPort(),
+                    NetworkNode.NodeType.SERVER, peer.lastContact, peer.up));
+        }
+        return nodes;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (isEnabled()) {
+            statusService.setChangeListener(new LocalStatusChanges());
+        }
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        running = true;
+        pusher = new Thread(this::pushLoop, "crisis-cluster-pusher");
+        pusher.setDaemon(true);
+        pusher.start();
+        antiEntropy = new Thread(this::antiEntropyLoop, "crisis-cluster-sync");
+        antiEntropy.setDaemon(true);
+        antiEntropy.start();
+        log.info("🌐 Cluster node {} replicating with {} peers", nodeId, peers.size());
+    }
+
+    /**
+     * Queues a message dispatched on this node for the next push.
+     */
+    void replicate(Message message) {
+        if (!isEnabled()) {
+            return;
+        }
+        outgoingMessages.add(message);
+        if (outgoingMessages.size() >= batchSize) {
+            LockSupport.unpark(pusher);
+        }
+    }
+
+    /**
+     * Merges a batch pushed by a peer (or pulled from one).
+     */
+    public void apply(ReplicationBatch batch) {
+        int messages = 0;
+        for (Message message : batch.getMessages()) {
+            if (dispatchService.submit(message, MessageDispatchService.Origin.PEER)) {
+                messages++;
+            }
+        }
+        appliedMessages.increment(messages);
+        applyStatuses(batch);
+    }
+
+    private int applyStatuses(ReplicationBatch batch) {
+        int changed = 0;
+        for (StatusEntry entry : batch.getStatuses()) {
+            if (statusService.mergeRemote(entry)) {
+                changed++;
+            }
+        }
+        for (Map.Entry<String, LocalDateTime> removal : batch.getRemovedStatuses().entrySet()) {
+            if (statusService.mergeRemoval(removal.getKey(), removal.getValue())) {
+                changed++;
+            }
+        }
+        appliedStatuses.increment(changed);
+        return changed;
+    }
+
+    public Digest digest() {
+        long digest = 0;
+        int count = 0;
+        for (Iterator<StatusEntry> entries = statusService.streamStatuses(null, Long.MAX_VALUE); entries.hasNext(); ) {
+            StatusEntry entry = entries.next();
+            digest ^= mix(entry.getUserId().hashCode() * 31L + Objects.hashCode(entry.getTimestamp()));
+            count++;
+        }
+        return new Digest(nodeId, digest, count);
+    }
+
+    /**
+     * The whole status board with current removals, for a peer whose digest differs.
+     */
+    public ReplicationBatch statusSnapshot() {
+        return new ReplicationBatch(nodeId, new ArrayList<>(), statusService.getAllStatuses(),
+                statusService.getRemovals());
+    }
+
+    // Spreads the per-entry hash over 64 bits so the XOR of many entries rarely cancels out
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private void pushLoop() {
+        while (running) {
+            if (outgoingMessages.size() < batchSize) {
+                LockSupport.parkNanos(this, batchNanos);
+            }
+            try {
+                push();
+            } catch (RuntimeException e) {
+                log.error("Failed to push replication batch", e);
+            }
+        }
+    }
+
+    void push() {
+        ReplicationBatch batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(batch);
+        } catch (IOException e) {
+            log.error("Failed to encode replication batch", e);
+            return;
+        }
+        List<CompletableFuture<Void>> calls = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            if (peer.self) {
+                continue;
+            }
+            HttpRequest request = HttpRequest.newBuilder(peer.base.resolve("api/cluster/replicate"))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            calls.add(http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        reached(peer, error == null && response.statusCode() == 200);
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+        batchesSent.increment();
+        batchBytes.record(body.length);
+    }
+
+    private ReplicationBatch drain() {
+        ReplicationBatch batch = new ReplicationBatch();
+        batch.setNodeId(nodeId);
+        outgoingMessages.drainTo(batch.getMessages(), batchSize);
+        for (Map.Entry<String, StatusEntry> entry : outgoingStatuses.entrySet()) {
+            // A newer entry put meanwhile stays for the next batch
+            if (outgoingStatuses.remove(entry.getKey(), entry.getValue())) {
+                batch.getStatuses().add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, LocalDateTime> removal : outgoingRemovals.entrySet()) {
+            if (outgoingRemovals.remove(removal.getKey(), removal.getValue())) {
+                batch.getRemovedStatuses().put(removal.getKey(), removal.getValue());
+            }
+        }
+        return batch;
+    }
+
+    private void antiEntropyLoop() {
+        while (running) {
+            for (Peer peer : peers) {
+                if (!running || peer.self) {
+                    continue;
+                }
+                try {
+                    sync(peer);
+                    reached(peer, true);
+                } catch (IOException e) {
+                    reached(peer, false);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Anti-entropy with {} failed", peer.base, e);
+                }
+            }
+            statusService.pruneRemovals(LocalDateTime.now().minus(tombstoneTtl));
+            LockSupport.parkNanos(this, antiEntropyNanos);
+        }
+    }
+
+    private void sync(Peer peer) throws IOException, InterruptedException {
+        Digest digest = objectMapper.readValue(get(peer, "api/cluster/digest"), Digest.class);
+        peer.nodeId = digest.nodeId();
+        if (nodeId.equals(digest.nodeId())) {
+            log.warn("Peer {} is this node, ignoring it", peer.base);
+            peer.self = true;
+            return;
+        }
+
+        MessageDelta delta = objectMapper.readValue(get(peer, "api/messages?since=" + peer.messageCursor),
+                MessageDelta.class);
+        List<Message> missed = delta.isGap()
+                ? objectMapper.readValue(get(peer, "api/messages/all"), MESSAGE_LIST)
+                : delta.getMessages();
+        int repaired = 0;
+        for (Message message : missed) {
+            if (dispatchService.submit(message, MessageDispatchService.Origin.PEER)) {
+                repaired++;
+            }
+        }
+        appliedMessages.increment(repaired);
+        peer.messageCursor = delta.getLatestSequence();
+
+        if (digest.statuses() != digest().statuses()) {
+            repaired += applyStatuses(objectMapper.readValue(get(peer, "api/cluster/statuses"),
+                    ReplicationBatch.class));
+        }
+        if (repaired > 0) {
+            log.info("🔄 Caught up {} changes from {}", repaired, digest.nodeId());
+        }
+    }
+
+    private byte[] get(Peer peer, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(peer.base.resolve(path))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private void reached(Peer peer, boolean ok) {
+        if (ok) {
+            peer.lastContact = LocalDateTime.now();
+            if (!peer.up) {
+                peer.up = true;
+                log.info("🌐 Peer {} is reachable", peer.base);
+            }
+        } else if (peer.up) {
+            peer.up = false;
+            log.warn("⚠️ Peer {} is unreachable, it will catch up through anti-entropy", peer.base);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread thread : new Thread[] {pusher, antiEntropy}) {
+            LockSupport.unpark(thread);
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Last changes still go out
+        push();
+        log.info("Cluster replication stopped");
+    }
+
+    private static final class Peer {
+
+        final URI base;
+        volatile String nodeId;
+        volatile boolean up = true;
+        volatile boolean self;
+        volatile LocalDateTime lastContact;
+        // Latest sequence in the peer's own history that this node has pulled; sync thread only
+        long messageCursor = -1;
+
+        Peer(URI base) {
+            this.base = base;
+        }
+    }
+
+    private class LocalStatusChanges implements StatusService.ChangeListener {
+
+        @Override
+        public void updated(StatusEntry entry) {
+            outgoingRemovals.remove(entry.getUserId());
+            outgoingStatuses.put(entry.getUserId(), entry);
+        }
+
+        @Override
+        public void removed(String userId, LocalDateTime at) {
+            outgoingStatuses.remove(userId);
+            outgoingRemovals.put(userId, at);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+
+/**
+ * Callbacks from a {@link SocketEngine} into the socket protocol: JSON lines, or compact frames once negotiated.
+ */
+interface ConnectionHandler {
+
+    /**
+     * Why frames could not be delivered to a device, which is then disconnected.
+     */
+    enum SendFailure {
+        // Its outbound queue overflowed under the disconnect policy (or with only critical frames queued)
+        SLOW_CONSUMER,
+        // Writing to its socket failed
+        WRITE_ERROR
+    }
+
+    OutboundQueue newOutboundQueue();
+
+    void onOpen(ClientConnection connection);
+
+    // A text line, or the text of a TEXT frame
+    void onLine(ClientConnection connection, String line);
+
+    // A message that arrived as a compact frame
+    void onMessage(ClientConnection connection, Message message);
+
+    void onSendFailure(ClientConnection connection, SendFailure failure);
+
+    void onClose(ClientConnection connection);
+}
@@ -0,0 +1,82 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A message on its way out, serialized at most once no matter how many sockets and STOMP sessions
+ * receive it. STOMP sessions share the bare JSON bytes and sockets share one line frame (the same JSON plus
+ * a trailing newline); devices using compact framing likewise share one {@link CompactFrame}.
+ */
+public final class EncodedMessage {
+
+    record CompactFrame(OutboundFrame frame, int senderRef) {
+    }
+
+    private final Message message;
+    private volatile byte[] json;
+    private volatile OutboundFrame frame;
+    private volatile CompactFrame compactFrame;
+
+    public EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * The message as JSON, without a line terminator. Shared; never modify the array.
+     */
+    byte[] json(ObjectMapper objectMapper) throws IOException {
+        byte[] encoded = json;
+        if (encoded == null) {
+            synchronized (this) {
+                encoded = json;
+                if (encoded == null) {
+                    encoded = objectMapper.writeValueAsBytes(message);
+                    json = encoded;
+                }
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * The JSON as one line of the socket protocol.
+     */
+    OutboundFrame frame(ObjectMapper objectMapper) throws IOException {
+        OutboundFrame encoded = frame;
+        if (encoded == null) {
+            byte[] body = json(objectMapper);
+            synchronized (this) {
+                encoded = frame;
+                if (encoded == null) {
+                    byte[] line = Arrays.copyOf(body, body.length + 1);
+                    line[body.length] = '\n';
+                    encoded = OutboundFrame.of(line, message);
+                    frame = encoded;
+                }
+            }
+        }
+        return encoded;
+    }
+
+    CompactFrame compactFrame(SocketWire wire) {
+        CompactFrame encoded = compactFrame;
+        if (encoded == null) {
+            synchronized (this) {
+                encoded = compactFrame;
+                if (encoded == null) {
+                    encoded = wire.encodeCompact(message);
+                    compactFrame = encoded;
+                }
+            }
+        }
+        return encoded;
+    }
+}
@@ -3,38 +3,110 @@ package com.crisisconnect.service;
 import com.crisisconnect.model.Message;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class FileStorageService {
 
+    public enum StorageMode {
+        // Rewrite the whole history as one JSON array on every change
+        JSON,
+        // Append each message to a length-prefixed segment journal
+        JOURNAL,
+        // Append to a memory-mapped file with an offset index; restored history is decoded as it is read
+        MAPPED
+    }
+
     private final ObjectMapper objectMapper;
-    private static final String DATA_DIR = "data";
-    private static final String MESSAGES_FILE = "data/messages.json";
+    private static final String MESSAGES_FILE = "messages.json";
+    private static final String JOURNAL_DIR = "journal";
+    private static final String MAPPED_DIR = "history";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+
+    private final File dataDir;
+    private final File messagesFile;
+
+    private final StorageMode mode;
+    private final int maxHistorySize;
+    // Null in JSON mode
+    private final MessageStore store;
+
+    // JSON mode keeps the persisted window here so appends don't need the caller's history
+    private final Deque<Message> jsonWindow = new ArrayDeque<>();
+
+    private final String modeTag;
+    private final Timer writeTimer;
+    private final Timer loadTimer;
+    private final Counter bytesWritten;
 
-    public FileStorageService(ObjectMapper objectMapper) {
+    public FileStorageService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            @Value("${crisis.storage.data-dir:data}") String dataDir,
+            @Value("${crisis.storage.mode:json}") String mode,
+            @Value("${crisis.storage.journal.segment-bytes:4194304}") long segmentBytes,
+            @Value("${crisis.storage.journal.fsync:true}") boolean fsync,
+            @Value("${crisis.storage.mapped.fsync:true}") boolean mappedFsync,
+            @Value("${crisis.history.max-size:1000}") int maxHistorySize) {
         this.objectMapper = objectMapper;
+        this.dataDir = new File(dataDir);
+        this.messagesFile = new File(this.dataDir, MESSAGES_FILE);
+        this.mode = StorageMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.maxHistorySize = maxHistorySize;
+        this.store = switch (this.mode) {
+            case JOURNAL -> new MessageJournal(this.dataDir.toPath().resolve(JOURNAL_DIR), objectMapper,
+                    segmentBytes, maxHistorySize, fsync);
+            case MAPPED -> new MappedMessageStore(this.dataDir.toPath().resolve(MAPPED_DIR), objectMapper,
+                    maxHistorySize, mappedFsync);
+            case JSON -> null;
+        };
+        this.modeTag = this.mode.name().toLowerCase(Locale.ROOT);
+        this.writeTimer = Timer.builder("crisis.storage.write")
+                .description("Time to persist newly broadcast messages (in JSON mode, to rewrite the history)")
+                .tag("mode", modeTag)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.loadTimer = Timer.builder("crisis.storage.load")
+                .description("Time to recover the stored history at startup")
+                .tag("mode", modeTag)
+                .register(meterRegistry);
+        this.bytesWritten = Counter.builder("crisis.storage.bytes.written")
+                .description("Bytes written to storage for new messages")
+                .baseUnit("bytes")
+                .tag("mode", modeTag)
+                .register(meterRegistry);
     }
 
     public void saveMessages(List<Message> messages) {
         try {
-            File directory = new File(DATA_DIR);
-            if (!directory.exists()) {
-                boolean created = directory.mkdirs();
+            if (!dataDir.exists()) {
+                boolean created = dataDir.mkdirs();
                 if (created) {
-                    log.info("Created data directory: {}", directory.getAbsolutePath());
+                    log.info("Created data directory: {}", dataDir.getAbsolutePath());
                 }
             }
 
-            File file = new File(MESSAGES_FILE);
-            objectMapper.writeValue(file, messages);
+            objectMapper.writeValue(messagesFile, messages);
+            bytesWritten.increment(messagesFile.length());
             // Don't log on every save to avoid spam, but maybe on debug
             log.debug("Saved {} messages to file", messages.size());
         } catch (IOException e) {
@@ -42,16 +114,138 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Persists newly broadcast messages. In journal and mapped mode this is an O(batch) append; in JSON mode
+     * the whole retained window is rewritten.
+     */
+    public void appendMessages(List<Message> messages) {
+        List<MessageEvents.Persisted> events = beginPersisted(messages);
+        long started = System.nanoTime();
+        try {
+            append(messages);
+        } finally {
+            writeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            for (MessageEvents.Persisted event : events) {
+                event.commit();
+            }
+        }
+    }
+
+    // One event per message so each can be found by its id; none are built unless a recording wants them
+    private List<MessageEvents.Persisted> beginPersisted(List<Message> messages) {
+        if (!new MessageEvents.Persisted().isEnabled()) {
+            return List.of();
+        }
+        List<MessageEvents.Persisted> events = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            MessageEvents.Persisted event = new MessageEvents.Persisted();
+            event.messageId = message.getId();
+            event.mode = modeTag;
+            event.batchSize = messages.size();
+            event.begin();
+            events.add(event);
+        }
+        return events;
+    }
+
+    private void append(List<Message> messages) {
+        if (store != null) {
+            try {
+                bytesWritten.increment(store.append(messages));
+            } catch (IOException e) {
+                log.error("Failed to append {} messages to {} storage", messages.size(), mode, e);
+            }
+            return;
+        }
+
+        List<Message> snapshot;
+        synchronized (jsonWindow) {
+            for (Message message : messages) {
+                jsonWindow.addLast(message);
+                if (jsonWindow.size() > maxHistorySize) {
+                    jsonWindow.pollFirst();
+                }
+            }
+            snapshot = new ArrayList<>(jsonWindow);
+        }
+        saveMessages(snapshot);
+    }
+
+    public void clearMessages() {
+        if (store != null) {
+            try {
+                store.clear();
+            } catch (IOException e) {
+                log.error("Failed to clear {} storage", mode, e);
+            }
+            return;
+        }
+
+        synchronized (jsonWindow) {
+            jsonWindow.clear();
+        }
+        saveMessages(new ArrayList<>());
+    }
+
+    /**
+     * The retained history, oldest first, without unreadable records. In mapped mode the list decodes each
+     * message on access and is a {@link MessageStore.Sequenced}.
+     */
     public List<Message> loadMessages() {
-        File file = new File(MESSAGES_FILE);
-        if (!file.exists()) {
-            log.info("No existing message history found at {}", file.getAbsolutePath());
+        // Mapped history is decoded later, as it's read, so this only covers opening it
+        List<Message> messages = loadTimer.record(() -> store != null ? loadStore() : loadJsonFile());
+        if (store == null) {
+            synchronized (jsonWindow) {
+                jsonWindow.clear();
+                jsonWindow.addAll(tail(messages));
+            }
+        }
+        return messages;
+    }
+
+    private List<Message> loadStore() {
+        try {
+            List<Message> messages = store.open();
+            Path journalDir = dataDir.toPath().resolve(JOURNAL_DIR);
+            if (store.isEmpty() && mode == StorageMode.MAPPED && Files.isDirectory(journalDir)) {
+                // First start in mapped mode after journal mode: copy the journal over and park it
+                List<Message> legacy;
+                try (MessageJournal journal = new MessageJournal(journalDir, objectMapper, Long.MAX_VALUE,
+                        maxHistorySize, false)) {
+                    legacy = tail(journal.open());
+                }
+                store.append(legacy);
+                Files.move(journalDir, dataDir.toPath().resolve(JOURNAL_DIR + MIGRATED_SUFFIX));
+                log.info("Migrated {} messages from {} into the mapped history", legacy.size(), journalDir);
+                return legacy;
+            }
+            if (store.isEmpty() && messagesFile.exists()) {
+                // First start in journal or mapped mode: migrate the legacy JSON history and park the old file
+                List<Message> legacy = tail(loadJsonFile());
+                store.append(legacy);
+                Files.move(messagesFile.toPath(), new File(dataDir, MESSAGES_FILE + MIGRATED_SUFFIX).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                log.info("Migrated {} messages from {} into {} storage", legacy.size(), messagesFile, mode);
+                return legacy;
+            }
+            log.info("Loaded {} messages from {} storage", messages.size(), mode);
+            return tail(messages);
+        } catch (IOException e) {
+            log.error("Failed to recover {} storage", mode, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private List<Message> loadJsonFile() {
+        if (!messagesFile.exists()) {
+            log.info("No existing message history found at {}", messagesFile.getAbsolutePath());
             return Collections.emptyList();
         }
 
         try {
-            List<Message> messages = objectMapper.readValue(file, new TypeReference<List<Message>>() {
+            List<Message> messages = objectMapper.readValue(messagesFile, new TypeReference<List<Message>>() {
             });
+            messages.removeIf(Objects::isNull);
             log.info("Loaded {} messages from history", messages.size());
             return messages;
         } catch (IOException e) {
@@ -59,4 +253,20 @@ public class FileStorageService {
             return Collections.emptyList();
         }
     }
+
+    private List<Message> tail(List<Message> messages) {
+        int size = messages.size();
+        return size > maxHistorySize ? messages.subList(size - maxHistorySize, size) : messages;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.error("Failed to close {} storage", mode, e);
+            }
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.exception.InvalidQueryException;
+
+/**
+ * A latitude/longitude rectangle a device cares about. Does not wrap around the antimeridian.
+ */
+record GeoBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+
+    GeoBox {
+        if (!(minLatitude >= -90 && maxLatitude <= 90 && minLongitude >= -180 && maxLongitude <= 180
+                && minLatitude <= maxLatitude && minLongitude <= maxLongitude)) {
+            throw new InvalidQueryException("Invalid region: " + minLatitude + ", " + minLongitude + " - "
+                    + maxLatitude + ", " + maxLongitude);
+        }
+    }
+
+    boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+}
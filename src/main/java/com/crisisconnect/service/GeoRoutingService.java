@@ -0,0 +1,221 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.exception.InvalidQueryException;
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Area-scoped delivery. The world is cut into square routing tiles; a message with coordinates is
+ * published to its tile's destination ({@code /topic/area/<row>_<col>}) instead of to everyone, and
+ * messages without coordinates (and EMERGENCY, unless disabled) go to {@link #UNSCOPED_DESTINATION}.
+ * <p>
+ * A region-aware STOMP client subscribes to the unscoped topic plus the tiles of its region (see
+ * {@code GET /api/areas}); socket devices send {@code REGION minLat minLon maxLat maxLon}. Clients that
+ * do neither keep getting everything on {@code /topic/messages}.
+ */
+@Service
+@Slf4j
+public class GeoRoutingService {
+
+    public static final String GLOBAL_DESTINATION = "/topic/messages";
+    public static final String AREA_PREFIX = "/topic/area/";
+    public static final String UNSCOPED_DESTINATION = "/topic/messages/unscoped";
+
+    static final long GLOBAL = -1;
+    private static final int MAX_TILES_PER_REGION = 1024;
+
+    private final boolean enabled;
+    private final boolean globalFeed;
+    private final boolean emergencyGlobal;
+    private final double tileDegrees;
+    private final int cols;
+
+    // STOMP sessions by subscribed tile; UNSUBSCRIBE frames carry only the subscription id, hence the map
+    private final GeoSubscriptionIndex<String> stompSessions = new GeoSubscriptionIndex<>();
+    private final Map<String, Map<String, Long>> stompSubscriptions = new ConcurrentHashMap<>();
+
+    private final Counter stompDelivered;
+    private final Counter stompSuppressed;
+    private final Counter socketDelivered;
+    private final Counter socketSuppressed;
+
+    public GeoRoutingService(MeterRegistry meterRegistry,
+            @Value("${crisis.geo.routing.enabled:true}") boolean enabled,
+            @Value("${crisis.geo.routing.tile-degrees:0.05}") double tileDegrees,
+            @Value("${crisis.geo.routing.emergency-global:true}") boolean emergencyGlobal,
+            @Value("${crisis.geo.routing.global-feed:true}") boolean globalFeed) {
+        if (!(tileDegrees > 0 && tileDegrees <= 10)) {
+            throw new IllegalArgumentException("Routing tile size must be in (0, 10] degrees: " + tileDegrees);
+        }
+        this.enabled = enabled;
+        // Without routing the global feed is the only one
+        this.globalFeed = globalFeed || !enabled;
+        this.emergencyGlobal = emergencyGlobal;
+        this.tileDegrees = tileDegrees;
+        this.cols = (int) Math.ceil(360 / tileDegrees) + 1;
+
+        stompDelivered = counter(meterRegistry, "crisis.geo.delivered", "stomp",
+                "Geo-tagged messages delivered to region subscribers, per recipient");
+        stompSuppressed = counter(meterRegistry, "crisis.geo.suppressed", "stomp",
+                "Geo-tagged messages not sent to region subscribers outside their area, per recipient");
+        socketDelivered = counter(meterRegistry, "crisis.geo.delivered", "socket",
+                "Geo-tagged messages delivered to region subscribers, per recipient");
+        socketSuppressed = counter(meterRegistry, "crisis.geo.suppressed", "socket",
+                "Geo-tagged messages not sent to region subscribers outside their area, per recipient");
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String transport, String description) {
+        return Counter.builder(name).description(description).tag("transport", transport).register(registry);
+    }
+
+    /**
+     * Whether every message also goes to {@code /topic/messages}, for clients that don't subscribe by region.
+     */
+    public boolean isGlobalFeed() {
+        return globalFeed;
+    }
+
+    public double getTileDegrees() {
+        return tileDegrees;
+    }
+
+    /**
+     * The routing tile of a message, or {@link #GLOBAL} if it goes to everyone.
+     */
+    long tileOf(Message message) {
+        if (!enabled || message.getLatitude() == null || message.getLongitude() == null) {
+            return GLOBAL;
+        }
+        if (emergencyGlobal && message.getType() == Message.MessageType.EMERGENCY) {
+            return GLOBAL;
+        }
+        double latitude = message.getLatitude();
+        double longitude = message.getLongitude();
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            return GLOBAL;
+        }
+        return tile(latitude, longitude);
+    }
+
+    String destination(long tile) {
+        return tile == GLOBAL ? UNSCOPED_DESTINATION : AREA_PREFIX + (tile / cols) + "_" + (tile % cols);
+    }
+
+    List<Long> tilesCovering(GeoBox region) {
+        int r0 = row(region.minLatitude());
+        int r1 = row(region.maxLatitude());
+        int c0 = col(region.minLongitude());
+        int c1 = col(region.maxLongitude());
+        long count = (long) (r1 - r0 + 1) * (c1 - c0 + 1);
+        if (count > MAX_TILES_PER_REGION) {
+            throw new InvalidQueryException("Region spans " + count + " routing tiles; the limit is "
+                    + MAX_TILES_PER_REGION);
+        }
+        List<Long> tiles = new ArrayList<>((int) count);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                tiles.add((long) r * cols + c);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * STOMP destinations a client should subscribe to (besides {@link #UNSCOPED_DESTINATION}) for a region.
+     */
+    public List<String> destinationsFor(double minLatitude, double minLongitude, double maxLatitude,
+            double maxLongitude) {
+        return tilesCovering(new GeoBox(minLatitude, minLongitude, maxLatitude, maxLongitude)).stream()
+                .map(this::destination)
+                .toList();
+    }
+
+    public void stompSubscribed(String sessionId, String subscriptionId, String destination) {
+        Long tile = parseTile(destination);
+        if (sessionId == null || subscriptionId == null || tile == null) {
+            return;
+        }
+        stompSubscriptions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, tile);
+        stompSessions.add(sessionId, tile);
+    }
+
+    public void stompUnsubscribed(String sessionId, String subscriptionId) {
+        Map<String, Long> subscriptions = sessionId != null ? stompSubscriptions.get(sessionId) : null;
+        if (subscriptions == null || subscriptionId == null) {
+            return;
+        }
+        Long tile = subscriptions.remove(subscriptionId);
+        // The same tile may be subscribed twice under different ids
+        if (tile != null && !subscriptions.containsValue(tile)) {
+            stompSessions.remove(sessionId, tile);
+        }
+    }
+
+    public void stompSessionClosed(String sessionId) {
+        if (sessionId != null && stompSubscriptions.remove(sessionId) != null) {
+            stompSessions.removeSubscriber(sessionId);
+        }
+    }
+
+    /**
+     * Whether a STOMP session watches {@code tile}'s destination ({@link #UNSCOPED_DESTINATION} for
+     * {@link #GLOBAL}); nothing needs publishing there otherwise.
+     */
+    boolean hasStompSubscribers(long tile) {
+        return !stompSessions.subscribers(tile).isEmpty();
+    }
+
+    /**
+     * Counts who got (and who was spared) a message just published to {@code tile}'s destination.
+     */
+    void recordStompDelivery(long tile) {
+        int regionSessions = stompSessions.subscriberCount();
+        if (tile == GLOBAL || regionSessions == 0) {
+            return;
+        }
+        int delivered = stompSessions.subscribers(tile).size();
+        stompDelivered.increment(delivered);
+        stompSuppressed.increment(Math.max(0, regionSessions - delivered));
+    }
+
+    void recordSocketDelivery(int delivered, int suppressed) {
+        socketDelivered.increment(delivered);
+        socketSuppressed.increment(suppressed);
+    }
+
+    private Long parseTile(String destination) {
+        if (UNSCOPED_DESTINATION.equals(destination)) {
+            return GLOBAL;
+        }
+        if (destination == null || !destination.startsWith(AREA_PREFIX)) {
+            return null;
+        }
+        String[] parts = destination.substring(AREA_PREFIX.length()).split("_");
+        try {
+            return parts.length == 2 ? Long.parseLong(parts[0]) * cols + Long.parseLong(parts[1]) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private long tile(double latitude, double longitude) {
+        return (long) row(latitude) * cols + col(longitude);
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90) / tileDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor((longitude + 180) / tileDegrees);
+    }
+}
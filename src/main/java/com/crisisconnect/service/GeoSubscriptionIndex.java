@@ -0,0 +1,89 @@
+package com.crisisconnect.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which subscribers (STOMP sessions or socket connections) watch which routing tile, in both directions.
+ * A geo-tagged message only needs the subscribers of its own tile; every other region subscriber is
+ * skipped without being looked at.
+ * <p>
+ * Changes for one subscriber are serialized by {@code tilesBySubscriber.compute}; tile sets are only
+ * modified under {@code subscribersByTile.compute}. Readers see a weakly consistent view.
+ */
+class GeoSubscriptionIndex<K> {
+
+    private final Map<Long, Set<K>> subscribersByTile = new ConcurrentHashMap<>();
+    private final Map<K, Set<Long>> tilesBySubscriber = new ConcurrentHashMap<>();
+
+    void add(K subscriber, long tile) {
+        tilesBySubscriber.compute(subscriber, (key, tiles) -> {
+            Set<Long> updated = tiles != null ? tiles : ConcurrentHashMap.newKeySet();
+            if (updated.add(tile)) {
+                attach(tile, key);
+            }
+            return updated;
+        });
+    }
+
+    void remove(K subscriber, long tile) {
+        tilesBySubscriber.computeIfPresent(subscriber, (key, tiles) -> {
+            if (tiles.remove(tile)) {
+                detach(tile, key);
+            }
+            return tiles.isEmpty() ? null : tiles;
+        });
+    }
+
+    /**
+     * Replaces everything the subscriber watches with {@code tiles} (empty = unsubscribe).
+     */
+    void replace(K subscriber, Collection<Long> tiles) {
+        tilesBySubscriber.compute(subscriber, (key, current) -> {
+            if (current != null) {
+                current.forEach(tile -> detach(tile, key));
+            }
+            if (tiles.isEmpty()) {
+                return null;
+            }
+            Set<Long> updated = ConcurrentHashMap.newKeySet();
+            updated.addAll(tiles);
+            updated.forEach(tile -> attach(tile, key));
+            return updated;
+        });
+    }
+
+    void removeSubscriber(K subscriber) {
+        replace(subscriber, Set.of());
+    }
+
+    Set<K> subscribers(long tile) {
+        Set<K> subscribers = subscribersByTile.get(tile);
+        return subscribers != null ? subscribers : Set.of();
+    }
+
+    boolean isSubscribed(K subscriber) {
+        return tilesBySubscriber.containsKey(subscriber);
+    }
+
+    int subscriberCount() {
+        return tilesBySubscriber.size();
+    }
+
+    private void attach(long tile, K subscriber) {
+        subscribersByTile.compute(tile, (key, subscribers) -> {
+            Set<K> updated = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            updated.add(subscriber);
+            return updated;
+        });
+    }
+
+    private void detach(long tile, K subscriber) {
+        subscribersByTile.computeIfPresent(tile, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+}
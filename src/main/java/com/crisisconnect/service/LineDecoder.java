@@ -0,0 +1,41 @@
+package com.crisisconnect.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits an incoming byte stream into UTF-8 lines, buffering partial lines between reads. Lines are handed
+ * out one at a time because a line can switch the rest of the stream to another framing.
+ */
+class LineDecoder {
+
+    static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private byte[] pending = new byte[256];
+    private int length;
+
+    /**
+     * Consumes bytes up to and including the next newline; returns {@code null} if {@code data} runs out first.
+     */
+    String next(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            if (b == '\n') {
+                int end = length > 0 && pending[length - 1] == '\r' ? length - 1 : length;
+                String line = new String(pending, 0, end, StandardCharsets.UTF_8);
+                length = 0;
+                return line;
+            }
+            if (length == pending.length) {
+                if (length >= MAX_LINE_BYTES) {
+                    throw new IOException("Line exceeds " + MAX_LINE_BYTES + " bytes");
+                }
+                pending = Arrays.copyOf(pending, Math.min(length * 2, MAX_LINE_BYTES));
+            }
+            pending[length++] = b;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,497 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Message history as a memory-mapped data file plus an offset index, so a cold start costs the same with a
+ * thousand or a million stored messages: {@link #open()} maps both files, checks only the newest records
+ * and returns a list that decodes a message when it is first read.
+ * <p>
+ * {@code history-<generation>.dat} holds {@link MessageJournal} records ({@code [int length][int crc32][JSON]});
+ * {@code history-<generation>.idx} holds an 8-byte header and then, for every record, its data offset and the
+ * message's sequence, eight bytes each. Records are written (and fsynced) before their index entries, so after
+ * a crash the index is trimmed to records that made it to disk, unindexed records are indexed again and a torn
+ * tail is truncated. An index from before sequences were kept (version 1) is rebuilt the same way. Once
+ * twice {@code retainedRecords} are stored, the newest {@code retainedRecords} are copied into the next
+ * generation; files are replaced, never truncated, because lists from {@link #open()} may still map them.
+ */
+@Slf4j
+class MappedMessageStore implements MessageStore {
+
+    private static final String PREFIX = "history-";
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x43434849;
+    private static final int VERSION = 2;
+    private static final int INDEX_HEADER_BYTES = 8;
+    // Data offset, then sequence (-1 when the message had none)
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    private static final long NO_SEQUENCE = -1;
+    private static final int COPY_ENTRIES = 8192;
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final int retainedRecords;
+    private final boolean fsync;
+
+    private long generation = -1;
+    private FileChannel data;
+    private FileChannel index;
+    private long count;
+    // End of the last valid record; appends go here
+    private long dataEnd;
+
+    MappedMessageStore(Path directory, ObjectMapper objectMapper, int retainedRecords, boolean fsync) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.retainedRecords = retainedRecords;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Maps the newest {@code retainedRecords} records without decoding them; the list is a
+     * {@link MessageStore.Sequenced}.
+     */
+    @Override
+    public synchronized List<Message> open() throws IOException {
+        Files.createDirectories(directory);
+        long latest = latestGeneration();
+        if (latest < 0) {
+            latest = 0;
+            createGeneration(latest);
+        }
+        openGeneration(latest);
+        recover();
+        return view(Math.max(0, count - retainedRecords), count);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public synchronized long append(Collection<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        ByteBuffer entries = ByteBuffer.allocate(messages.size() * ENTRY_BYTES);
+        long start = dataEnd;
+        data.position(dataEnd);
+        for (Message message : messages) {
+            entries.putLong(data.position());
+            entries.putLong(message.getSequence() != null ? message.getSequence() : NO_SEQUENCE);
+            MessageJournal.writeRecord(data, objectMapper.writeValueAsBytes(message));
+        }
+        if (fsync) {
+            data.force(false);
+        }
+        dataEnd = data.position();
+        // The records plus their index entries
+        long written = dataEnd - start + entries.position();
+
+        entries.flip();
+        long position = indexPosition(count);
+        while (entries.hasRemaining()) {
+            position += index.write(entries, position);
+        }
+        count += messages.size();
+
+        if (count >= 2L * retainedRecords) {
+            compact();
+        }
+        return written;
+    }
+
+    /**
+     * Drops every record by starting an empty generation.
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+        long next = generation + 1;
+        createGeneration(next);
+        switchTo(next);
+        count = 0;
+        dataEnd = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (data != null && data.isOpen()) {
+            data.force(false);
+            data.close();
+            index.force(false);
+            index.close();
+        }
+    }
+
+    /**
+     * Copies the newest {@code retainedRecords} records into the next generation.
+     */
+    private void compact() throws IOException {
+        long from = count - retainedRecords;
+        long start = offset(from);
+        long next = generation + 1;
+
+        try (FileChannel out = FileChannel.open(dataPath(next), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < dataEnd - start) {
+                copied += data.transferTo(start + copied, dataEnd - start - copied, out);
+            }
+            out.force(true);
+        }
+
+        Path temp = tempIndexPath(next);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(indexHeader());
+            ByteBuffer chunk = ByteBuffer.allocate(COPY_ENTRIES * ENTRY_BYTES);
+            for (long entry = from; entry < count; entry += COPY_ENTRIES) {
+                int entries = (int) Math.min(COPY_ENTRIES, count - entry);
+                chunk.clear().limit(entries * ENTRY_BYTES);
+                readFully(index, chunk, indexPosition(entry));
+                for (int i = 0; i < entries; i++) {
+                    // Offsets move with the data; sequences stay
+                    chunk.putLong(i * ENTRY_BYTES, chunk.getLong(i * ENTRY_BYTES) - start);
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+            out.force(true);
+        }
+        Files.move(temp, indexPath(next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        long before = count;
+        switchTo(next);
+        count = retainedRecords;
+        dataEnd -= start;
+        log.info("Compacted message history from {} to {} records", before, count);
+    }
+
+    // The new generation is complete on disk; make it current and drop the old one
+    private void switchTo(long next) throws IOException {
+        long previous = generation;
+        close();
+        openGeneration(next);
+        deleteGeneration(previous);
+    }
+
+    private void createGeneration(long target) throws IOException {
+        createGeneration(target, true);
+    }
+
+    private void createGeneration(long target, boolean emptyData) throws IOException {
+        if (emptyData) {
+            Files.write(dataPath(target), new byte[0]);
+        }
+        Path temp = tempIndexPath(target);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(indexHeader());
+            out.force(true);
+        }
+        Files.move(temp, indexPath(target), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void openGeneration(long target) throws IOException {
+        generation = target;
+        data = FileChannel.open(dataPath(target), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath(target), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+        readFully(index, header, 0);
+        if (header.position() < INDEX_HEADER_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a message history index: " + indexPath(target));
+        }
+        if (header.getInt(4) == 1) {
+            // Offsets only: start an empty index and let recover() index every record again, with its sequence
+            log.info("Rebuilding message history index {} with sequences", indexPath(target).getFileName());
+            index.close();
+            createGeneration(target, false);
+            index = FileChannel.open(indexPath(target), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported message history index version " + header.getInt(4) + ": "
+                    + indexPath(target));
+        }
+    }
+
+    private void recover() throws IOException {
+        long entries = (index.size() - INDEX_HEADER_BYTES) / ENTRY_BYTES;
+        long dataSize = data.size();
+
+        // Index entries whose record never reached the disk
+        long end = 0;
+        while (entries > 0) {
+            end = recordEnd(offset(entries - 1), dataSize);
+            if (end >= 0) {
+                break;
+            }
+            entries--;
+            end = 0;
+        }
+
+        // Records written after the last index update
+        List<long[]> unindexed = new ArrayList<>();
+        byte[] payload;
+        while ((payload = readRecord(end, dataSize)) != null) {
+            unindexed.add(new long[] {end, sequenceOf(payload)});
+            end += MessageJournal.HEADER_BYTES + payload.length;
+        }
+        if (end < dataSize) {
+            log.warn("Truncating torn history tail at byte {} ({} bytes discarded)", end, dataSize - end);
+            data.truncate(end);
+            data.force(true);
+        }
+
+        index.truncate(indexPosition(entries));
+        if (!unindexed.isEmpty()) {
+            ByteBuffer buffer = ByteBuffer.allocate(unindexed.size() * ENTRY_BYTES);
+            unindexed.forEach(entry -> buffer.putLong(entry[0]).putLong(entry[1]));
+            buffer.flip();
+            long position = indexPosition(entries);
+            while (buffer.hasRemaining()) {
+                position += index.write(buffer, position);
+            }
+            index.force(false);
+            log.info("Indexed {} history records written before the last shutdown", unindexed.size());
+        }
+
+        count = entries + unindexed.size();
+        dataEnd = end;
+    }
+
+    /**
+     * End offset of the record at {@code offset}, or -1 if there is no complete, intact record there.
+     */
+    private long recordEnd(long offset, long dataSize) throws IOException {
+        byte[] payload = readRecord(offset, dataSize);
+        return payload != null ? offset + MessageJournal.HEADER_BYTES + payload.length : -1;
+    }
+
+    /**
+     * Payload of the record at {@code offset}, or {@code null} if there is no complete, intact record there.
+     */
+    private byte[] readRecord(long offset, long dataSize) throws IOException {
+        if (offset < 0 || offset + MessageJournal.HEADER_BYTES > dataSize) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(MessageJournal.HEADER_BYTES);
+        readFully(data, header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || length > MessageJournal.MAX_RECORD_BYTES
+                || offset + MessageJournal.HEADER_BYTES + length > dataSize) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(data, payload, offset + MessageJournal.HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == header.getInt(4) ? payload.array() : null;
+    }
+
+    private long sequenceOf(byte[] payload) {
+        try {
+            Long sequence = objectMapper.readValue(payload, Message.class).getSequence();
+            return sequence != null ? sequence : NO_SEQUENCE;
+        } catch (IOException e) {
+            return NO_SEQUENCE;
+        }
+    }
+
+    private List<Message> view(long from, long to) throws IOException {
+        if (from == to) {
+            return new ArrayList<>();
+        }
+        // A single mapping is limited to 2 GB; older records beyond that are left out
+        long requested = from;
+        long base = offset(from);
+        while (dataEnd - base > Integer.MAX_VALUE) {
+            from += Math.max(1, (to - from) / 16);
+            base = offset(from);
+        }
+        if (from > requested) {
+            log.warn("History exceeds 2 GB; the oldest {} of {} records are not restored", from - requested,
+                    to - requested);
+        }
+        MappedByteBuffer records = data.map(FileChannel.MapMode.READ_ONLY, base, dataEnd - base);
+        LongBuffer entries = index.map(FileChannel.MapMode.READ_ONLY, indexPosition(from),
+                (to - from) * ENTRY_BYTES).asLongBuffer();
+        log.info("Mapped {} history records ({} KB)", to - from, (dataEnd - base) / 1024);
+        return new MappedHistory(records, entries, base, (int) (to - from));
+    }
+
+    private long offset(long entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(index, buffer, indexPosition(entry));
+        return buffer.getLong(0);
+    }
+
+    private long latestGeneration() throws IOException {
+        long latest = -1;
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(PREFIX) && name.endsWith(INDEX_SUFFIX)) {
+                latest = Math.max(latest, parseGeneration(name, INDEX_SUFFIX));
+            }
+        }
+        // Older generations and unfinished compactions
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            if (!name.startsWith(PREFIX)) {
+                continue;
+            }
+            String suffix = name.endsWith(TEMP_SUFFIX) ? null
+                    : name.endsWith(INDEX_SUFFIX) ? INDEX_SUFFIX
+                    : name.endsWith(DATA_SUFFIX) ? DATA_SUFFIX : null;
+            if (suffix == null || parseGeneration(name, suffix) != latest) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return latest;
+    }
+
+    private void deleteGeneration(long target) {
+        for (Path path : List.of(dataPath(target), indexPath(target))) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Still mapped on some platforms; removed on the next open
+                log.debug("Could not delete {} yet", path.getFileName(), e);
+            }
+        }
+    }
+
+    private static ByteBuffer indexHeader() {
+        return ByteBuffer.allocate(INDEX_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private static long indexPosition(long entry) {
+        return INDEX_HEADER_BYTES + entry * ENTRY_BYTES;
+    }
+
+    private Path dataPath(long target) {
+        return directory.resolve(fileName(target, DATA_SUFFIX));
+    }
+
+    private Path indexPath(long target) {
+        return directory.resolve(fileName(target, INDEX_SUFFIX));
+    }
+
+    private Path tempIndexPath(long target) {
+        return directory.resolve(fileName(target, INDEX_SUFFIX) + TEMP_SUFFIX);
+    }
+
+    private static String fileName(long target, String suffix) {
+        return String.format("%s%020d%s", PREFIX, target, suffix);
+    }
+
+    private static long parseGeneration(String name, String suffix) {
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * Read-only view of mapped records. Each {@link #get} decodes a fresh {@link Message}. A record that fails
+     * its checksum or can't be decoded reads as a system notice with the record's sequence, so it costs
+     * nothing at startup, and the history around it keeps its numbering.
+     */
+    private final class MappedHistory extends AbstractList<Message> implements RandomAccess, MessageStore.Sequenced {
+
+        private final MappedByteBuffer records;
+        private final LongBuffer entries;
+        private final long base;
+        private final int size;
+
+        MappedHistory(MappedByteBuffer records, LongBuffer entries, long base, int size) {
+            this.records = records;
+            this.entries = entries;
+            this.base = base;
+            this.size = size;
+        }
+
+        @Override
+        public Message get(int i) {
+            Objects.checkIndex(i, size);
+            long position = entries.get(i * 2) - base;
+            int length = position >= 0 && position + MessageJournal.HEADER_BYTES <= records.limit()
+                    ? records.getInt((int) position) : -1;
+            if (length < 0 || position + MessageJournal.HEADER_BYTES + length > records.limit()) {
+                log.warn("Skipping history record {} with a bad offset or length", i);
+                return unreadable(sequence(i));
+            }
+            byte[] payload = new byte[length];
+            records.get((int) position + MessageJournal.HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != records.getInt((int) position + Integer.BYTES)) {
+                log.warn("Skipping corrupt history record {}", i);
+                return unreadable(sequence(i));
+            }
+            try {
+                return objectMapper.readValue(payload, Message.class);
+            } catch (IOException e) {
+                log.warn("Skipping undecodable history record {}", i, e);
+                return unreadable(sequence(i));
+            }
+        }
+
+        @Override
+        public long sequence(int i) {
+            return entries.get(Objects.checkIndex(i, size) * 2 + 1);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Stands in for a record that can't be read, keeping its place in the numbered history
+    private static Message unreadable(long sequence) {
+        Message message = new Message();
+        message.setSenderId("SYSTEM");
+        message.setSenderName("System");
+        message.setContent("(unreadable message)");
+        message.setType(Message.MessageType.SYSTEM);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        message.setSequence(sequence != NO_SEQUENCE ? sequence : null);
+        return message;
+    }
+}
@@ -1,67 +1,257 @@
 package com.crisisconnect.service;
 
+import com.crisisconnect.exception.InvalidQueryException;
 import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.MessageSearchResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
 import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 public class MessageBroadcastService {
 
+    // Messages copied out of the history per step when streaming it
+    private static final int STREAM_PAGE = 256;
+
     private final SimpMessagingTemplate messagingTemplate;
     private final FileStorageService fileStorageService;
-    private final List<Message> messageHistory = new CopyOnWriteArrayList<>();
-    private static final int MAX_HISTORY_SIZE = 1000;
+    private final AsyncPersistenceService persistenceService;
+    private final ObjectMapper objectMapper;
+    private final MessageHistoryBuffer messageHistory;
+    private final GeoRoutingService geoRouting;
+    private final int maxSyncMessages;
+    // Null when search is disabled
+    private final MessageSearchIndex searchIndex;
+    private volatile boolean indexing;
+    // Bumped after each append or clear is visible in the history
+    private final AtomicLong historyVersion = new AtomicLong();
 
-    public MessageBroadcastService(SimpMessagingTemplate messagingTemplate, FileStorageService fileStorageService) {
+    public MessageBroadcastService(SimpMessagingTemplate messagingTemplate, FileStorageService fileStorageService,
+            AsyncPersistenceService persistenceService, ObjectMapper objectMapper, GeoRoutingService geoRouting,
+            @Value("${crisis.history.max-size:1000}") int maxHistorySize,
+            @Value("${crisis.history.sync-max-messages:500}") int maxSyncMessages,
+            @Value("${crisis.search.enabled:true}") boolean searchEnabled) {
         this.messagingTemplate = messagingTemplate;
         this.fileStorageService = fileStorageService;
+        this.persistenceService = persistenceService;
+        this.objectMapper = objectMapper;
+        this.messageHistory = new MessageHistoryBuffer(maxHistorySize);
+        this.geoRouting = geoRouting;
+        this.maxSyncMessages = maxSyncMessages;
+        this.searchIndex = searchEnabled ? new MessageSearchIndex(maxHistorySize) : null;
     }
 
     @PostConstruct
     public void init() {
         List<Message> loadedMessages = fileStorageService.loadMessages();
         if (!loadedMessages.isEmpty()) {
-            messageHistory.addAll(loadedMessages);
-            log.info("Restored {} messages from history", loadedMessages.size());
+            // Every message keeps the sequence it was broadcast with, so clients' resume cursors stay valid across
+            // restarts; mapped storage hands over an undecoded list and messages are decoded as readers reach them
+            RestoredHistory restored = RestoredHistory.of(loadedMessages, messageHistory.capacity());
+            messageHistory.restore(restored.firstSequence(), restored);
+            log.info("Restored {} messages from history", restored.count());
+            if (restored.missing() > 0) {
+                log.warn("Restored history from #{} has {} missing sequences; resuming inside them reports a gap",
+                        restored.firstSequence(), restored.missing());
+            }
+            if (searchIndex != null) {
+                indexRestored(restored);
+            }
         }
     }
 
+    // Tokenizing a long restored history would undo the lazy mapped startup, so it happens off the boot path
+    private void indexRestored(RestoredHistory restored) {
+        long first = restored.firstSequence();
+        searchIndex.reset(first);
+        long generation = searchIndex.generation();
+        indexing = true;
+        Thread indexer = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                int indexed = searchIndex.addRestored(first, restored, generation);
+                log.info("🔎 Indexed {} restored messages for search in {} ms", indexed,
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.error("Failed to index restored history for search", e);
+            } finally {
+                indexing = false;
+            }
+        }, "crisis-search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
     public void broadcastMessage(@NonNull Message message) {
-        // Store in history
-        messageHistory.add(message);
-        if (messageHistory.size() > MAX_HISTORY_SIZE) {
-            messageHistory.remove(0);
+        broadcastMessage(new EncodedMessage(message));
+    }
+
+    public void broadcastMessage(@NonNull EncodedMessage encoded) {
+        Message message = encoded.getMessage();
+
+        // Store in history (the ring drops the oldest entry once full)
+        messageHistory.append(message);
+        if (searchIndex != null) {
+            searchIndex.add(message);
         }
+        historyVersion.incrementAndGet();
 
-        // Persist to file
-        fileStorageService.saveMessages(new ArrayList<>(messageHistory));
+        // Hand off to the write-behind queue; the disk write happens off this thread
+        persistenceService.submit(message);
 
-        // Broadcast via WebSocket to web clients
-        messagingTemplate.convertAndSend("/topic/messages", message);
+        // Broadcast via WebSocket to web clients: the global feed, and the message's area (or the unscoped
+        // feed) only if a client subscribed by region watches it
+        if (geoRouting.isGlobalFeed()) {
+            publish(GeoRoutingService.GLOBAL_DESTINATION, encoded);
+        }
+        long tile = geoRouting.tileOf(message);
+        if (geoRouting.hasStompSubscribers(tile)) {
+            publish(geoRouting.destination(tile), encoded);
+            geoRouting.recordStompDelivery(tile);
+        }
 
         log.info("📡 Broadcasted message: {}", message.getContent());
     }
 
     public List<Message> getRecentMessages(int limit) {
-        int size = messageHistory.size();
-        int fromIndex = Math.max(0, size - limit);
-        return new ArrayList<>(messageHistory.subList(fromIndex, size));
+        return messageHistory.latest(limit);
     }
 
     public List<Message> getAllMessages() {
-        return new ArrayList<>(messageHistory);
+        return messageHistory.latest(messageHistory.capacity());
+    }
+
+    /**
+     * Held messages with a sequence greater than {@code after} (use -1 for all), oldest first, at most
+     * {@code limit}, and none broadcast after this call. The history is copied {@value #STREAM_PAGE} messages
+     * at a time as the iterator advances, so writing them out never holds the whole history.
+     */
+    public Iterator<Message> streamMessages(long after, long limit) {
+        long stop = messageHistory.nextSequence();
+        return new Iterator<>() {
+            private long cursor = after;
+            private long remaining = limit;
+            private Iterator<Message> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && remaining > 0 && cursor + 1 < stop) {
+                    List<Message> next = messageHistory.page(cursor, (int) Math.min(STREAM_PAGE, remaining));
+                    next.removeIf(message -> message.getSequence() >= stop);
+                    if (next.isEmpty()) {
+                        cursor = stop;
+                    } else {
+                        cursor = next.get(next.size() - 1).getSequence();
+                        page = next.iterator();
+                    }
+                }
+                return remaining > 0 && page.hasNext();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Everything after {@code since} for a reconnecting client, or a gap marker when the missed messages
+     * are no longer held (or too many to send) and the client should reload its history instead.
+     */
+    public MessageDelta getMessagesSince(long since) {
+        long latest = messageHistory.nextSequence() - 1;
+        // since > latest: the client saw a history this server no longer has (e.g. a reset)
+        if (since > latest || latest - since > maxSyncMessages) {
+            return MessageDelta.gap(latest);
+        }
+
+        List<Message> missed = messageHistory.after(since);
+        // A restored history can lack sequences that weren't persisted; a client can't resume across them
+        if (since < latest && (missed.isEmpty() || missed.get(0).getSequence() > since + 1
+                || missed.get(missed.size() - 1).getSequence() - since != missed.size())) {
+            return MessageDelta.gap(latest);
+        }
+        if (!missed.isEmpty()) {
+            latest = missed.get(missed.size() - 1).getSequence();
+        }
+        return new MessageDelta(missed, latest, false);
+    }
+
+    /**
+     * The newest {@code limit} held messages matching {@code query} (see {@link MessageSearchIndex.Query#parse})
+     * and the filters, newest first. An empty query matches everything, so filters alone can be used.
+     */
+    public MessageSearchResult search(String query, Set<Message.MessageType> types,
+            Set<Message.MessagePriority> priorities, LocalDateTime from, LocalDateTime to, int limit) {
+        if (searchIndex == null) {
+            throw new IllegalStateException("Search is disabled");
+        }
+        if (limit <= 0) {
+            throw new InvalidQueryException("limit must be positive: " + limit);
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new InvalidQueryException("from must not be after to");
+        }
+        MessageSearchIndex.Hits hits = searchIndex.search(MessageSearchIndex.Query.parse(query),
+                MessageSearchIndex.Filter.of(types, priorities, from, to), limit);
+        List<Message> messages = new ArrayList<>(hits.sequences().size());
+        for (long sequence : hits.sequences()) {
+            // Null when the message was evicted after the index lookup
+            Message message = messageHistory.get(sequence);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return new MessageSearchResult(messages, hits.total(), indexing);
+    }
+
+    public boolean isSearchEnabled() {
+        return searchIndex != null;
+    }
+
+    /**
+     * Changes whenever the held history does; read it before reading the history.
+     */
+    public long getHistoryVersion() {
+        return historyVersion.get();
+    }
+
+    public int getMessageCount() {
+        return messageHistory.size();
     }
 
     public void clearHistory() {
-        messageHistory.clear();
-        fileStorageService.saveMessages(new ArrayList<>()); // Clear file too
+        long cleared = messageHistory.clear();
+        if (searchIndex != null) {
+            searchIndex.reset(cleared);
+        }
+        historyVersion.incrementAndGet();
+        // Clear the file too, in order with the writes already queued
+        persistenceService.clear(cleared);
 
         // Notify clients to clear their views
         Message clearMsg = new Message();
@@ -73,8 +263,35 @@ public class MessageBroadcastService {
         clearMsg.setPriority(Message.MessagePriority.NORMAL);
         clearMsg.setTimestamp(java.time.LocalDateTime.now());
 
-        messagingTemplate.convertAndSend("/topic/messages", clearMsg);
+        EncodedMessage encoded = new EncodedMessage(clearMsg);
+        if (geoRouting.isGlobalFeed()) {
+            publish(GeoRoutingService.GLOBAL_DESTINATION, encoded);
+        }
+        if (geoRouting.hasStompSubscribers(GeoRoutingService.GLOBAL)) {
+            publish(GeoRoutingService.UNSCOPED_DESTINATION, encoded);
+        }
 
         log.info("Message history cleared and clients notified");
     }
-}
\ No newline at end of file
+
+    // Sends the already-encoded JSON bytes so the broker doesn't serialize the message a second time
+    private void publish(String destination, EncodedMessage encoded) {
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setLeaveMutable(true);
+            byte[] payload = encoded.json(objectMapper);
+            MessageEvents.Published published = new MessageEvents.Published();
+            published.begin();
+            messagingTemplate.send(destination, MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+            published.end();
+            if (published.shouldCommit()) {
+                published.messageId = encoded.getMessage().getId();
+                published.destination = destination;
+                published.commit();
+            }
+        } catch (IOException e) {
+            log.error("Error encoding message {}", encoded.getMessage().getId(), e);
+        }
+    }
+}
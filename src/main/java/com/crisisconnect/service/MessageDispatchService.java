@@ -0,0 +1,364 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between ingest (REST and raw sockets) and fan-out. Each {@link Message.MessagePriority} has its own
+ * lane and one dispatcher thread serves them by priority, so a flood of chatter can't delay an SOS.
+ * <p>
+ * CRITICAL (and any EMERGENCY message) is always served first. The other lanes age: a message gains one
+ * priority level for every {@code aging-ms} it has waited, up to HIGH, so LOW traffic is never starved
+ * while still never overtaking critical traffic.
+ * <p>
+ * Every message id is remembered for the last {@code seen-ids} messages and repeats are dropped on ingest,
+ * which keeps relayed and replicated traffic from looping between servers (see {@link RelayService} and
+ * {@link ClusterService}).
+ */
+@Service
+@Slf4j
+public class MessageDispatchService {
+
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+    private static final Message.MessagePriority[] PRIORITIES = Message.MessagePriority.values();
+    private static final int CRITICAL = Message.MessagePriority.CRITICAL.ordinal();
+
+    /**
+     * Where a message entered this server. A message is never passed back the way it came.
+     */
+    enum Origin {
+        // A client of this server, over the REST API or a raw socket
+        REST, SOCKET,
+        // Another server, in relay or cluster mode
+        UPSTREAM, PEER,
+        // This server's own notices (a device disconnected), shown to its STOMP clients only
+        LOCAL
+    }
+
+    /**
+     * Outcome of {@link #offer}.
+     */
+    enum Admission {
+        ACCEPTED,
+        // Already dispatched, dropped
+        DUPLICATE,
+        // Its lane was full; nothing was queued and the id is not remembered, so it can be sent again
+        BUSY
+    }
+
+    private final MessageBroadcastService broadcastService;
+    private final SocketServerService socketServerService;
+    private final RelayService relayService;
+    private final ClusterService clusterService;
+    private final SeenIds seenIds;
+    private final Counter duplicates;
+    private final Counter busy;
+    // Indexed by origin, type and priority (a missing type or priority is the last index of its dimension)
+    private final Counter[][][] ingested;
+    private final boolean enabled;
+    private final long agingNanos;
+    private final Lane[] lanes = new Lane[PRIORITIES.length];
+
+    // One permit per queued message across all lanes
+    private final Semaphore pending = new Semaphore(0);
+    private final Object broadcastLock = new Object();
+
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    public MessageDispatchService(MessageBroadcastService broadcastService, SocketServerService socketServerService,
+            RelayService relayService, ClusterService clusterService, MeterRegistry meterRegistry,
+            @Value("${crisis.dispatch.enabled:true}") boolean enabled,
+            @Value("${crisis.dispatch.lane-capacity:10000}") int laneCapacity,
+            @Value("${crisis.dispatch.aging-ms:200}") long agingMs,
+            @Value("${crisis.dispatch.seen-ids:65536}") int seenIds) {
+        this.broadcastService = broadcastService;
+        this.socketServerService = socketServerService;
+        this.relayService = relayService;
+        this.clusterService = clusterService;
+        this.seenIds = new SeenIds(seenIds);
+        this.enabled = enabled;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMs);
+        this.duplicates = Counter.builder("crisis.dispatch.duplicates")
+                .description("Messages dropped on ingest because their id was already dispatched")
+                .register(meterRegistry);
+        this.busy = Counter.builder("crisis.dispatch.busy")
+                .description("Messages turned away without waiting because their priority lane was full")
+                .register(meterRegistry);
+        this.ingested = ingestCounters(meterRegistry);
+
+        for (Message.MessagePriority priority : PRIORITIES) {
+            String lane = priority.name().toLowerCase(Locale.ROOT);
+            BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(laneCapacity);
+            Gauge.builder("crisis.dispatch.queue.depth", queue, BlockingQueue::size)
+                    .description("Messages waiting in a priority lane")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+            Timer latency = Timer.builder("crisis.dispatch.latency")
+                    .description("Time from ingest until fan-out finished")
+                    .tag("lane", lane)
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            lanes[priority.ordinal()] = new Lane(lane, queue, latency);
+        }
+    }
+
+    // Registered up front so ingest is an array lookup, not a registry lookup per message
+    private static Counter[][][] ingestCounters(MeterRegistry meterRegistry) {
+        Origin[] origins = Origin.values();
+        Counter[][][] counters = new Counter[origins.length][TYPES.length + 1][PRIORITIES.length + 1];
+        for (Origin origin : origins) {
+            for (int type = 0; type <= TYPES.length; type++) {
+                for (int priority = 0; priority <= PRIORITIES.length; priority++) {
+                    counters[origin.ordinal()][type][priority] = Counter.builder("crisis.ingest.messages")
+                            .description("Messages accepted for dispatch")
+                            .tag("source", tagValue(origin))
+                            .tag("type", tagValue(TYPES, type))
+                            .tag("priority", tagValue(PRIORITIES, priority))
+                            .register(meterRegistry);
+                }
+            }
+        }
+        return counters;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String tagValue(Enum<?>[] values, int index) {
+        return index < values.length ? tagValue(values[index]) : "none";
+    }
+
+    @PostConstruct
+    public void start() {
+        // Restored history counts as seen, so a peer or upstream replaying it adds nothing. Only as much as
+        // the set holds is read, which keeps startup flat however long the stored history is
+        for (Message message : broadcastService.getRecentMessages(seenIds.capacity())) {
+            if (message.getId() != null) {
+                seenIds.add(message.getId());
+            }
+        }
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "crisis-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a message posted to the REST API for broadcast to STOMP subscribers and socket devices (and the
+     * upstream server, in relay mode). Blocks only if its lane is full; a message whose id was already
+     * dispatched is dropped.
+     */
+    public void submit(Message message) {
+        submit(message, Origin.REST);
+    }
+
+    /**
+     * @return {@code false} if the message was dropped as a duplicate
+     */
+    boolean submit(Message message, Origin origin) {
+        return admit(message, origin, true) == Admission.ACCEPTED;
+    }
+
+    /**
+     * Like {@link #submit(Message, Origin)}, but never waits for room: a message whose lane is full is turned
+     * away. For threads that must not stall, such as the NIO engine's selector thread. (With dispatch disabled
+     * the message is still fanned out on the caller's thread.)
+     */
+    Admission offer(Message message, Origin origin) {
+        return admit(message, origin, false);
+    }
+
+    private Admission admit(Message message, Origin origin, boolean wait) {
+        MessageEvents.Accepted accepted = new MessageEvents.Accepted();
+        accepted.begin();
+        if (message.getId() == null) {
+            // Other servers can only deduplicate what has an id; remembering it here stops the echo from the
+            // upstream (which sends every message back down the relay link) being dispatched again
+            message.setId(UUID.randomUUID().toString());
+            seenIds.add(message.getId());
+        } else if (!seenIds.add(message.getId())) {
+            duplicates.increment();
+            log.debug("Dropped duplicate message {}", message.getId());
+            return Admission.DUPLICATE;
+        }
+        Pending entry = new Pending(new EncodedMessage(message), System.nanoTime(), origin);
+        Lane lane = lanes[laneFor(message)];
+        boolean queued = enabled && lane.queue.offer(entry);
+        if (enabled && !queued && !wait) {
+            seenIds.forget(message.getId());
+            busy.increment();
+            return Admission.BUSY;
+        }
+        countIngest(message, origin);
+        if (!enabled) {
+            accepted(accepted, message, origin);
+            dispatch(lane, entry);
+            return Admission.ACCEPTED;
+        }
+        try {
+            if (!queued) {
+                lane.queue.put(entry);
+            }
+            pending.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Never lose an accepted message: deliver it on the caller's thread instead
+            dispatch(lane, entry);
+        }
+        accepted(accepted, message, origin);
+        return Admission.ACCEPTED;
+    }
+
+    private static void accepted(MessageEvents.Accepted event, Message message, Origin origin) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageId = message.getId();
+            event.source = tagValue(origin);
+            event.type = message.getType() != null ? tagValue(message.getType()) : null;
+            event.priority = message.getPriority() != null ? tagValue(message.getPriority()) : null;
+            event.commit();
+        }
+    }
+
+    private void countIngest(Message message, Origin origin) {
+        Message.MessageType type = message.getType();
+        Message.MessagePriority priority = message.getPriority();
+        ingested[origin.ordinal()][type != null ? type.ordinal() : TYPES.length]
+                [priority != null ? priority.ordinal() : PRIORITIES.length].increment();
+    }
+
+    private static int laneFor(Message message) {
+        if (message.getType() == Message.MessageType.EMERGENCY) {
+            return CRITICAL;
+        }
+        return message.getPriority() != null ? message.getPriority().ordinal() : Message.MessagePriority.NORMAL.ordinal();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                break;
+            }
+            dispatchNext();
+        }
+        // Shutdown: deliver whatever is still queued
+        Thread.interrupted();
+        while (pending.tryAcquire()) {
+            dispatchNext();
+        }
+    }
+
+    private void dispatchNext() {
+        Lane lane = pickLane();
+        if (lane == null) {
+            return;
+        }
+        Pending entry = lane.queue.poll();
+        if (entry != null) {
+            dispatch(lane, entry);
+        }
+    }
+
+    private Lane pickLane() {
+        if (!lanes[CRITICAL].queue.isEmpty()) {
+            return lanes[CRITICAL];
+        }
+
+        long now = System.nanoTime();
+        Lane best = null;
+        int bestRank = -1;
+        long bestEnqueued = Long.MAX_VALUE;
+        for (int i = CRITICAL - 1; i >= 0; i--) {
+            Pending head = lanes[i].queue.peek();
+            if (head == null) {
+                continue;
+            }
+            long waited = now - head.enqueuedNanos;
+            int rank = (int) Math.min(CRITICAL - 1, i + waited / Math.max(agingNanos, 1));
+            if (rank > bestRank || (rank == bestRank && head.enqueuedNanos < bestEnqueued)) {
+                best = lanes[i];
+                bestRank = rank;
+                bestEnqueued = head.enqueuedNanos;
+            }
+        }
+        return best;
+    }
+
+    private void dispatch(Lane lane, Pending entry) {
+        MessageEvents.Dispatched dispatched = new MessageEvents.Dispatched();
+        dispatched.begin();
+        long started = System.nanoTime();
+        try {
+            // Disabled and interrupted submits dispatch on their own threads; holding the lock while the
+            // message is numbered and queued for persistence keeps the stored order the sequence order
+            synchronized (broadcastLock) {
+                broadcastService.broadcastMessage(entry.message);
+            }
+            if (entry.origin == Origin.LOCAL) {
+                return;
+            }
+            socketServerService.broadcastMessage(entry.message);
+            if (entry.origin != Origin.UPSTREAM) {
+                relayService.forward(entry.message.getMessage());
+            }
+            if (entry.origin != Origin.PEER) {
+                clusterService.replicate(entry.message.getMessage());
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to dispatch message {}", entry.message.getMessage().getId(), e);
+        } finally {
+            lane.latency.record(System.nanoTime() - entry.enqueuedNanos, TimeUnit.NANOSECONDS);
+            dispatched.end();
+            if (dispatched.shouldCommit()) {
+                dispatched.messageId = entry.message.getMessage().getId();
+                dispatched.lane = lane.name;
+                dispatched.queued = started - entry.enqueuedNanos;
+                dispatched.commit();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher == null) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Message dispatcher stopped");
+    }
+
+    private record Lane(String name, BlockingQueue<Pending> queue, Timer latency) {
+    }
+
+    private record Pending(EncodedMessage message, long enqueuedNanos, Origin origin) {
+    }
+}
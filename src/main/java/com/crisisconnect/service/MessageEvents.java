@@ -0,0 +1,128 @@
+package com.crisisconnect.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events for each stage a message passes through, all carrying its id, so a recording shows
+ * where a slow message spent its time. While nothing is recording, an event is never committed and costs
+ * about as much as the allocation the JIT removes; start a recording with {@code /actuator/flightrecorder}.
+ */
+final class MessageEvents {
+
+    private static final String CATEGORY = "CrisisConnect";
+
+    private MessageEvents() {
+    }
+
+    @Name("com.crisisconnect.MessageParsed")
+    @Label("Message Parsed")
+    @Description("A message read from a socket device was decoded")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Parsed extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Client Id")
+        String clientId;
+
+        @Label("Compact")
+        @Description("Decoded from a compact frame rather than a JSON line")
+        boolean compact;
+    }
+
+    @Name("com.crisisconnect.MessageAccepted")
+    @Label("Message Accepted")
+    @Description("A message was checked for duplicates and queued in its priority lane")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Accepted extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Source")
+        String source;
+
+        @Label("Type")
+        String type;
+
+        @Label("Priority")
+        String priority;
+    }
+
+    @Name("com.crisisconnect.MessageDispatched")
+    @Label("Message Dispatched")
+    @Description("A message was fanned out to STOMP, socket devices and other servers")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Dispatched extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Lane")
+        String lane;
+
+        @Label("Queued")
+        @Description("Time spent waiting in the priority lane")
+        @Timespan(Timespan.NANOSECONDS)
+        long queued;
+    }
+
+    @Name("com.crisisconnect.MessagePersisted")
+    @Label("Message Persisted")
+    @Description("The batch holding a message was written to storage")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Persisted extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Storage Mode")
+        String mode;
+
+        @Label("Batch Size")
+        int batchSize;
+    }
+
+    @Name("com.crisisconnect.MessagePublished")
+    @Label("Message Published")
+    @Description("A message was handed to the STOMP broker for one destination")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Published extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Destination")
+        String destination;
+    }
+
+    @Name("com.crisisconnect.MessageWritten")
+    @Label("Message Written")
+    @Description("A message frame was written to one socket device")
+    @Category({CATEGORY, "Messages"})
+    @StackTrace(false)
+    static class Written extends Event {
+        @Label("Message Id")
+        String messageId;
+
+        @Label("Client Id")
+        String clientId;
+
+        @Label("Since Encoded")
+        @Description("Time from encoding the frame until it was written, including its wait in the device's queue")
+        @Timespan(Timespan.NANOSECONDS)
+        long sinceEncoded;
+
+        @Label("Size")
+        @DataAmount
+        int bytes;
+    }
+}
@@ -0,0 +1,182 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of the most recent messages, addressed by a monotonically increasing sequence.
+ * <p>
+ * Appends are serialized (one writer at a time) and O(1); readers never lock. A reader copies only the
+ * slots it needs and then discards any slot the writer lapped while it was copying.
+ * <p>
+ * History restored from disk is adopted as a list and only fetched into its slot the first time a reader
+ * reaches it, so a lazily decoding list (mapped storage) costs nothing at startup.
+ */
+class MessageHistoryBuffer {
+
+    private final int capacity;
+    private final AtomicReferenceArray<Message> slots;
+
+    // Sequence the writer is about to fill; bumped before the slot is overwritten
+    private volatile long claimed;
+    // One past the newest published sequence
+    private volatile long tail;
+    // Oldest sequence still visible (moves forward on clear)
+    private volatile long head;
+
+    // Messages adopted by restore(), starting at restoredFrom; dropped once every one has been lapped
+    private volatile List<Message> restored;
+    private volatile long restoredFrom;
+
+    MessageHistoryBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Stores the message and stamps it with its sequence.
+     */
+    synchronized long append(Message message) {
+        long seq = tail;
+        message.setSequence(seq);
+        claimed = seq + 1;
+        slots.set(index(seq), message);
+        tail = seq + 1;
+        List<Message> pending = restored;
+        if (pending != null && tail - capacity >= restoredFrom + pending.size()) {
+            restored = null;
+        }
+        return seq;
+    }
+
+    /**
+     * Adopts persisted messages as the history starting at {@code firstSequence} (only the newest
+     * {@code capacity} are kept) without reading them; each is fetched and stamped with its sequence when
+     * first read. {@code null} entries are gaps in the sequence (see {@link RestoredHistory}). Only allowed
+     * while nothing has been appended.
+     */
+    synchronized void restore(long firstSequence, List<Message> messages) {
+        if (tail != 0 || firstSequence < 0) {
+            throw new IllegalStateException("Cannot restore history at " + firstSequence + " after " + tail);
+        }
+        int skip = Math.max(0, messages.size() - capacity);
+        long first = firstSequence + skip;
+        restoredFrom = first;
+        restored = messages.subList(skip, messages.size());
+        claimed = first + messages.size() - skip;
+        head = first;
+        tail = claimed;
+    }
+
+    /**
+     * Hides everything held so far and returns the first sequence that stays visible.
+     */
+    synchronized long clear() {
+        restored = null;
+        head = tail;
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i, null);
+        }
+        return head;
+    }
+
+    List<Message> latest(int limit) {
+        long end = tail;
+        long start = Math.max(firstAvailable(end), end - Math.max(limit, 0));
+        return copy(start, end);
+    }
+
+    /**
+     * Messages with a sequence greater than {@code sequence} that are still held, oldest first.
+     */
+    List<Message> after(long sequence) {
+        long end = tail;
+        long start = Math.max(firstAvailable(end), sequence + 1);
+        return start < end ? copy(start, end) : new ArrayList<>();
+    }
+
+    /**
+     * Up to {@code limit} held messages with a sequence greater than {@code sequence}, oldest first.
+     */
+    List<Message> page(long sequence, int limit) {
+        long end = tail;
+        long start = Math.max(firstAvailable(end), sequence + 1);
+        long stop = Math.min(end, start + Math.max(limit, 0));
+        return start < stop ? copy(start, stop) : new ArrayList<>();
+    }
+
+    /**
+     * The message with this sequence, or {@code null} when it is no longer (or not yet) held.
+     */
+    Message get(long sequence) {
+        long end = tail;
+        if (sequence < firstAvailable(end) || sequence >= end) {
+            return null;
+        }
+        List<Message> one = copy(sequence, sequence + 1);
+        return one.isEmpty() ? null : one.get(0);
+    }
+
+    long nextSequence() {
+        return tail;
+    }
+
+    int size() {
+        long end = tail;
+        return (int) (end - firstAvailable(end));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private long firstAvailable(long end) {
+        return Math.max(head, end - capacity);
+    }
+
+    private List<Message> copy(long start, long end) {
+        List<Message> pending = restored;
+        long pendingFrom = restoredFrom;
+        List<Message> result = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            Message message = slots.get(index(seq));
+            if (message == null && pending != null) {
+                message = fetch(seq, pending, pendingFrom);
+            }
+            result.add(message);
+        }
+
+        // Anything below this was (or is being) overwritten while we copied
+        long valid = Math.max(head, claimed - capacity);
+        int skip = (int) Math.min(result.size(), Math.max(0, valid - start));
+        if (skip > 0) {
+            result.subList(0, skip).clear();
+        }
+        result.removeIf(message -> message == null);
+        return result;
+    }
+
+    // A slot the writer reuses meanwhile keeps the writer's message; the lapped check in copy() drops ours
+    private Message fetch(long seq, List<Message> pending, long pendingFrom) {
+        long offset = seq - pendingFrom;
+        if (offset < 0 || offset >= pending.size()) {
+            return null;
+        }
+        Message message = pending.get((int) offset);
+        if (message != null) {
+            message.setSequence(seq);
+            slots.compareAndSet(index(seq), null, message);
+        }
+        return message;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+}
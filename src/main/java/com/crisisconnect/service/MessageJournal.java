@@ -0,0 +1,345 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only message journal made of rolling segment files.
+ * <p>
+ * Every record is {@code [int length][int crc32][length bytes of JSON]}. Segments are named
+ * {@code segment-<index>.log}; compaction rewrites the newest records into {@code snapshot-<index>.log}
+ * and everything older than the latest snapshot is ignored (and deleted) on recovery. A torn or corrupt
+ * tail record is truncated away instead of discarding the whole file.
+ */
+@Slf4j
+class MessageJournal implements MessageStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SUFFIX = ".log";
+    static final int HEADER_BYTES = 8;
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final long segmentBytes;
+    private final int retainedRecords;
+    private final boolean fsync;
+
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    private FileChannel active;
+    private long activeIndex;
+    private long recordCount;
+    private long writtenSeq;
+    private volatile long syncedSeq;
+
+    MessageJournal(Path directory, ObjectMapper objectMapper, long segmentBytes, int retainedRecords, boolean fsync) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.segmentBytes = segmentBytes;
+        this.retainedRecords = retainedRecords;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Recovers all readable records from disk and opens a fresh segment for appends.
+     */
+    @Override
+    public List<Message> open() throws IOException {
+        synchronized (writeLock) {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> files = liveFiles();
+
+            List<Message> recovered = new ArrayList<>();
+            for (Path file : files.values()) {
+                List<byte[]> records = readRecords(file);
+                if (records.isEmpty() && file.getFileName().toString().startsWith(SEGMENT_PREFIX)) {
+                    Files.delete(file);
+                    continue;
+                }
+                for (byte[] payload : records) {
+                    try {
+                        recovered.add(objectMapper.readValue(payload, Message.class));
+                    } catch (IOException e) {
+                        log.warn("Skipping undecodable journal record in {}", file.getFileName(), e);
+                    }
+                }
+            }
+
+            recordCount = recovered.size();
+            activeIndex = files.isEmpty() ? 0 : files.lastKey() + 1;
+            active = openSegment(activeIndex);
+            return recovered;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (writeLock) {
+            return recordCount == 0;
+        }
+    }
+
+    /**
+     * Appends the messages and, when fsync is enabled, waits until they are durable. Concurrent callers
+     * share a single {@code force()} (group commit).
+     */
+    @Override
+    public long append(Collection<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        long seq;
+        long written;
+        synchronized (writeLock) {
+            long start = active.position();
+            for (Message message : messages) {
+                writeRecord(active, objectMapper.writeValueAsBytes(message));
+                recordCount++;
+                writtenSeq++;
+            }
+            seq = writtenSeq;
+            written = active.position() - start;
+            if (active.position() >= segmentBytes) {
+                roll();
+            }
+        }
+
+        if (fsync) {
+            awaitDurable(seq);
+        }
+
+        if (needsCompaction()) {
+            compact();
+        }
+        return written;
+    }
+
+    /**
+     * Drops every record by installing an empty snapshot.
+     */
+    @Override
+    public void clear() throws IOException {
+        synchronized (writeLock) {
+            installSnapshot(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Replaces every record with {@code messages} by installing them as a snapshot, so a crash leaves either
+     * the old records or the new ones.
+     */
+    void rewrite(Collection<Message> messages) throws IOException {
+        Deque<byte[]> records = new ArrayDeque<>(messages.size());
+        for (Message message : messages) {
+            records.addLast(objectMapper.writeValueAsBytes(message));
+        }
+        synchronized (writeLock) {
+            installSnapshot(records);
+        }
+    }
+
+    /**
+     * Rewrites the newest {@code retainedRecords} records into a snapshot and deletes older segments.
+     */
+    void compact() throws IOException {
+        synchronized (writeLock) {
+            if (!needsCompaction()) {
+                return;
+            }
+            Deque<byte[]> tail = new ArrayDeque<>(retainedRecords);
+            for (Path file : liveFiles().values()) {
+                for (byte[] payload : readRecords(file)) {
+                    if (tail.size() == retainedRecords) {
+                        tail.pollFirst();
+                    }
+                    tail.addLast(payload);
+                }
+            }
+            long before = recordCount;
+            installSnapshot(tail);
+            log.info("Compacted message journal from {} to {} records", before, recordCount);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (active != null && active.isOpen()) {
+                active.force(false);
+                active.close();
+            }
+        }
+    }
+
+    private boolean needsCompaction() {
+        synchronized (writeLock) {
+            return recordCount > 2L * retainedRecords;
+        }
+    }
+
+    private void awaitDurable(long seq) throws IOException {
+        if (syncedSeq >= seq) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            synchronized (writeLock) {
+                active.force(false);
+                syncedSeq = writtenSeq;
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        active.force(false);
+        active.close();
+        syncedSeq = writtenSeq;
+        activeIndex++;
+        active = openSegment(activeIndex);
+    }
+
+    private void installSnapshot(Deque<byte[]> records) throws IOException {
+        long snapshotIndex = activeIndex + 1;
+        Path target = directory.resolve(fileName(SNAPSHOT_PREFIX, snapshotIndex));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (byte[] payload : records) {
+                writeRecord(channel, payload);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // The snapshot supersedes everything before it, so a crash from here on is harmless
+        active.close();
+        liveFiles();
+
+        recordCount = records.size();
+        syncedSeq = writtenSeq;
+        activeIndex = snapshotIndex + 1;
+        active = openSegment(activeIndex);
+    }
+
+    /**
+     * Segment and snapshot files that are still relevant, keyed by index. Anything older than the newest
+     * snapshot is stale and removed here.
+     */
+    private TreeMap<Long, Path> liveFiles() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        long latestSnapshot = -1;
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) listing::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) {
+                    continue;
+                }
+                if (name.startsWith(SEGMENT_PREFIX)) {
+                    files.put(parseIndex(name, SEGMENT_PREFIX), path);
+                } else if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    long index = parseIndex(name, SNAPSHOT_PREFIX);
+                    files.put(index, path);
+                    latestSnapshot = Math.max(latestSnapshot, index);
+                }
+            }
+        }
+
+        if (latestSnapshot >= 0) {
+            var stale = files.headMap(latestSnapshot);
+            for (Path path : stale.values()) {
+                Files.deleteIfExists(path);
+            }
+            stale.clear();
+        }
+        return files;
+    }
+
+    /**
+     * Reads every valid record in the file. Anything after the first torn or corrupt record is truncated.
+     */
+    private List<byte[]> readRecords(Path file) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is buffered
+            }
+            buffer.flip();
+
+            CRC32 crc = new CRC32();
+            long validBytes = 0;
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                records.add(payload);
+                validBytes = buffer.position();
+            }
+
+            if (validBytes < size) {
+                log.warn("Truncating torn journal tail in {} at byte {} ({} bytes discarded)",
+                        file.getFileName(), validBytes, size - validBytes);
+                channel.truncate(validBytes);
+                channel.force(true);
+            }
+        }
+        return records;
+    }
+
+    static void writeRecord(FileChannel channel, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private FileChannel openSegment(long index) throws IOException {
+        return FileChannel.open(directory.resolve(fileName(SEGMENT_PREFIX, index)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String fileName(String prefix, long index) {
+        return String.format("%s%020d%s", prefix, index, SUFFIX);
+    }
+
+    private static long parseIndex(String name, String prefix) {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,577 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental inverted index over the history's {@code content} and {@code senderName}, addressed by history
+ * sequence. Terms are lowercase letter/digit runs; neighbouring terms of one field are also indexed as a pair,
+ * so a quoted phrase is a lookup rather than a scan. Postings are ascending id arrays that only grow at the
+ * end. Sequences that leave the history window are skipped by queries and physically dropped once as many
+ * have been evicted as the window holds.
+ * <p>
+ * A query is evaluated as bitsets over the live window, so its cost follows the postings of the terms it
+ * names, not the number of messages. Type, priority and time filters are checked per match against small
+ * per-slot arrays.
+ */
+class MessageSearchIndex {
+
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final byte NONE = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    // The same postings sorted by term, for prefix queries; only touched when a term is first seen
+    private final TreeMap<String, Postings> sortedTerms = new TreeMap<>();
+    private final Map<String, Postings> pairs = new HashMap<>();
+    // Filter fields per slot (sequence % capacity)
+    private final byte[] types;
+    private final byte[] priorities;
+    private final long[] times;
+
+    // Sequence of posting id 0; moves forward on compaction
+    private long base;
+    // Oldest sequence still in the window
+    private long floor;
+    // One past the newest indexed sequence
+    private long next;
+    private long compactedAt;
+    // Bumped by reset(), so a restore that started before it is discarded
+    private long generation;
+
+    MessageSearchIndex(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Index capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.types = new byte[capacity];
+        this.priorities = new byte[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * Drops everything; the next message indexed will have sequence {@code startSequence} or later.
+     */
+    void reset(long startSequence) {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            sortedTerms.clear();
+            pairs.clear();
+            base = startSequence;
+            floor = startSequence;
+            next = startSequence;
+            compactedAt = startSequence;
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long generation() {
+        lock.readLock().lock();
+        try {
+            return generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a message that was just appended to the history (its sequence is set).
+     */
+    void add(Message message) {
+        long seq = message.getSequence();
+        Document document = Document.of(message);
+        lock.writeLock().lock();
+        try {
+            if (seq < floor) {
+                return;
+            }
+            int id = (int) (seq - base);
+            document.terms.forEach(term -> term(term).add(id));
+            document.pairs.forEach(pair -> pairs.computeIfAbsent(pair, p -> new Postings()).add(id));
+            document.store(this, seq);
+            next = Math.max(next, seq + 1);
+            floor = Math.max(floor, next - capacity);
+            if (floor - compactedAt >= capacity) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes restored history: {@code messages} hold sequences {@code firstSequence} onward, all older than
+     * anything passed to {@link #add}. The batch is tokenized without the lock and merged in one step; it is
+     * discarded if {@link #reset} ran since {@code expectedGeneration}.
+     *
+     * @return number of messages indexed
+     */
+    int addRestored(long firstSequence, List<Message> messages, long expectedGeneration) {
+        Map<String, Postings> restoredTerms = new HashMap<>();
+        Map<String, Postings> restoredPairs = new HashMap<>();
+        int count = messages.size();
+        byte[] restoredTypes = new byte[count];
+        byte[] restoredPriorities = new byte[count];
+        long[] restoredTimes = new long[count];
+        for (int offset = 0; offset < count; offset++) {
+            Message message = messages.get(offset);
+            if (message == null) {
+                restoredTypes[offset] = NONE;
+                restoredPriorities[offset] = NONE;
+                restoredTimes[offset] = NO_TIME;
+                continue;
+            }
+            Document document = Document.of(message);
+            int id = offset;
+            document.terms.forEach(term -> restoredTerms.computeIfAbsent(term, t -> new Postings()).add(id));
+            document.pairs.forEach(pair -> restoredPairs.computeIfAbsent(pair, p -> new Postings()).add(id));
+            restoredTypes[offset] = document.type;
+            restoredPriorities[offset] = document.priority;
+            restoredTimes[offset] = document.time;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != expectedGeneration) {
+                return 0;
+            }
+            int shift = (int) (firstSequence - base);
+            int first = (int) (floor - base);
+            restoredTerms.forEach((term, postings) -> {
+                Postings merged = merge(terms, term, postings, shift, first);
+                if (merged != null) {
+                    sortedTerms.put(term, merged);
+                }
+            });
+            restoredPairs.forEach((pair, postings) -> merge(pairs, pair, postings, shift, first));
+            next = Math.max(next, firstSequence + count);
+            floor = Math.max(floor, next - capacity);
+            // Restored messages below the floor were lapped by live ones, which keep their slots
+            for (long seq = Math.max(floor, firstSequence); seq < firstSequence + count; seq++) {
+                int offset = (int) (seq - firstSequence);
+                int slot = slot(seq);
+                types[slot] = restoredTypes[offset];
+                priorities[slot] = restoredPriorities[offset];
+                times[slot] = restoredTimes[offset];
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sequences of the newest {@code limit} messages matching the query and filters, newest first, plus the
+     * total number of matches in the window.
+     */
+    Hits search(Query query, Filter filter, int limit) {
+        lock.readLock().lock();
+        try {
+            int window = (int) (next - floor);
+            if (window <= 0) {
+                return new Hits(List.of(), 0);
+            }
+            BitSet matches = query.isEmpty() ? all(window) : evaluate(query, window);
+            List<Long> sequences = new ArrayList<>(Math.min(limit, 64));
+            int total = 0;
+            for (int bit = matches.previousSetBit(window - 1); bit >= 0; bit = matches.previousSetBit(bit - 1)) {
+                long seq = floor + bit;
+                int slot = slot(seq);
+                if (filter.accepts(types[slot], priorities[slot], times[slot])) {
+                    total++;
+                    if (sequences.size() < limit) {
+                        sequences.add(seq);
+                    }
+                }
+            }
+            return new Hits(sequences, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet evaluate(Query query, int window) {
+        BitSet result = new BitSet(window);
+        for (List<Atom> clause : query.clauses()) {
+            BitSet clauseBits = null;
+            for (Atom atom : clause) {
+                BitSet atomBits = evaluate(atom, window);
+                if (clauseBits == null) {
+                    clauseBits = atomBits;
+                } else {
+                    clauseBits.and(atomBits);
+                }
+                if (clauseBits.isEmpty()) {
+                    break;
+                }
+            }
+            if (clauseBits != null) {
+                result.or(clauseBits);
+            }
+        }
+        return result;
+    }
+
+    private BitSet evaluate(Atom atom, int window) {
+        BitSet bits = new BitSet(window);
+        List<String> tokens = atom.tokens();
+        if (atom.prefix()) {
+            String prefix = tokens.get(0);
+            for (Postings postings : sortedTerms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                postings.collect(bits, (int) (floor - base));
+            }
+        } else if (tokens.size() == 1) {
+            collect(terms.get(tokens.get(0)), bits);
+        } else {
+            collect(pairs.get(pair(tokens.get(0), tokens.get(1))), bits);
+            for (int i = 2; i < tokens.size() && !bits.isEmpty(); i++) {
+                BitSet next = new BitSet(window);
+                collect(pairs.get(pair(tokens.get(i - 1), tokens.get(i))), next);
+                bits.and(next);
+            }
+        }
+        return bits;
+    }
+
+    private void collect(Postings postings, BitSet bits) {
+        if (postings != null) {
+            postings.collect(bits, (int) (floor - base));
+        }
+    }
+
+    private static BitSet all(int window) {
+        BitSet bits = new BitSet(window);
+        bits.set(0, window);
+        return bits;
+    }
+
+    // Caller holds the write lock
+    private void compact() {
+        int first = (int) (floor - base);
+        compact(terms.values().iterator(), first);
+        sortedTerms.keySet().retainAll(terms.keySet());
+        compact(pairs.values().iterator(), first);
+        base = floor;
+        compactedAt = floor;
+    }
+
+    private static void compact(Iterator<Postings> postings, int first) {
+        while (postings.hasNext()) {
+            if (!postings.next().dropBefore(first)) {
+                postings.remove();
+            }
+        }
+    }
+
+    private Postings term(String term) {
+        Postings postings = terms.get(term);
+        if (postings == null) {
+            postings = new Postings();
+            terms.put(term, postings);
+            sortedTerms.put(term, postings);
+        }
+        return postings;
+    }
+
+    // Returns the postings now stored under key, or null if nothing is left
+    private static Postings merge(Map<String, Postings> target, String key, Postings older, int shift, int first) {
+        Postings live = target.get(key);
+        Postings merged = older.shifted(shift, first);
+        if (live != null) {
+            merged.append(live);
+        }
+        if (merged.size == 0) {
+            return null;
+        }
+        target.put(key, merged);
+        return merged;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private static String pair(String first, String second) {
+        return first + ' ' + second;
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    /**
+     * Lowercase letter/digit runs of {@code text}, each cut to {@value #MAX_TERM_LENGTH} characters.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; ) {
+            int codePoint = i < length ? text.codePointAt(i) : ' ';
+            boolean word = i < length && Character.isLetterOrDigit(codePoint);
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                tokens.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+                start = -1;
+            }
+            i += i < length ? Character.charCount(codePoint) : 1;
+        }
+        return tokens;
+    }
+
+    /**
+     * A parsed query: clauses joined by {@code OR}, each a list of atoms that must all match.
+     */
+    record Query(List<List<Atom>> clauses) {
+
+        boolean isEmpty() {
+            return clauses.isEmpty();
+        }
+
+        /**
+         * Parses {@code insulin "block c" OR gen*}: words and quoted phrases are ANDed, {@code OR} separates
+         * alternatives, a trailing {@code *} makes a single word a prefix.
+         */
+        static Query parse(String text) {
+            List<List<Atom>> clauses = new ArrayList<>();
+            List<Atom> clause = new ArrayList<>();
+            if (text != null) {
+                int i = 0;
+                while (i < text.length()) {
+                    char c = text.charAt(i);
+                    if (Character.isWhitespace(c)) {
+                        i++;
+                        continue;
+                    }
+                    int end;
+                    String word;
+                    boolean quoted = c == '"';
+                    if (quoted) {
+                        end = text.indexOf('"', i + 1);
+                        end = end < 0 ? text.length() : end;
+                        word = text.substring(i + 1, end);
+                        end++;
+                    } else {
+                        end = i;
+                        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                            end++;
+                        }
+                        word = text.substring(i, end);
+                    }
+                    i = end;
+
+                    if (!quoted && word.equals("OR")) {
+                        if (!clause.isEmpty()) {
+                            clauses.add(clause);
+                            clause = new ArrayList<>();
+                        }
+                        continue;
+                    }
+                    List<String> tokens = tokenize(word);
+                    if (!tokens.isEmpty()) {
+                        boolean prefix = !quoted && word.endsWith("*") && tokens.size() == 1;
+                        clause.add(new Atom(tokens, prefix));
+                    }
+                }
+            }
+            if (!clause.isEmpty()) {
+                clauses.add(clause);
+            }
+            return new Query(clauses);
+        }
+    }
+
+    /**
+     * One word ({@code tokens} of size one), prefix or phrase.
+     */
+    record Atom(List<String> tokens, boolean prefix) {
+    }
+
+    /**
+     * Type and priority restrictions as bitmasks of enum ordinals ({@code -1} for any) and an inclusive time
+     * range in epoch milliseconds.
+     */
+    record Filter(int typeMask, int priorityMask, long from, long to) {
+
+        static final Filter NONE = new Filter(-1, -1, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        boolean accepts(byte type, byte priority, long time) {
+            return matches(typeMask, type) && matches(priorityMask, priority)
+                    && (time != NO_TIME || (from == Long.MIN_VALUE && to == Long.MAX_VALUE))
+                    && time >= from && time <= to;
+        }
+
+        /**
+         * {@code null} or empty sets and {@code null} bounds mean no restriction.
+         */
+        static Filter of(Set<Message.MessageType> types, Set<Message.MessagePriority> priorities,
+                LocalDateTime from, LocalDateTime to) {
+            return new Filter(mask(types), mask(priorities),
+                    from != null ? epochMillis(from) : Long.MIN_VALUE, to != null ? epochMillis(to) : Long.MAX_VALUE);
+        }
+
+        private static boolean matches(int mask, byte ordinal) {
+            return mask == -1 || (ordinal != MessageSearchIndex.NONE && (mask & (1 << ordinal)) != 0);
+        }
+
+        private static int mask(Set<? extends Enum<?>> values) {
+            if (values == null || values.isEmpty()) {
+                return -1;
+            }
+            int mask = 0;
+            for (Enum<?> value : values) {
+                mask |= 1 << value.ordinal();
+            }
+            return mask;
+        }
+    }
+
+    record Hits(List<Long> sequences, int total) {
+    }
+
+    /**
+     * Terms, pairs and filter fields of one message.
+     */
+    private record Document(Set<String> terms, Set<String> pairs, byte type, byte priority, long time) {
+
+        static Document of(Message message) {
+            Set<String> terms = new LinkedHashSet<>();
+            Set<String> pairs = new LinkedHashSet<>();
+            for (String field : new String[] {message.getContent(), message.getSenderName()}) {
+                List<String> tokens = tokenize(field);
+                terms.addAll(tokens);
+                for (int i = 1; i < tokens.size(); i++) {
+                    pairs.add(pair(tokens.get(i - 1), tokens.get(i)));
+                }
+            }
+            return new Document(terms, pairs,
+                    message.getType() != null ? (byte) message.getType().ordinal() : NONE,
+                    message.getPriority() != null ? (byte) message.getPriority().ordinal() : NONE,
+                    message.getTimestamp() != null ? epochMillis(message.getTimestamp()) : NO_TIME);
+        }
+
+        void store(MessageSearchIndex index, long seq) {
+            int slot = index.slot(seq);
+            index.types[slot] = type;
+            index.priorities[slot] = priority;
+            index.times[slot] = time;
+        }
+    }
+
+    /**
+     * Ascending ids of the messages containing one term or pair.
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                // Out of order only when two broadcasts race; keep the array sorted and free of repeats
+                int at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) {
+                    return;
+                }
+                insert(-at - 1, id);
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void insert(int at, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void collect(BitSet bits, int first) {
+            int from = lowerBound(first);
+            for (int i = from; i < size; i++) {
+                bits.set(ids[i] - first);
+            }
+        }
+
+        /**
+         * Drops ids below {@code first} and renumbers the rest from it.
+         *
+         * @return whether anything is left
+         */
+        boolean dropBefore(int first) {
+            int from = lowerBound(first);
+            int remaining = size - from;
+            int[] kept = new int[Math.max(2, remaining)];
+            for (int i = 0; i < remaining; i++) {
+                kept[i] = ids[from + i] - first;
+            }
+            ids = kept;
+            size = remaining;
+            return remaining > 0;
+        }
+
+        Postings shifted(int shift, int first) {
+            Postings result = new Postings();
+            result.ids = new int[Math.max(2, size)];
+            for (int i = 0; i < size; i++) {
+                int id = ids[i] + shift;
+                if (id >= first) {
+                    result.ids[result.size++] = id;
+                }
+            }
+            return result;
+        }
+
+        void append(Postings newer) {
+            if (size + newer.size > ids.length) {
+                ids = Arrays.copyOf(ids, size + newer.size);
+            }
+            System.arraycopy(newer.ids, 0, ids, size, newer.size);
+            size += newer.size;
+        }
+
+        private int lowerBound(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+}
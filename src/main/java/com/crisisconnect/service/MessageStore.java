@@ -0,0 +1,40 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only message history on disk, behind {@link FileStorageService} in every mode except JSON.
+ */
+interface MessageStore extends Closeable {
+
+    /**
+     * A recovered history that knows each message's sequence without decoding it.
+     */
+    interface Sequenced {
+
+        /**
+         * The stored sequence of the message at {@code index}, or -1 if it was stored without one.
+         */
+        long sequence(int index);
+    }
+
+    /**
+     * Recovers the stored history, oldest first, and prepares for appends. Records that can't be read are
+     * skipped (or, in a lazily decoded list, read as a system notice), never returned as {@code null}.
+     */
+    List<Message> open() throws IOException;
+
+    boolean isEmpty();
+
+    /**
+     * @return the number of bytes written
+     */
+    long append(Collection<Message> messages) throws IOException;
+
+    void clear() throws IOException;
+}
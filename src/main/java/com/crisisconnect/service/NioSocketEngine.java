@@ -0,0 +1,216 @@
+package com.crisisconnect.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking engine: a single selector thread accepts, reads and writes every connection. Each
+ * connection owns a read buffer and drains its outbound queue whenever the socket is writable.
+ */
+@Slf4j
+class NioSocketEngine implements SocketEngine {
+
+    private static final int READ_BUFFER_BYTES = 8192;
+
+    private final Queue<NioConnection> writeInterest = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ConnectionHandler handler;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    @Override
+    public void start(int port, ConnectionHandler handler) throws IOException {
+        this.handler = handler;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "crisis-nio-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            if (selectorThread != null) {
+                selectorThread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+                registerWriteInterest();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            NioConnection connection = (NioConnection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        }
+                    } catch (CancelledKeyException e) {
+                        // Connection was closed while its event was pending
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Selector loop error", e);
+                }
+            }
+        }
+
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error closing selector", e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        NioConnection connection = new NioConnection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connection.opened();
+    }
+
+    private void registerWriteInterest() {
+        NioConnection connection;
+        while ((connection = writeInterest.poll()) != null) {
+            connection.writeScheduled.set(false);
+            SelectionKey key = connection.key;
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private class NioConnection extends ClientConnection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private ByteBuffer partialWrite;
+        private OutboundFrame partialFrame;
+        private SelectionKey key;
+
+        NioConnection(SocketChannel channel) throws IOException {
+            super(UUID.randomUUID().toString(),
+                    ((InetSocketAddress) channel.getRemoteAddress()).getAddress(), handler);
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                int read = channel.read(readBuffer);
+                if (read < 0) {
+                    close();
+                    return;
+                }
+                readBuffer.flip();
+                received(readBuffer);
+                readBuffer.clear();
+            } catch (IOException e) {
+                log.error("Connection error for client {}", getClientId(), e);
+                close();
+            }
+        }
+
+        void flush() {
+            try {
+                while (true) {
+                    if (partialWrite == null) {
+                        OutboundFrame frame = outbound().poll();
+                        if (frame == null) {
+                            break;
+                        }
+                        partialWrite = ByteBuffer.wrap(frame.bytes());
+                        partialFrame = frame;
+                    }
+                    // Covers the write that finishes the frame; its time since encoding covers the rest
+                    MessageEvents.Written written = new MessageEvents.Written();
+                    written.begin();
+                    channel.write(partialWrite);
+                    if (partialWrite.hasRemaining()) {
+                        // Socket send buffer is full; wait for the next OP_WRITE
+                        return;
+                    }
+                    written(written, partialFrame);
+                    partialWrite = null;
+                    partialFrame = null;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                if (!outbound().isEmpty()) {
+                    framesQueued();
+                }
+            } catch (IOException e) {
+                writeFailed(e);
+            }
+        }
+
+        @Override
+        protected void framesQueued() {
+            if (writeScheduled.compareAndSet(false, true)) {
+                writeInterest.add(this);
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        protected void closeTransport() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing socket", e);
+            }
+        }
+    }
+}
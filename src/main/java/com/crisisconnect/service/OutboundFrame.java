@@ -0,0 +1,46 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+
+/**
+ * An encoded message waiting in one or more {@link OutboundQueue}s.
+ *
+ * @param bytes        wire bytes, including the trailing newline
+ * @param rank         drop rank; higher survives longer (EMERGENCY counts as CRITICAL)
+ * @param coalesceKey  frames with the same key supersede each other under the COALESCE policy; {@code null}
+ *                     for anything that is not a position or status report, which is never superseded
+ * @param messageId    id of the message it carries, {@code null} for control frames
+ * @param createdNanos {@link System#nanoTime()} when the frame was encoded, used for lag
+ */
+record OutboundFrame(byte[] bytes, int rank, String coalesceKey, String messageId, long createdNanos) {
+
+    static final int CRITICAL_RANK = Message.MessagePriority.CRITICAL.ordinal();
+
+    static OutboundFrame of(byte[] bytes, Message message) {
+        Message.MessagePriority priority = message.getPriority() != null
+                ? message.getPriority()
+                : Message.MessagePriority.NORMAL;
+        int rank = message.getType() == Message.MessageType.EMERGENCY ? CRITICAL_RANK : priority.ordinal();
+        return new OutboundFrame(bytes, rank, coalesceKey(message), message.getId(), System.nanoTime());
+    }
+
+    // Only a sender's latest location or status matters; chat and alerts are each worth delivering
+    private static String coalesceKey(Message message) {
+        Message.MessageType type = message.getType();
+        if (type != Message.MessageType.LOCATION && type != Message.MessageType.STATUS_UPDATE) {
+            return null;
+        }
+        return message.getSenderId() + "/" + type;
+    }
+
+    /**
+     * A protocol reply for one device; never dropped or coalesced.
+     */
+    static OutboundFrame control(byte[] bytes) {
+        return new OutboundFrame(bytes, CRITICAL_RANK, null, null, System.nanoTime());
+    }
+
+    boolean isCritical() {
+        return rank >= CRITICAL_RANK;
+    }
+}
@@ -0,0 +1,149 @@
+package com.crisisconnect.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded per-connection send queue. When it overflows, the configured {@link OverflowPolicy} decides what
+ * gives way, but a lower-ranked frame is always sacrificed before a higher-ranked one and CRITICAL or
+ * EMERGENCY frames are never dropped while anything lower is queued.
+ */
+class OutboundQueue {
+
+    enum OverflowPolicy {
+        // Drop the oldest frame of the lowest queued priority
+        DROP_OLDEST,
+        // Give up on the consumer and close its connection
+        DISCONNECT,
+        // Replace an older non-critical location or status frame from the same sender, else drop oldest
+        COALESCE
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Timer lagTimer;
+    private final Counter droppedFrames;
+    private final ArrayDeque<OutboundFrame> frames = new ArrayDeque<>();
+    private boolean closed;
+
+    OutboundQueue(int capacity, OverflowPolicy policy, Timer lagTimer, Counter droppedFrames) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.lagTimer = lagTimer;
+        this.droppedFrames = droppedFrames;
+    }
+
+    /**
+     * @return {@code false} if the consumer is hopelessly behind and should be disconnected
+     */
+    synchronized boolean offer(OutboundFrame frame) {
+        if (closed) {
+            return true;
+        }
+        if (frames.size() < capacity) {
+            enqueue(frame);
+            return true;
+        }
+        if (policy == OverflowPolicy.DISCONNECT) {
+            return false;
+        }
+        if (policy == OverflowPolicy.COALESCE && !frame.isCritical() && frame.coalesceKey() != null
+                && replaceSameKey(frame)) {
+            dropped();
+            return true;
+        }
+
+        OutboundFrame victim = lowestRanked();
+        if (victim.rank() > frame.rank()) {
+            // Everything queued matters more than the new frame
+            dropped();
+            return true;
+        }
+        if (victim.isCritical()) {
+            // Only critical traffic is queued and the consumer still can't keep up
+            return false;
+        }
+        frames.remove(victim);
+        dropped();
+        enqueue(frame);
+        return true;
+    }
+
+    /**
+     * Waits for the next frame; returns {@code null} once the queue is closed.
+     */
+    synchronized OutboundFrame take() throws InterruptedException {
+        while (frames.isEmpty() && !closed) {
+            wait();
+        }
+        return closed ? null : dequeue();
+    }
+
+    synchronized OutboundFrame poll() {
+        return frames.isEmpty() ? null : dequeue();
+    }
+
+    synchronized boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    synchronized int size() {
+        return frames.size();
+    }
+
+    /**
+     * Age of the oldest queued frame, i.e. how far this consumer is behind the broadcast.
+     */
+    synchronized long lagMillis() {
+        OutboundFrame oldest = frames.peekFirst();
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.createdNanos());
+    }
+
+    private void dropped() {
+        droppedFrames.increment();
+    }
+
+    synchronized void close() {
+        closed = true;
+        frames.clear();
+        notifyAll();
+    }
+
+    private void enqueue(OutboundFrame frame) {
+        frames.addLast(frame);
+        notifyAll();
+    }
+
+    private OutboundFrame dequeue() {
+        OutboundFrame frame = frames.pollFirst();
+        lagTimer.record(System.nanoTime() - frame.createdNanos(), TimeUnit.NANOSECONDS);
+        return frame;
+    }
+
+    private boolean replaceSameKey(OutboundFrame frame) {
+        Iterator<OutboundFrame> it = frames.iterator();
+        while (it.hasNext()) {
+            OutboundFrame queued = it.next();
+            if (!queued.isCritical() && frame.coalesceKey().equals(queued.coalesceKey())) {
+                it.remove();
+                frames.addLast(frame);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private OutboundFrame lowestRanked() {
+        OutboundFrame lowest = null;
+        for (OutboundFrame queued : frames) {
+            if (lowest == null || queued.rank() < lowest.rank()) {
+                lowest = queued;
+            }
+        }
+        return lowest;
+    }
+}
@@ -0,0 +1,182 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every message forwarded upstream that the upstream has not acknowledged yet: an in-memory map in forwarding
+ * order, mirrored by a {@link MessageJournal}, so nothing accepted is lost if the link drops or the relay
+ * restarts before the upstream confirms it. Appends are fsynced before they return. Acknowledged messages
+ * are cut from the journal in bulk (a snapshot of what is still pending), so a restart may send a few of
+ * them again; the upstream drops repeats by id.
+ * <p>
+ * Bounded to {@code maxMessages}; beyond that the oldest messages are dropped.
+ */
+@Slf4j
+class RelayOutbox implements Closeable {
+
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    // Fewest acknowledgements worth a journal rewrite, so a short backlog isn't rewritten per ack
+    private static final int MIN_REWRITE = 64;
+
+    private final MessageJournal journal;
+    private final int maxMessages;
+    // By id; sent entries wait for their acknowledgement
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private int acknowledgedSinceRewrite;
+    private boolean durable;
+
+    private static final class Entry {
+        private final Message message;
+        private boolean sent;
+
+        private Entry(Message message) {
+            this.message = message;
+        }
+    }
+
+    RelayOutbox(Path directory, ObjectMapper objectMapper, int maxMessages) {
+        this.journal = new MessageJournal(directory, objectMapper, SEGMENT_BYTES, maxMessages, true);
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Recovers whatever was still unacknowledged when the relay last stopped.
+     *
+     * @return number of recovered messages
+     */
+    synchronized int open() {
+        try {
+            for (Message message : journal.open()) {
+                pending.put(message.getId(), new Entry(message));
+            }
+            durable = true;
+        } catch (IOException e) {
+            log.error("Failed to open relay outbox, queueing in memory only", e);
+        }
+        trim();
+        return pending.size();
+    }
+
+    /**
+     * @return how many of the oldest queued messages had to be dropped to stay within bounds
+     */
+    synchronized int append(List<Message> messages) {
+        for (Message message : messages) {
+            pending.put(message.getId(), new Entry(message));
+        }
+        if (durable) {
+            try {
+                journal.append(messages);
+            } catch (IOException e) {
+                log.error("Failed to persist {} relay messages", messages.size(), e);
+            }
+        }
+        int dropped = trim();
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * The oldest {@code max} messages not sent since the link came up, now marked sent; waits up to
+     * {@code timeoutMs} for one if there are none.
+     */
+    synchronized List<Message> takeUnsent(int max, long timeoutMs) throws InterruptedException {
+        List<Message> batch = unsent(max);
+        if (batch.isEmpty() && timeoutMs > 0) {
+            wait(timeoutMs);
+            batch = unsent(max);
+        }
+        return batch;
+    }
+
+    private List<Message> unsent(int max) {
+        List<Message> batch = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Entry> it = pending.values().iterator();
+        while (batch.size() < max && it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.sent) {
+                entry.sent = true;
+                batch.add(entry.message);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Drops a message the upstream has confirmed. Unknown ids (already trimmed or acknowledged) are ignored.
+     */
+    synchronized void acknowledged(String id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+        acknowledgedSinceRewrite++;
+        if (!durable) {
+            return;
+        }
+        try {
+            if (pending.isEmpty()) {
+                journal.clear();
+                acknowledgedSinceRewrite = 0;
+            } else if (acknowledgedSinceRewrite >= Math.max(MIN_REWRITE, pending.size())) {
+                // Amortized: the rewrite copies at most as many records as were acknowledged since the last one
+                journal.rewrite(pending.values().stream().map(entry -> entry.message).toList());
+                acknowledgedSinceRewrite = 0;
+            }
+        } catch (IOException e) {
+            log.error("Failed to drop acknowledged messages from the relay outbox", e);
+        }
+    }
+
+    /**
+     * Sends a message again with the next batch (at the latest after one poll interval), e.g. one the upstream
+     * was too busy to accept.
+     */
+    synchronized void resend(String id) {
+        Entry entry = pending.get(id);
+        if (entry != null) {
+            entry.sent = false;
+        }
+    }
+
+    /**
+     * Marks everything unacknowledged as unsent, for the next link to send again.
+     */
+    synchronized void resendAll() {
+        for (Entry entry : pending.values()) {
+            entry.sent = false;
+        }
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    private int trim() {
+        int dropped = 0;
+        Iterator<Entry> it = pending.values().iterator();
+        while (pending.size() > maxMessages && it.hasNext()) {
+            it.next();
+            it.remove();
+            dropped++;
+        }
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (durable) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.NetworkNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Relay mode: with {@code crisis.relay.upstream-host} set, this instance connects to another CrisisConnect
+ * server's socket port like a device would and joins the two message streams. Messages dispatched here are
+ * forwarded up in batches; messages from the upstream are dispatched here (and so reach this server's
+ * devices and further relays) but not sent back. Loops are broken by the dispatcher's seen-id set.
+ * <p>
+ * Every forwarded message goes to a {@link RelayOutbox} on disk first and stays there until the upstream
+ * answers {@code ACK <id>} (it does so for each message a relay sends, repeats included). Whatever is
+ * unacknowledged when the link drops, or when the relay restarts, is sent again, oldest first, once the
+ * link is back; {@code BUSY <id>} sends that message again at once.
+ */
+@Service
+@Slf4j
+public class RelayService {
+
+    // "RELAY <node id> <socket port>", the relay's first line to the upstream
+    static final String HELLO_COMMAND = "RELAY";
+    // "ACK <message id>", the upstream's confirmation that it took a relayed message (or already had it)
+    static final String ACK_REPLY = "ACK";
+
+    private static final String OUTBOX_DIR = "relay";
+    // Server notices (welcome, region replies) are addressed to the link itself, not meant for relaying
+    private static final String SYSTEM_SENDER = "SYSTEM";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long POLL_MS = 250;
+
+    private final MessageDispatchService dispatchService;
+    private final ObjectMapper objectMapper;
+    private final String upstreamHost;
+    private final int upstreamPort;
+    private final String nodeId;
+    private final int socketPort;
+    private final int batchSize;
+    private final long reconnectNanos;
+    private final RelayOutbox outbox;
+
+    private final Counter forwardedUp;
+    private final Counter forwardedDown;
+    private final Counter outboxDropped;
+    private final DistributionSummary batchSizes;
+
+    private volatile NetworkNode upstream;
+    private volatile Socket socket;
+    private Thread sender;
+    private volatile boolean running;
+
+    public RelayService(@Lazy MessageDispatchService dispatchService, ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${crisis.relay.upstream-host:}") String upstreamHost,
+            @Value("${crisis.relay.upstream-port:8888}") int upstreamPort,
+            @Value("${crisis.relay.node-id:}") String nodeId,
+            @Value("${crisis.socket.port:8888}") int socketPort,
+            @Value("${crisis.relay.batch-size:64}") int batchSize,
+            @Value("${crisis.relay.reconnect-ms:2000}") long reconnectMs,
+            @Value("${crisis.relay.outbox.max-messages:10000}") int outboxMaxMessages,
+            @Value("${crisis.storage.data-dir:data}") String dataDir) {
+        this.dispatchService = dispatchService;
+        this.objectMapper = objectMapper;
+        this.upstreamHost = upstreamHost.trim();
+        this.upstreamPort = upstreamPort;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId.trim();
+        this.socketPort = socketPort;
+        this.batchSize = batchSize;
+        this.reconnectNanos = TimeUnit.MILLISECONDS.toNanos(reconnectMs);
+        this.outbox = isEnabled()
+                ? new RelayOutbox(Path.of(dataDir, OUTBOX_DIR), objectMapper, outboxMaxMessages)
+                : null;
+
+        this.forwardedUp = forwarded(meterRegistry, "up");
+        this.forwardedDown = forwarded(meterRegistry, "down");
+        this.outboxDropped = Counter.builder("crisis.relay.outbox.dropped")
+                .description("Queued messages dropped because the relay outbox was full")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("crisis.relay.batch.size")
+                .description("Messages written to the upstream per flush")
+                .register(meterRegistry);
+        if (outbox != null) {
+            Gauge.builder("crisis.relay.outbox.depth", outbox, RelayOutbox::size)
+                    .description("Messages waiting for the upstream server")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Counter forwarded(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("crisis.relay.forwarded")
+                .description("Messages passed across the relay link")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return !upstreamHost.isEmpty();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The upstream server while the link is up, otherwise {@code null}.
+     */
+    public NetworkNode getUpstream() {
+        return upstream;
+    }
+
+    public int getOutboxDepth() {
+        return outbox != null ? outbox.size() : 0;
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        int recovered = outbox.open();
+        if (recovered > 0) {
+            log.info("📦 {} relay messages recovered from the outbox", recovered);
+        }
+        running = true;
+        sender = new Thread(this::linkLoop, "crisis-relay-sender");
+        sender.setDaemon(true);
+        sender.start();
+        log.info("🔗 Relay node {} forwarding to {}:{}", nodeId, upstreamHost, upstreamPort);
+    }
+
+    /**
+     * Queues a locally dispatched message durably for the upstream; the link sends it when it can.
+     */
+    void forward(Message message) {
+        if (!isEnabled()) {
+            return;
+        }
+        int dropped = outbox.append(List.of(message));
+        if (dropped > 0) {
+            outboxDropped.increment(dropped);
+            log.warn("Relay outbox full, dropped {} oldest messages", dropped);
+        }
+    }
+
+    private void linkLoop() {
+        boolean reported = false;
+        while (running) {
+            try (Socket link = new Socket()) {
+                link.connect(new InetSocketAddress(upstreamHost, upstreamPort), CONNECT_TIMEOUT_MS);
+                link.setTcpNoDelay(true);
+                link.setKeepAlive(true);
+                socket = link;
+                reported = false;
+                runLink(link);
+            } catch (IOException e) {
+                if (running && !reported) {
+                    log.warn("⚠️ Upstream {}:{} unreachable ({}), queueing to the outbox",
+                            upstreamHost, upstreamPort, e.getMessage());
+                    reported = true;
+                }
+            } finally {
+                if (disconnected()) {
+                    reported = true;
+                }
+            }
+            if (running) {
+                LockSupport.parkNanos(this, reconnectNanos);
+            }
+        }
+    }
+
+    private void runLink(Socket link) throws IOException {
+        OutputStream out = new BufferedOutputStream(link.getOutputStream(), 64 * 1024);
+        out.write((HELLO_COMMAND + " " + nodeId + " " + socketPort + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        Thread reader = new Thread(() -> receive(link), "crisis-relay-reader");
+        reader.setDaemon(true);
+        reader.start();
+        upstream = new NetworkNode(upstreamHost + ":" + upstreamPort, upstreamHost,
+                link.getInetAddress().getHostAddress(), upstreamPort, NetworkNode.NodeType.SERVER,
+                LocalDateTime.now(), true);
+        log.info("🔗 Connected to upstream {}:{}, {} unacknowledged messages to send", upstreamHost, upstreamPort,
+                outbox.size());
+
+        // Oldest first, so the upstream gets the backlog before anything newer
+        while (running && !link.isClosed()) {
+            List<Message> batch;
+            try {
+                batch = outbox.takeUnsent(batchSize, POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                write(out, batch);
+            }
+        }
+    }
+
+    private void write(OutputStream out, List<Message> batch) throws IOException {
+        for (Message message : batch) {
+            out.write(objectMapper.writeValueAsBytes(message));
+            out.write('\n');
+        }
+        out.flush();
+        forwardedUp.increment(batch.size());
+        batchSizes.record(batch.size());
+    }
+
+    // Nothing sent on this link counts until it is acknowledged; the next link sends the rest again
+    private boolean disconnected() {
+        boolean wasConnected = upstream != null;
+        outbox.resendAll();
+        upstream = null;
+        socket = null;
+        if (wasConnected) {
+            log.warn("⚠️ Lost upstream {}:{}, {} messages wait for it", upstreamHost, upstreamPort, outbox.size());
+        }
+        return wasConnected;
+    }
+
+    private void receive(Socket link) {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(link.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                received(line);
+            }
+        } catch (IOException e) {
+            // Link dropped; the sender notices the closed socket and reconnects
+        } finally {
+            closeQuietly(link);
+        }
+    }
+
+    private void received(String line) {
+        if (line.startsWith(ACK_REPLY + " ")) {
+            outbox.acknowledged(line.substring(ACK_REPLY.length() + 1).trim());
+            return;
+        }
+        if (line.startsWith(SocketServerService.BUSY_REPLY + " ")) {
+            outbox.resend(line.substring(SocketServerService.BUSY_REPLY.length() + 1).trim());
+            return;
+        }
+        Message message;
+        try {
+            message = objectMapper.readValue(line, Message.class);
+        } catch (JsonProcessingException e) {
+            log.debug("Ignoring non-message line from upstream: {}", line);
+            return;
+        }
+        if (SYSTEM_SENDER.equals(message.getSenderId())) {
+            return;
+        }
+        forwardedDown.increment();
+        dispatchService.submit(message, MessageDispatchService.Origin.UPSTREAM);
+    }
+
+    private static void closeQuietly(Socket link) {
+        try {
+            link.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sender == null) {
+            return;
+        }
+        running = false;
+        Socket link = socket;
+        if (link != null) {
+            closeQuietly(link);
+        }
+        LockSupport.unpark(sender);
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            outbox.close();
+        } catch (IOException e) {
+            log.error("Failed to close relay outbox", e);
+        }
+        log.info("Relay link stopped");
+    }
+}
@@ -0,0 +1,139 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Persisted messages laid out by the sequence each was broadcast with: element {@code i} is the message with
+ * sequence {@link #firstSequence()} {@code + i}, or {@code null} where none was stored (a gap). Nothing is
+ * renumbered, so resume cursors handed out before a restart still point at the same messages. A stored
+ * message is only read when its element is, which keeps a lazily decoded list from mapped storage lazy.
+ * <p>
+ * A history stored before messages carried sequences is numbered by position from 0, as it was then.
+ */
+@Slf4j
+final class RestoredHistory extends AbstractList<Message> implements RandomAccess {
+
+    private final List<Message> stored;
+    // Ascending stored sequences, and where in stored each message is
+    private final long[] sequences;
+    private final int[] positions;
+    private final long first;
+    private final int size;
+
+    private RestoredHistory(List<Message> stored, long[] sequences, int[] positions) {
+        this.stored = stored;
+        this.sequences = sequences;
+        this.positions = positions;
+        this.first = sequences.length > 0 ? sequences[0] : 0;
+        this.size = sequences.length > 0 ? (int) (sequences[sequences.length - 1] - first + 1) : 0;
+    }
+
+    /**
+     * Lays out {@code stored} (oldest first, as loaded) by sequence, keeping at most the newest
+     * {@code capacity} sequences.
+     */
+    static RestoredHistory of(List<Message> stored, int capacity) {
+        int count = stored.size();
+        long[] all = new long[count];
+        List<Integer> sequenced = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            all[i] = sequenceOf(stored, i);
+            if (all[i] >= 0) {
+                sequenced.add(i);
+            }
+        }
+        if (sequenced.isEmpty()) {
+            int skip = Math.max(0, count - capacity);
+            long[] byPosition = new long[count - skip];
+            int[] positions = new int[count - skip];
+            for (int i = skip; i < count; i++) {
+                byPosition[i - skip] = i;
+                positions[i - skip] = i;
+            }
+            return new RestoredHistory(stored, byPosition, positions);
+        }
+        if (sequenced.size() < count) {
+            log.warn("Skipping {} restored messages stored without a sequence", count - sequenced.size());
+        }
+        long newest = all[sequenced.get(sequenced.size() - 1)];
+        if (!ascending(all, sequenced)) {
+            // Only older versions persisted out of order; a repeated sequence keeps the message written last
+            sequenced.sort(Comparator.<Integer>comparingLong(i -> all[i]).thenComparingInt(i -> i));
+            newest = all[sequenced.get(sequenced.size() - 1)];
+        }
+
+        long oldestKept = newest - capacity + 1;
+        long[] sequences = new long[sequenced.size()];
+        int[] positions = new int[sequenced.size()];
+        int kept = 0;
+        for (int position : sequenced) {
+            long sequence = all[position];
+            if (sequence < oldestKept) {
+                continue;
+            }
+            if (kept > 0 && sequences[kept - 1] == sequence) {
+                kept--;
+            }
+            sequences[kept] = sequence;
+            positions[kept] = position;
+            kept++;
+        }
+        return new RestoredHistory(stored, Arrays.copyOf(sequences, kept), Arrays.copyOf(positions, kept));
+    }
+
+    private static boolean ascending(long[] all, List<Integer> sequenced) {
+        for (int i = 1; i < sequenced.size(); i++) {
+            if (all[sequenced.get(i)] < all[sequenced.get(i - 1)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long sequenceOf(List<Message> stored, int index) {
+        if (stored instanceof MessageStore.Sequenced sequenced) {
+            return sequenced.sequence(index);
+        }
+        Long sequence = stored.get(index).getSequence();
+        return sequence != null ? sequence : -1;
+    }
+
+    long firstSequence() {
+        return first;
+    }
+
+    /**
+     * How many messages were restored; less than {@link #size()} when there are gaps.
+     */
+    int count() {
+        return sequences.length;
+    }
+
+    /**
+     * Sequences in range with no stored message.
+     */
+    int missing() {
+        return size - sequences.length;
+    }
+
+    @Override
+    public Message get(int index) {
+        Objects.checkIndex(index, size);
+        int found = Arrays.binarySearch(sequences, first + index);
+        return found >= 0 ? stored.get(positions[found]) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,68 @@
+package com.crisisconnect.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded set of recently seen message ids. Once full, every new id evicts the oldest one, so memory stays
+ * fixed while anything that comes back within the last {@code capacity} messages is still recognised.
+ * Thread-safe without locking; under concurrent adds the set may briefly hold a few more ids than capacity.
+ */
+class SeenIds {
+
+    // Not yet given a ring slot
+    private static final int UNPLACED = -1;
+
+    // Each id and the ring slot that holds it; an eviction only removes the id if that slot still owns it
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> ring;
+    private final AtomicLong next = new AtomicLong();
+
+    SeenIds(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @return {@code true} the first time an id is seen, {@code false} while it is still remembered
+     */
+    boolean add(String id) {
+        if (ids.putIfAbsent(id, UNPLACED) != null) {
+            return false;
+        }
+        int slot = (int) (next.getAndIncrement() % ring.length());
+        ids.replace(id, UNPLACED, slot);
+        String evicted = ring.getAndSet(slot, id);
+        if (evicted != null) {
+            // An id forgotten and added again since lives in a newer slot and stays
+            ids.remove(evicted, slot);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets an id that was added but then not acted on, so it is not taken for a repeat when it comes back.
+     */
+    void forget(String id) {
+        Integer slot = ids.remove(id);
+        if (slot != null && slot != UNPLACED) {
+            ring.compareAndSet(slot, id, null);
+        }
+    }
+
+    boolean contains(String id) {
+        return ids.containsKey(id);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    int capacity() {
+        return ring.length();
+    }
+}
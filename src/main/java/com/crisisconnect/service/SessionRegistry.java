@@ -0,0 +1,82 @@
+package com.crisisconnect.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two-way map between STOMP sessions and users: sessionId → userId, and userId → that user's sessions.
+ * <p>
+ * Every change for a user happens inside {@code sessionsByUser.compute(userId, ...)}, which serializes it
+ * with any other change for the same user, and a user with no sessions has no entry at all. That makes
+ * "does this user still have a session?" a single lookup, and disconnect storms for different users never
+ * contend.
+ */
+class SessionRegistry {
+
+    /**
+     * Result of {@link #unregister}: who owned the session, and whether it was their last one.
+     */
+    record Departure(String userId, boolean lastSession) {
+    }
+
+    private final Map<String, String> userBySession = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    void register(String sessionId, String userId) {
+        String previous = userBySession.get(sessionId);
+        if (previous != null && !previous.equals(userId)) {
+            // The session switched identity (e.g. a shared device)
+            unregister(sessionId);
+        }
+        sessionsByUser.compute(userId, (user, sessions) -> {
+            Set<String> updated = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            updated.add(sessionId);
+            userBySession.put(sessionId, user);
+            return updated;
+        });
+    }
+
+    /**
+     * Removes a session, or returns null if it was never registered (or is already gone).
+     */
+    Departure unregister(String sessionId) {
+        while (true) {
+            String userId = userBySession.get(sessionId);
+            if (userId == null) {
+                return null;
+            }
+            boolean[] outcome = new boolean[2]; // removed, last session
+            sessionsByUser.computeIfPresent(userId, (user, sessions) -> {
+                if (userBySession.remove(sessionId, user)) {
+                    sessions.remove(sessionId);
+                    outcome[0] = true;
+                }
+                outcome[1] = sessions.isEmpty();
+                return sessions.isEmpty() ? null : sessions;
+            });
+            if (outcome[0]) {
+                return new Departure(userId, outcome[1]);
+            }
+            // Re-registered to another user in between; look it up again
+        }
+    }
+
+    /**
+     * Drops every session of a user.
+     */
+    void removeUser(String userId) {
+        sessionsByUser.computeIfPresent(userId, (user, sessions) -> {
+            sessions.forEach(sessionId -> userBySession.remove(sessionId, user));
+            return null;
+        });
+    }
+
+    boolean hasSessions(String userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    int sessionCount() {
+        return userBySession.size();
+    }
+}
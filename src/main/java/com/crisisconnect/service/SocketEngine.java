@@ -0,0 +1,16 @@
+package com.crisisconnect.service;
+
+import java.io.IOException;
+
+/**
+ * Transport behind {@link SocketServerService}: accepts device connections on the socket port and turns
+ * their bytes into protocol callbacks.
+ */
+interface SocketEngine {
+
+    void start(int port, ConnectionHandler handler) throws IOException;
+
+    void stop();
+
+    String name();
+}
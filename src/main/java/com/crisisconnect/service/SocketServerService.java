@@ -1,197 +1,414 @@
 package com.crisisconnect.service;
 
 import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.NetworkNode;
+import com.crisisconnect.protocol.CompactCodec;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
 public class SocketServerService {
 
+    // "RESUME <last sequence seen>" asks for the messages missed while disconnected
+    static final String RESUME_COMMAND = "RESUME";
+    // "REGION <minLat> <minLon> <maxLat> <maxLon>" limits geo-tagged traffic to an area; bare "REGION" clears it
+    static final String REGION_COMMAND = "REGION";
+    // "RELAY <node id> <socket port>" marks the connection as a downstream relay server rather than a device
+    static final String RELAY_COMMAND = RelayService.HELLO_COMMAND;
+    // "BUSY <message id>": the server was too loaded to accept that message, which the device may send again
+    static final String BUSY_REPLY = "BUSY";
+
+    public enum EngineType {
+        // Blocking ServerSocket, one platform thread per device
+        BLOCKING,
+        // Single selector thread with non-blocking channels
+        NIO,
+        // Blocking sockets on virtual threads (Java 21+)
+        VIRTUAL
+    }
+
     @Value("${crisis.socket.port:8888}")
     private int port;
 
+    @Value("${crisis.socket.engine:blocking}")
+    private String engineType;
+
     @Autowired
     private MessageBroadcastService broadcastService;
 
+    // Lazy: the dispatcher fans out through this service as well
+    @Autowired
+    @Lazy
+    private MessageDispatchService dispatchService;
+
+    @Autowired
+    private GeoRoutingService geoRouting;
+
     @Autowired
     private ObjectMapper objectMapper;
 
-    private ServerSocket serverSocket;
-    private ExecutorService executorService;
-    private boolean running = false;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${crisis.socket.outbound.capacity:1024}")
+    private int outboundCapacity;
+
+    @Value("${crisis.socket.outbound.overflow-policy:drop-oldest}")
+    private String overflowPolicy;
+
+    @Value("${crisis.socket.binary.enabled:true}")
+    private boolean binaryEnabled;
+
+    @Value("${crisis.socket.binary.compress-threshold:512}")
+    private int compressThreshold;
+
+    @Value("${crisis.socket.binary.max-senders:65536}")
+    private int maxSenders;
+
+    private SocketEngine engine;
     private final ConcurrentHashMap<String, ClientConnection> activeConnections = new ConcurrentHashMap<>();
+    // Devices without a region get every message; the rest only via the tiles they watch
+    private final Set<ClientConnection> unscopedConnections = ConcurrentHashMap.newKeySet();
+    private final GeoSubscriptionIndex<ClientConnection> regionIndex = new GeoSubscriptionIndex<>();
+    // Downstream relays by client id
+    private final ConcurrentHashMap<String, NetworkNode> relayNodes = new ConcurrentHashMap<>();
+    private OutboundQueue.OverflowPolicy policy;
+    private SocketWire wire;
+    private Timer outboundLag;
+    private Counter droppedFrames;
+    private final EnumMap<ConnectionHandler.SendFailure, Counter> sendFailures =
+            new EnumMap<>(ConnectionHandler.SendFailure.class);
 
     @PostConstruct
     public void init() {
-        executorService = Executors.newCachedThreadPool();
+        wire = new SocketWire(objectMapper, compressThreshold, maxSenders);
+        policy = OutboundQueue.OverflowPolicy.valueOf(
+                overflowPolicy.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        outboundLag = Timer.builder("crisis.socket.outbound.lag")
+                .description("Time a frame waited in a device's outbound queue")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        droppedFrames = Counter.builder("crisis.socket.outbound.dropped")
+                .description("Frames dropped or coalesced because a device fell behind")
+                .tag("policy", policy.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+        Gauge.builder("crisis.socket.connections", activeConnections, Map::size)
+                .description("Connected socket devices")
+                .register(meterRegistry);
+        // Summed over devices rather than one series per device, which would grow with every reconnect
+        Gauge.builder("crisis.socket.outbound.queued", activeConnections,
+                        connections -> connections.values().stream().mapToInt(c -> c.outbound().size()).sum())
+                .description("Frames waiting to be written, across all devices")
+                .tag("policy", policy.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+        Gauge.builder("crisis.socket.outbound.max.lag", activeConnections,
+                        connections -> connections.values().stream()
+                                .mapToLong(c -> c.outbound().lagMillis()).max().orElse(0))
+                .description("Age of the oldest frame queued for the device furthest behind")
+                .baseUnit("milliseconds")
+                .tag("policy", policy.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+        for (ConnectionHandler.SendFailure failure : ConnectionHandler.SendFailure.values()) {
+            sendFailures.put(failure, Counter.builder("crisis.socket.send.failures")
+                    .description("Devices disconnected because frames could not be delivered to them")
+                    .tag("reason", failure.name().toLowerCase(Locale.ROOT).replace('_', '-'))
+                    .register(meterRegistry));
+        }
     }
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
-        running = true;
-        log.info("🚨 CrisisConnect Server started on port {}", port);
-
-        // Accept connections in separate thread
-        executorService.submit(() -> {
-            while (running) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    String clientId = UUID.randomUUID().toString();
-                    log.info("✅ New device connected: {} from {}", clientId, clientSocket.getInetAddress());
-
-                    ClientConnection connection = new ClientConnection(clientId, clientSocket);
-                    activeConnections.put(clientId, connection);
-                    executorService.submit(connection);
-
-                } catch (IOException e) {
-                    if (running) {
-                        log.error("Error accepting connection", e);
-                    }
-                }
-            }
-        });
+        engine = createEngine(EngineType.valueOf(engineType.trim().toUpperCase(Locale.ROOT)));
+        engine.start(port, new ProtocolHandler());
+        log.info("🚨 CrisisConnect Server started on port {} ({} engine)", port, engine.name());
     }
 
     @PreDestroy
     public void stop() throws IOException {
-        running = false;
-        if (serverSocket != null && !serverSocket.isClosed()) {
-            serverSocket.close();
+        if (engine != null) {
+            engine.stop();
         }
 
         // Close all client connections
         activeConnections.values().forEach(ClientConnection::close);
         activeConnections.clear();
 
-        if (executorService != null) {
-            executorService.shutdown();
-        }
         log.info("🛑 CrisisConnect Server stopped");
     }
 
     public void broadcastMessage(Message message) {
-        activeConnections.values().forEach(connection -> connection.sendMessage(message));
+        broadcastMessage(new EncodedMessage(message));
+    }
+
+    public void broadcastMessage(EncodedMessage message) {
+        if (activeConnections.isEmpty()) {
+            return;
+        }
+        try {
+            // Encoded once per framing, the same frame is queued on every connection
+            long tile = geoRouting.tileOf(message.getMessage());
+            if (tile == GeoRoutingService.GLOBAL || regionIndex.subscriberCount() == 0) {
+                activeConnections.values().forEach(connection -> connection.send(message, wire));
+                return;
+            }
+            unscopedConnections.forEach(connection -> connection.send(message, wire));
+            sendToRegion(tile, message);
+        } catch (UncheckedIOException e) {
+            log.error("Error encoding message {}", message.getMessage().getId(), e);
+        }
+    }
+
+    // Tiles are coarser than regions, so the tile's subscribers are checked against their exact box
+    private void sendToRegion(long tile, EncodedMessage encoded) {
+        Message message = encoded.getMessage();
+        int regionConnections = regionIndex.subscriberCount();
+        int delivered = 0;
+        for (ClientConnection connection : regionIndex.subscribers(tile)) {
+            GeoBox region = connection.getRegion();
+            if (region == null || region.contains(message.getLatitude(), message.getLongitude())) {
+                connection.send(encoded, wire);
+                delivered++;
+            }
+        }
+        geoRouting.recordSocketDelivery(delivered, Math.max(0, regionConnections - delivered));
     }
 
     public int getActiveConnectionCount() {
         return activeConnections.size();
     }
 
-    // Inner class to handle individual client connections
-    private class ClientConnection implements Runnable {
-        private final String clientId;
-        private final Socket socket;
-        private PrintWriter out;
-        private BufferedReader in;
-        private String userName;
+    public List<NetworkNode> getRelayNodes() {
+        return new ArrayList<>(relayNodes.values());
+    }
 
-        public ClientConnection(String clientId, Socket socket) {
-            this.clientId = clientId;
-            this.socket = socket;
+    private static SocketEngine createEngine(EngineType type) {
+        return switch (type) {
+            case BLOCKING -> ThreadPerConnectionSocketEngine.platformThreads();
+            case VIRTUAL -> ThreadPerConnectionSocketEngine.virtualThreads();
+            case NIO -> new NioSocketEngine();
+        };
+    }
+
+    private void sendMessage(ClientConnection connection, Message message) {
+        try {
+            connection.send(new EncodedMessage(message), wire);
+        } catch (RuntimeException e) {
+            log.error("Error sending message to client {}", connection.getClientId(), e);
         }
+    }
+
+    private void sendSystemMessage(ClientConnection connection, String content) {
+        Message msg = new Message();
+        msg.setId(UUID.randomUUID().toString());
+        msg.setSenderId("SYSTEM");
+        msg.setSenderName("System");
+        msg.setContent(content);
+        msg.setType(Message.MessageType.SYSTEM);
+        msg.setTimestamp(LocalDateTime.now());
+        msg.setPriority(Message.MessagePriority.NORMAL);
+        sendMessage(connection, msg);
+    }
+
+    // Line-delimited JSON protocol, shared by every engine
+    private class ProtocolHandler implements ConnectionHandler {
 
         @Override
-        public void run() {
-            try {
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
+        public OutboundQueue newOutboundQueue() {
+            return new OutboundQueue(outboundCapacity, policy, outboundLag, droppedFrames);
+        }
 
-                // Send welcome message
-                sendSystemMessage("Connected to CrisisConnect. Please identify yourself.");
+        @Override
+        public void onOpen(ClientConnection connection) {
+            log.info("✅ New device connected: {} from {}", connection.getClientId(), connection.getRemoteAddress());
+            activeConnections.put(connection.getClientId(), connection);
+            unscopedConnections.add(connection);
 
-                String line;
-                while ((line = in.readLine()) != null) {
-                    try {
-                        Message message = objectMapper.readValue(line, Message.class);
-                        message.setTimestamp(LocalDateTime.now());
+            // Send welcome message
+            sendSystemMessage(connection, "Connected to CrisisConnect. Please identify yourself.");
+        }
 
-                        if (userName == null && message.getSenderName() != null) {
-                            userName = message.getSenderName();
-                            log.info("User identified as: {}", userName);
-                        }
+        @Override
+        public void onLine(ClientConnection connection, String line) {
+            if (line.equals(CompactCodec.NEGOTIATE)) {
+                negotiateCompact(connection);
+                return;
+            }
+            if (line.startsWith(RESUME_COMMAND)) {
+                resume(connection, line.substring(RESUME_COMMAND.length()).trim());
+                return;
+            }
+            if (line.startsWith(REGION_COMMAND)) {
+                region(connection, line.substring(REGION_COMMAND.length()).trim());
+                return;
+            }
+            if (line.startsWith(RELAY_COMMAND)) {
+                relay(connection, line.substring(RELAY_COMMAND.length()).trim());
+                return;
+            }
+            try {
+                MessageEvents.Parsed parsed = new MessageEvents.Parsed();
+                parsed.begin();
+                Message message = objectMapper.readValue(line, Message.class);
+                parsed.end();
+                onMessage(connection, message);
+                connection.parsed(parsed, message, false);
+            } catch (Exception e) {
+                log.error("Error processing message", e);
+            }
+        }
 
-                        log.info("📨 Message from {}: {}", userName, message.getContent());
+        @Override
+        public void onMessage(ClientConnection connection, Message message) {
+            message.setTimestamp(LocalDateTime.now());
 
-                        // Broadcast to all connected clients and WebSocket
-                        broadcastService.broadcastMessage(message);
-                        broadcastMessage(message);
+            if (connection.getUserName() == null && message.getSenderName() != null) {
+                connection.setUserName(message.getSenderName());
+                log.info("User identified as: {}", connection.getUserName());
+            }
 
-                    } catch (Exception e) {
-                        log.error("Error processing message", e);
-                    }
-                }
-            } catch (IOException e) {
-                log.error("Connection error for client {}", clientId, e);
-            } finally {
-                cleanup();
+            log.info("📨 Message from {}: {}", connection.getUserName(), message.getContent());
+
+            // Queue for broadcast to all connected clients and WebSocket. Never waits for room: this may be the
+            // NIO selector thread, which every other device depends on
+            MessageDispatchService.Admission admission =
+                    dispatchService.offer(message, MessageDispatchService.Origin.SOCKET);
+            if (admission == MessageDispatchService.Admission.BUSY) {
+                log.warn("Dispatch lanes full, turned away message {} from {}", message.getId(),
+                        connection.getClientId());
+                connection.sendControl(BUSY_REPLY + " " + message.getId(), wire);
+            } else if (relayNodes.containsKey(connection.getClientId())) {
+                // The relay keeps the message in its outbox until this arrives; repeats are acknowledged too
+                connection.sendControl(RelayService.ACK_REPLY + " " + message.getId(), wire);
             }
         }
 
-        public void sendMessage(Message message) {
-            try {
-                if (out != null) {
-                    String json = objectMapper.writeValueAsString(message);
-                    out.println(json);
-                }
-            } catch (Exception e) {
-                log.error("Error sending message to client {}", clientId, e);
+        private void negotiateCompact(ClientConnection connection) {
+            if (!binaryEnabled) {
+                connection.sendControl(CompactCodec.REFUSED, wire);
+                return;
+            }
+            if (!connection.isCompact()) {
+                connection.switchToCompact(wire.control(CompactCodec.ACCEPTED, false));
+                log.info("📦 {} switched to compact binary framing", connection.getClientId());
             }
         }
 
-        private void sendSystemMessage(String content) {
-            Message msg = new Message();
-            msg.setId(UUID.randomUUID().toString());
-            msg.setSenderId("SYSTEM");
-            msg.setSenderName("System");
-            msg.setContent(content);
-            msg.setType(Message.MessageType.SYSTEM);
-            msg.setTimestamp(LocalDateTime.now());
-            msg.setPriority(Message.MessagePriority.NORMAL);
-            sendMessage(msg);
+        // Replies with one MessageDelta line, the same payload as GET /api/messages?since=
+        private void resume(ClientConnection connection, String since) {
+            try {
+                MessageDelta delta = broadcastService.getMessagesSince(Long.parseLong(since));
+                connection.sendControl(objectMapper.writeValueAsString(delta), wire);
+                log.info("🔁 {} resumed after #{}: {}", connection.getClientId(), since,
+                        delta.isGap() ? "gap, full reload" : delta.getMessages().size() + " missed messages");
+            } catch (NumberFormatException e) {
+                log.warn("Bad resume request from {}: {}", connection.getClientId(), since);
+            } catch (IOException e) {
+                log.error("Error encoding resume reply for {}", connection.getClientId(), e);
+            }
         }
 
-        public void close() {
+        private void region(ClientConnection connection, String bounds) {
+            if (bounds.isEmpty()) {
+                // Back to everything; unscoped first so nothing is missed in between
+                unscopedConnections.add(connection);
+                regionIndex.removeSubscriber(connection);
+                connection.setRegion(null);
+                sendSystemMessage(connection, "Region cleared, receiving all messages.");
+                return;
+            }
             try {
-                if (socket != null && !socket.isClosed()) {
-                    socket.close();
+                double[] values = Arrays.stream(bounds.split("\\s+")).mapToDouble(Double::parseDouble).toArray();
+                if (values.length != 4) {
+                    throw new IllegalArgumentException("Expected REGION <minLat> <minLon> <maxLat> <maxLon>");
                 }
-            } catch (IOException e) {
-                log.error("Error closing socket", e);
+                GeoBox region = new GeoBox(values[0], values[1], values[2], values[3]);
+                List<Long> tiles = geoRouting.tilesCovering(region);
+                connection.setRegion(region);
+                regionIndex.replace(connection, tiles);
+                unscopedConnections.remove(connection);
+                log.info("📍 {} now follows region {}", connection.getClientId(), region);
+                sendSystemMessage(connection, "Region set, receiving messages for this area and untagged messages.");
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException included
+                log.warn("Bad region request from {}: {}", connection.getClientId(), bounds);
+                sendSystemMessage(connection, "Region not changed: " + e.getMessage());
+            }
+        }
+
+        private void relay(ClientConnection connection, String hello) {
+            String[] parts = hello.split("\\s+");
+            if (parts[0].isEmpty()) {
+                log.warn("Relay hello without a node id from {}", connection.getClientId());
+                return;
             }
+            int relayPort = 0;
+            if (parts.length > 1) {
+                try {
+                    relayPort = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    log.warn("Bad relay port from {}: {}", connection.getClientId(), parts[1]);
+                }
+            }
+            String address = connection.getRemoteAddress().getHostAddress();
+            relayNodes.put(connection.getClientId(), new NetworkNode(parts[0], address, address, relayPort,
+                    NetworkNode.NodeType.RELAY, LocalDateTime.now(), true));
+            connection.setUserName("relay " + parts[0]);
+            log.info("🔗 Relay node {} connected from {}", parts[0], address);
         }
 
-        private void cleanup() {
-            activeConnections.remove(clientId);
-            close();
-            log.info("❌ Client disconnected: {} ({})", userName, clientId);
+        @Override
+        public void onSendFailure(ClientConnection connection, ConnectionHandler.SendFailure failure) {
+            sendFailures.get(failure).increment();
+        }
+
+        @Override
+        public void onClose(ClientConnection connection) {
+            String userName = connection.getUserName();
+            activeConnections.remove(connection.getClientId());
+            relayNodes.remove(connection.getClientId());
+            unscopedConnections.remove(connection);
+            regionIndex.removeSubscriber(connection);
+            log.info("❌ Client disconnected: {} ({})", userName, connection.getClientId());
 
             // Notify others about disconnection
             Message disconnectMsg = new Message();
             disconnectMsg.setId(UUID.randomUUID().toString());
-            disconnectMsg.setSenderId(clientId);
+            disconnectMsg.setSenderId(connection.getClientId());
             disconnectMsg.setSenderName(userName);
             disconnectMsg.setContent(userName + " has disconnected");
             disconnectMsg.setType(Message.MessageType.SYSTEM);
             disconnectMsg.setTimestamp(LocalDateTime.now());
             disconnectMsg.setPriority(Message.MessagePriority.NORMAL);
 
-            broadcastService.broadcastMessage(disconnectMsg);
+            // Through the dispatcher like every other broadcast, without waiting (this may be the selector thread)
+            if (dispatchService.offer(disconnectMsg, MessageDispatchService.Origin.LOCAL)
+                    == MessageDispatchService.Admission.BUSY) {
+                log.debug("Dispatch lanes full, no disconnect notice for {}", connection.getClientId());
+            }
         }
     }
-}
\ No newline at end of file
+}
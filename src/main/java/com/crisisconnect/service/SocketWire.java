@@ -0,0 +1,61 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.protocol.CompactCodec;
+import com.crisisconnect.protocol.SenderTable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The two framings spoken on the socket port: JSON lines (the default) and {@link CompactCodec} frames for
+ * devices that negotiated them. Sender references come from one server-wide {@link SenderTable}, so a
+ * message's compact frame is the same for every device and, like its JSON line, encoded only once.
+ */
+class SocketWire {
+
+    private final ObjectMapper objectMapper;
+    private final CompactCodec codec;
+    private final SenderTable senders;
+
+    SocketWire(ObjectMapper objectMapper, int compressThreshold, int maxSenders) {
+        this.objectMapper = objectMapper;
+        this.codec = new CompactCodec(compressThreshold);
+        this.senders = new SenderTable(maxSenders);
+    }
+
+    OutboundFrame json(EncodedMessage message) {
+        try {
+            return message.frame(objectMapper);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    EncodedMessage.CompactFrame compact(EncodedMessage message) {
+        return message.compactFrame(this);
+    }
+
+    EncodedMessage.CompactFrame encodeCompact(Message message) {
+        int ref = senders.refFor(message.getSenderId(), message.getSenderName());
+        return new EncodedMessage.CompactFrame(OutboundFrame.of(codec.encodeMessage(message, ref), message), ref);
+    }
+
+    /**
+     * Defines a sender reference for one device, ahead of the first message that uses it.
+     */
+    OutboundFrame sender(int ref) {
+        SenderTable.Sender sender = senders.sender(ref);
+        return OutboundFrame.control(codec.encodeSender(ref, sender.id(), sender.name()));
+    }
+
+    /**
+     * A protocol reply (without line terminator) in either framing.
+     */
+    OutboundFrame control(String text, boolean compact) {
+        byte[] bytes = compact ? codec.encodeText(text) : (text + "\n").getBytes(StandardCharsets.UTF_8);
+        return OutboundFrame.control(bytes);
+    }
+}
@@ -0,0 +1,285 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Uniform latitude/longitude grid over the status board. Each user with coordinates sits in exactly one
+ * cell, so an area query only looks at the cells it overlaps instead of every user.
+ * <p>
+ * Positions are also kept as unit vectors, so distance filtering and ordering compare squared chord
+ * lengths (no trigonometry per candidate); great-circle distance is monotonic in the chord.
+ * <p>
+ * Updates for one user must not race each other (StatusService calls {@link #put}/{@link #remove} from
+ * inside its per-user compute). Queries run concurrently with updates and see a weakly consistent view.
+ * Boxes do not wrap around the antimeridian.
+ */
+class SpatialGridIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0;
+    static final double KM_PER_DEGREE = Math.toRadians(EARTH_RADIUS_KM);
+
+    private final double cellDegrees;
+    private final int rows;
+    private final int cols;
+    private final Map<Long, Map<String, Point>> cells = new ConcurrentHashMap<>();
+    private final Map<String, Long> cellByUser = new ConcurrentHashMap<>();
+
+    SpatialGridIndex(double cellDegrees) {
+        if (!(cellDegrees > 0 && cellDegrees <= 10)) {
+            throw new IllegalArgumentException("Grid cell size must be in (0, 10] degrees: " + cellDegrees);
+        }
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees) + 1;
+        this.cols = (int) Math.ceil(360 / cellDegrees) + 1;
+    }
+
+    /**
+     * Adds or moves the user's entry; an entry without coordinates is dropped from the index.
+     */
+    void put(StatusEntry entry) {
+        String userId = entry.getUserId();
+        if (entry.getLatitude() == null || entry.getLongitude() == null) {
+            remove(userId);
+            return;
+        }
+        Point point = Point.of(entry);
+        long cell = key(row(point.latitude), col(point.longitude));
+        Long previous = cellByUser.put(userId, cell);
+        if (previous != null && previous != cell) {
+            detach(previous, userId);
+        }
+        cells.compute(cell, (key, members) -> {
+            Map<String, Point> updated = members != null ? members : new ConcurrentHashMap<>();
+            updated.put(userId, point);
+            return updated;
+        });
+    }
+
+    void remove(String userId) {
+        Long previous = cellByUser.remove(userId);
+        if (previous != null) {
+            detach(previous, userId);
+        }
+    }
+
+    int size() {
+        return cellByUser.size();
+    }
+
+    /**
+     * Entries within {@code radiusKm} of the point, nearest first.
+     */
+    List<StatusEntry> withinRadius(double latitude, double longitude, double radiusKm, Predicate<StatusEntry> filter) {
+        double dLat = radiusKm / KM_PER_DEGREE;
+        double dLon = dLat / Math.max(Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude) + dLat))), 1e-3);
+
+        Point origin = Point.of(latitude, longitude);
+        double maxChord = chordSquared(radiusKm);
+        List<Match> matches = new ArrayList<>();
+        visitBox(latitude - dLat, longitude - dLon, latitude + dLat, longitude + dLon, (cell, members) -> {
+            for (Point point : members.values()) {
+                double chord = origin.chordSquared(point);
+                if (chord <= maxChord && filter.test(point.entry)) {
+                    matches.add(new Match(point.entry, chord));
+                }
+            }
+        });
+        matches.sort(Comparator.comparingDouble(Match::chordSquared));
+        return matches.stream().map(Match::entry).toList();
+    }
+
+    List<StatusEntry> withinBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+            Predicate<StatusEntry> filter) {
+        List<StatusEntry> result = new ArrayList<>();
+        visitBox(minLatitude, minLongitude, maxLatitude, maxLongitude, (cell, members) -> {
+            for (Point point : members.values()) {
+                if (point.latitude >= minLatitude && point.latitude <= maxLatitude
+                        && point.longitude >= minLongitude && point.longitude <= maxLongitude
+                        && filter.test(point.entry)) {
+                    result.add(point.entry);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The {@code k} entries closest to the point, nearest first. Searches outward ring by ring and stops
+     * once no unvisited cell can hold anything closer than the current k-th match.
+     */
+    List<StatusEntry> nearest(double latitude, double longitude, int k, Predicate<StatusEntry> filter) {
+        Point origin = Point.of(latitude, longitude);
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingDouble(Match::chordSquared).reversed());
+        BiConsumer<Long, Map<String, Point>> collect = (cell, members) -> {
+            for (Point point : members.values()) {
+                double chord = origin.chordSquared(point);
+                if (best.size() == k && chord >= best.peek().chordSquared()) {
+                    continue;
+                }
+                if (!filter.test(point.entry)) {
+                    continue;
+                }
+                if (best.size() == k) {
+                    best.poll();
+                }
+                best.add(new Match(point.entry, chord));
+            }
+        };
+
+        int centerRow = row(latitude);
+        int centerCol = col(longitude);
+        int maxRing = Math.max(rows, cols);
+        long visited = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best.size() == k && chordSquared(ringLowerBoundKm(ring, latitude)) > best.peek().chordSquared()) {
+                break;
+            }
+            long ringCells = ring == 0 ? 1 : 8L * ring;
+            if (visited + ringCells > cells.size()) {
+                // Sparse grid: walking rings costs more than looking at every occupied cell once
+                best.clear();
+                cells.forEach(collect);
+                break;
+            }
+            visitRing(centerRow, centerCol, ring, collect);
+            visited += ringCells;
+        }
+
+        List<Match> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(Match::chordSquared));
+        return sorted.stream().map(Match::entry).toList();
+    }
+
+    static double distanceKm(double latitude, double longitude, StatusEntry entry) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(entry.getLatitude());
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(entry.getLongitude() - longitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Squared straight-line distance through the unit sphere for a great-circle distance
+    private static double chordSquared(double distanceKm) {
+        double chord = 2 * Math.sin(Math.min(Math.PI, distanceKm / EARTH_RADIUS_KM) / 2);
+        return chord * chord;
+    }
+
+    private void visitBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+            BiConsumer<Long, Map<String, Point>> visitor) {
+        int r0 = row(minLatitude);
+        int r1 = row(maxLatitude);
+        int c0 = col(minLongitude);
+        int c1 = col(maxLongitude);
+        long boxCells = (long) (r1 - r0 + 1) * (c1 - c0 + 1);
+
+        if (boxCells > cells.size()) {
+            // Fewer occupied cells than cells in the box: filter the occupied ones instead
+            cells.forEach((cell, members) -> {
+                int r = (int) (cell / cols);
+                int c = (int) (cell % cols);
+                if (r >= r0 && r <= r1 && c >= c0 && c <= c1) {
+                    visitor.accept(cell, members);
+                }
+            });
+            return;
+        }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                visitCell(key(r, c), visitor);
+            }
+        }
+    }
+
+    private void visitRing(int centerRow, int centerCol, int ring, BiConsumer<Long, Map<String, Point>> visitor) {
+        if (ring == 0) {
+            visitCell(key(centerRow, centerCol), visitor);
+            return;
+        }
+        for (int c = centerCol - ring; c <= centerCol + ring; c++) {
+            visitCellAt(centerRow - ring, c, visitor);
+            visitCellAt(centerRow + ring, c, visitor);
+        }
+        for (int r = centerRow - ring + 1; r <= centerRow + ring - 1; r++) {
+            visitCellAt(r, centerCol - ring, visitor);
+            visitCellAt(r, centerCol + ring, visitor);
+        }
+    }
+
+    private void visitCellAt(int r, int c, BiConsumer<Long, Map<String, Point>> visitor) {
+        if (r >= 0 && r < rows && c >= 0 && c < cols) {
+            visitCell(key(r, c), visitor);
+        }
+    }
+
+    private void visitCell(long cell, BiConsumer<Long, Map<String, Point>> visitor) {
+        Map<String, Point> members = cells.get(cell);
+        if (members != null) {
+            visitor.accept(cell, members);
+        }
+    }
+
+    // Anything in ring r is at least r - 1 whole cells away in latitude or longitude
+    private double ringLowerBoundKm(int ring, double latitude) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double widestLatitude = Math.min(89.9, Math.abs(latitude) + ring * cellDegrees);
+        double cellKm = cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(widestLatitude));
+        return (ring - 1) * cellKm;
+    }
+
+    private void detach(long cell, String userId) {
+        cells.computeIfPresent(cell, (key, members) -> {
+            members.remove(userId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((Math.max(-90, Math.min(90, latitude)) + 90) / cellDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor((Math.max(-180, Math.min(180, longitude)) + 180) / cellDegrees);
+    }
+
+    private long key(int row, int col) {
+        return (long) row * cols + col;
+    }
+
+    private record Match(StatusEntry entry, double chordSquared) {
+    }
+
+    private record Point(StatusEntry entry, double latitude, double longitude, double x, double y, double z) {
+
+        static Point of(StatusEntry entry) {
+            Point point = of(entry.getLatitude(), entry.getLongitude());
+            return new Point(entry, point.latitude, point.longitude, point.x, point.y, point.z);
+        }
+
+        static Point of(double latitude, double longitude) {
+            double lat = Math.toRadians(latitude);
+            double lon = Math.toRadians(longitude);
+            double cosLat = Math.cos(lat);
+            return new Point(null, latitude, longitude, cosLat * Math.cos(lon), cosLat * Math.sin(lon), Math.sin(lat));
+        }
+
+        double chordSquared(Point other) {
+            double dx = x - other.x;
+            double dy = y - other.y;
+            double dz = z - other.z;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Coalesces status traffic. Routine updates (battery and location heartbeats) only keep the latest entry per
+ * user and go out together as one {@code /topic/status/batch} frame (a JSON array) per window; urgent ones
+ * are published right away. With single frames turned on, {@code /topic/status} also carries one entry
+ * object per frame for subscribers that predate batching.
+ * <p>
+ * All publishing happens under {@code publishLock}, and an entry is only published while it is still the
+ * user's entry on the board. So an older entry can never reach clients after a newer one (or after the user
+ * was removed), whichever of the two was submitted first.
+ */
+@Slf4j
+class StatusConflator {
+
+    static final String STATUS_DESTINATION = "/topic/status";
+    static final String BATCH_DESTINATION = "/topic/status/batch";
+    static final String REMOVED_DESTINATION = "/topic/status/removed";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long windowNanos;
+    private final boolean singleFrames;
+    // The user's entry on the board now, or null once removed
+    private final Function<String, StatusEntry> current;
+    private final Map<String, StatusEntry> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    private final Counter updates;
+    private final Counter windowFrames;
+    private final Counter urgentFrames;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    StatusConflator(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry, long windowMs,
+            boolean singleFrames, Function<String, StatusEntry> current) {
+        this.messagingTemplate = messagingTemplate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.singleFrames = singleFrames;
+        this.current = current;
+        this.updates = Counter.builder("crisis.status.updates")
+                .description("Status changes submitted for broadcast")
+                .register(meterRegistry);
+        this.windowFrames = frames(meterRegistry, "window");
+        this.urgentFrames = frames(meterRegistry, "urgent");
+    }
+
+    private static Counter frames(MeterRegistry meterRegistry, String trigger) {
+        return Counter.builder("crisis.status.frames")
+                .description("Frames published to /topic/status/batch")
+                .tag("trigger", trigger)
+                .register(meterRegistry);
+    }
+
+    void start() {
+        if (windowNanos <= 0) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "crisis-status-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    void submit(StatusEntry entry, boolean urgent) {
+        updates.increment();
+        if (!urgent && windowNanos > 0) {
+            pending.put(entry.getUserId(), entry);
+            return;
+        }
+        publishLock.lock();
+        try {
+            // Whatever was waiting for this user is older than the entry we're sending now
+            pending.remove(entry.getUserId());
+            // Superseded before we got here: the newer entry is published on its own
+            if (isCurrent(entry)) {
+                publish(List.of(entry));
+                urgentFrames.increment();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    void removed(String userId) {
+        publishLock.lock();
+        try {
+            pending.remove(userId);
+            messagingTemplate.convertAndSend(REMOVED_DESTINATION, userId);
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        publishLock.lock();
+        try {
+            List<StatusEntry> batch = new ArrayList<>(pending.size());
+            for (Map.Entry<String, StatusEntry> entry : pending.entrySet()) {
+                // A newer entry put meanwhile stays for the next window; one already replaced on the board
+                // (by an urgent update that raced ahead of this put) is dropped
+                if (pending.remove(entry.getKey(), entry.getValue()) && isCurrent(entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            if (!batch.isEmpty()) {
+                publish(batch);
+                windowFrames.increment();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private boolean isCurrent(StatusEntry entry) {
+        return current.apply(entry.getUserId()) == entry;
+    }
+
+    private void publish(List<StatusEntry> entries) {
+        messagingTemplate.convertAndSend(BATCH_DESTINATION, entries);
+        if (singleFrames) {
+            for (StatusEntry entry : entries) {
+                messagingTemplate.convertAndSend(STATUS_DESTINATION, entry);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(this, windowNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Failed to publish status batch", e);
+            }
+        }
+    }
+
+    void stop() {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -1,94 +1,416 @@
 package com.crisisconnect.service;
 
+import com.crisisconnect.exception.InvalidQueryException;
 import com.crisisconnect.model.StatusEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 @Service
 @Slf4j
 public class StatusService {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    // Entering one of these is published at once; other updates wait for the conflation window
+    private static final Set<String> URGENT_STATUSES = Set.of("CRITICAL", "NEED_HELP", "OFFLINE");
+    // Counted one by one on the board; anything else a client sends is counted as "other"
+    private static final List<String> KNOWN_STATUSES = List.of("SAFE", "INJURED", "NEED_HELP", "CRITICAL", "OFFLINE");
+
+    /**
+     * How a status update reached this server.
+     */
+    public enum UpdateSource {
+        REST, STOMP
+    }
+
+    /**
+     * Told about every status change made on this node (not the ones merged from cluster peers).
+     */
+    interface ChangeListener {
+        void updated(StatusEntry entry);
+
+        void removed(String userId, LocalDateTime at);
+    }
+
+    private final StatusConflator publisher;
+    private final Map<UpdateSource, Counter> updates = new EnumMap<>(UpdateSource.class);
     private final Map<String, StatusEntry> statusBoard = new ConcurrentHashMap<>();
-    private final Map<String, String> sessionToUserMap = new ConcurrentHashMap<>();
+    // The board's user ids in order, for paging through it; changed under the board's per-key lock
+    private final ConcurrentSkipListSet<String> userIds = new ConcurrentSkipListSet<>();
+    private final SessionRegistry sessions = new SessionRegistry();
+
+    // Kept in step with statusBoard under its per-key lock, so /api/stats and the metrics never scan the board.
+    // Entries on the board are only mutated from within those computes.
+    private final LongAdder userCount = new LongAdder();
+    private final Map<String, LongAdder> statusCounts = new LinkedHashMap<>();
+    private final LongAdder otherStatusCount = new LongAdder();
+    // Bumped after every change to the board is visible, so a reader that sees a version also sees the change
+    private final AtomicLong version = new AtomicLong();
+
+    // Users with coordinates, by grid cell; maintained alongside the board
+    private final SpatialGridIndex geoIndex;
+
+    private volatile ChangeListener changeListener;
+    // When each user was removed, kept while replicating so an older update from a peer can't bring them back
+    private final Map<String, LocalDateTime> removals = new ConcurrentHashMap<>();
+
+    public StatusService(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry,
+            @Value("${crisis.geo.cell-size-degrees:0.01}") double geoCellDegrees,
+            @Value("${crisis.status.conflation-window-ms:250}") long conflationWindowMs,
+            @Value("${crisis.status.single-frames:false}") boolean singleFrames) {
+        this.publisher = new StatusConflator(messagingTemplate, meterRegistry, conflationWindowMs, singleFrames,
+                statusBoard::get);
+        this.geoIndex = new SpatialGridIndex(geoCellDegrees);
+        for (String status : KNOWN_STATUSES) {
+            statusCounts.put(status, new LongAdder());
+        }
+        statusCounts.forEach((status, count) -> boardGauge(meterRegistry, status.toLowerCase(Locale.ROOT), count));
+        boardGauge(meterRegistry, "other", otherStatusCount);
+        for (UpdateSource source : UpdateSource.values()) {
+            updates.put(source, Counter.builder("crisis.ingest.status")
+                    .description("Status updates received from clients")
+                    .tag("source", source.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    private static void boardGauge(MeterRegistry meterRegistry, String status, LongAdder count) {
+        Gauge.builder("crisis.status.users", count, LongAdder::sum)
+                .description("Users on the status board")
+                .tag("status", status)
+                .register(meterRegistry);
+    }
 
-    public StatusService(SimpMessagingTemplate messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    @PostConstruct
+    public void start() {
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.stop();
+    }
+
+    void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
     }
 
     public void updateStatus(StatusEntry entry) {
+        updateStatus(entry, UpdateSource.REST);
+    }
+
+    public void updateStatus(StatusEntry entry, UpdateSource source) {
+        updates.get(source).increment();
         entry.setTimestamp(LocalDateTime.now());
-        statusBoard.put(entry.getUserId(), entry);
+        String[] previousStatus = new String[1];
+        statusBoard.compute(entry.getUserId(), (userId, previous) -> {
+            previousStatus[0] = previous != null ? previous.getStatus() : null;
+            removals.remove(userId);
+            count(previous, -1);
+            count(entry, 1);
+            geoIndex.put(entry);
+            userIds.add(userId);
+            return entry;
+        });
+        version.incrementAndGet();
 
         // Broadcast status update
-        messagingTemplate.convertAndSend("/topic/status", entry);
+        publisher.submit(entry, isUrgent(entry, previousStatus[0]));
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.updated(entry);
+        }
 
         log.info("📊 Status updated for {}: {}", entry.getUserName(), entry.getStatus());
     }
 
+    /**
+     * Applies an entry from a cluster peer if it is newer than what this node has (last writer wins by
+     * timestamp). The entry keeps its original timestamp and is not reported to the change listener.
+     *
+     * @return whether the board changed
+     */
+    boolean mergeRemote(StatusEntry entry) {
+        if (entry.getUserId() == null || entry.getTimestamp() == null) {
+            return false;
+        }
+        boolean[] applied = new boolean[1];
+        String[] previousStatus = new String[1];
+        statusBoard.compute(entry.getUserId(), (userId, current) -> {
+            LocalDateTime removedAt = removals.get(userId);
+            boolean stale = current != null
+                    ? !supersedes(entry, current)
+                    : removedAt != null && !entry.getTimestamp().isAfter(removedAt);
+            if (stale) {
+                return current;
+            }
+            removals.remove(userId);
+            previousStatus[0] = current != null ? current.getStatus() : null;
+            count(current, -1);
+            count(entry, 1);
+            geoIndex.put(entry);
+            userIds.add(userId);
+            applied[0] = true;
+            return entry;
+        });
+        if (applied[0]) {
+            version.incrementAndGet();
+            publisher.submit(entry, isUrgent(entry, previousStatus[0]));
+        }
+        return applied[0];
+    }
+
+    /**
+     * Applies a removal from a cluster peer unless the user has been updated since.
+     *
+     * @return whether the board changed
+     */
+    boolean mergeRemoval(String userId, LocalDateTime at) {
+        removals.merge(userId, at, (a, b) -> a.isAfter(b) ? a : b);
+        boolean[] removed = new boolean[1];
+        statusBoard.computeIfPresent(userId, (id, current) -> {
+            if (current.getTimestamp() != null && current.getTimestamp().isAfter(at)) {
+                return current;
+            }
+            count(current, -1);
+            geoIndex.remove(id);
+            userIds.remove(id);
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+            publisher.removed(userId);
+        }
+        return removed[0];
+    }
+
+    Map<String, LocalDateTime> getRemovals() {
+        return new HashMap<>(removals);
+    }
+
+    void pruneRemovals(LocalDateTime before) {
+        removals.values().removeIf(at -> at.isBefore(before));
+    }
+
+    // Last writer wins; equal timestamps are settled by the status itself so every node picks the same entry
+    static boolean supersedes(StatusEntry candidate, StatusEntry current) {
+        if (current.getTimestamp() == null) {
+            return true;
+        }
+        int byTime = candidate.getTimestamp().compareTo(current.getTimestamp());
+        if (byTime != 0) {
+            return byTime > 0;
+        }
+        return Objects.compare(candidate.getStatus(), current.getStatus(),
+                Comparator.nullsFirst(Comparator.naturalOrder())) > 0;
+    }
+
+    private static boolean isUrgent(StatusEntry entry, String previousStatus) {
+        return URGENT_STATUSES.contains(entry.getStatus()) && !entry.getStatus().equals(previousStatus);
+    }
+
     public void registerSession(String sessionId, String userId) {
-        sessionToUserMap.put(sessionId, userId);
+        sessions.register(sessionId, userId);
     }
 
     public List<StatusEntry> getAllStatuses() {
         return new ArrayList<>(statusBoard.values());
     }
 
+    /**
+     * Board entries with a user id after {@code after} (all of them for {@code null}), ordered by user id, at
+     * most {@code limit}. Entries are looked up as the iterator advances rather than copied up front, so
+     * writing them out never holds the whole board; users added or removed meanwhile may or may not appear.
+     */
+    public Iterator<StatusEntry> streamStatuses(String after, long limit) {
+        Iterator<String> ids = (after != null ? userIds.tailSet(after, false) : userIds).iterator();
+        return new Iterator<>() {
+            private long remaining = limit;
+            private StatusEntry next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && remaining > 0 && ids.hasNext()) {
+                    next = statusBoard.get(ids.next());
+                }
+                return next != null;
+            }
+
+            @Override
+            public StatusEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                StatusEntry entry = next;
+                next = null;
+                remaining--;
+                return entry;
+            }
+        };
+    }
+
     public StatusEntry getStatus(String userId) {
         return statusBoard.get(userId);
     }
 
     public void removeStatus(@NonNull String userId) {
-        StatusEntry removed = statusBoard.remove(userId);
-        if (removed != null) {
-            messagingTemplate.convertAndSend("/topic/status/removed", userId);
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            LocalDateTime now = LocalDateTime.now();
+            removals.put(userId, now);
+            listener.removed(userId, now);
+        }
+        boolean[] removed = new boolean[1];
+        statusBoard.computeIfPresent(userId, (id, current) -> {
+            count(current, -1);
+            geoIndex.remove(id);
+            userIds.remove(id);
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+            publisher.removed(userId);
             log.info("Status removed for user: {}", userId);
         }
         // Remove ALL sessions associated with this user
-        sessionToUserMap.values().removeIf(id -> id.equals(userId));
+        sessions.removeUser(userId);
     }
 
     public void handleDisconnect(String sessionId) {
-        String userId = sessionToUserMap.remove(sessionId);
-        if (userId != null) {
-            // Only mark as OFFLINE if no other sessions exist for this user
-            boolean hasOtherSessions = sessionToUserMap.containsValue(userId);
-
-            if (!hasOtherSessions) {
-                StatusEntry entry = statusBoard.get(userId);
-                if (entry != null) {
-                    entry.setStatus("OFFLINE");
-                    entry.setTimestamp(LocalDateTime.now());
-                    statusBoard.put(userId, entry);
-
-                    // Broadcast OFFLINE status
-                    messagingTemplate.convertAndSend("/topic/status", entry);
-                    log.info("🔌 User Disconnected: {} (Marked OFFLINE)", userId);
-                }
-            } else {
-                log.debug("User {} disconnected session {}, but remains active on other sessions", userId, sessionId);
+        SessionRegistry.Departure departure = sessions.unregister(sessionId);
+        if (departure == null) {
+            return;
+        }
+        String userId = departure.userId();
+
+        // Only mark as OFFLINE if no other sessions exist for this user
+        if (!departure.lastSession()) {
+            log.debug("User {} disconnected session {}, but remains active on other sessions", userId, sessionId);
+            return;
+        }
+
+        StatusEntry entry = statusBoard.computeIfPresent(userId, (id, current) -> {
+            // The user may have reconnected while we got here
+            if (sessions.hasSessions(id)) {
+                return current;
             }
+            count(current, -1);
+            current.setStatus("OFFLINE");
+            current.setTimestamp(LocalDateTime.now());
+            count(current, 1);
+            return current;
+        });
+        if (entry != null && "OFFLINE".equals(entry.getStatus())) {
+            version.incrementAndGet();
+            // Broadcast OFFLINE status
+            publisher.submit(entry, true);
+            ChangeListener listener = changeListener;
+            if (listener != null) {
+                listener.updated(entry);
+            }
+            log.info("🔌 User Disconnected: {} (Marked OFFLINE)", userId);
         }
     }
 
+    public int getSessionCount() {
+        return sessions.sessionCount();
+    }
+
+    /**
+     * Changes whenever the board does; read it before reading the board.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getUserCount() {
+        return userCount.sum();
+    }
+
     public long getActiveUserCount() {
-        return statusBoard.values().stream()
-                .filter(entry -> !entry.getStatus().equals("OFFLINE"))
-                .count();
+        return userCount.sum() - statusCounts.get("OFFLINE").sum();
     }
 
     public long getCriticalUserCount() {
-        return statusBoard.values().stream()
-                .filter(entry -> entry.getStatus().equals("CRITICAL") ||
-                        entry.getStatus().equals("NEED_HELP"))
-                .count();
+        return statusCounts.get("CRITICAL").sum() + statusCounts.get("NEED_HELP").sum();
+    }
+
+    /**
+     * Users within {@code radiusKm} of a point, nearest first, optionally limited to some statuses.
+     */
+    public List<StatusEntry> findWithinRadius(double latitude, double longitude, double radiusKm,
+            Set<String> statuses) {
+        checkPoint(latitude, longitude);
+        if (!(radiusKm > 0)) {
+            throw new InvalidQueryException("Radius must be positive: " + radiusKm);
+        }
+        return geoIndex.withinRadius(latitude, longitude, radiusKm, statusFilter(statuses));
+    }
+
+    public List<StatusEntry> findInArea(double minLatitude, double minLongitude, double maxLatitude,
+            double maxLongitude, Set<String> statuses) {
+        checkPoint(minLatitude, minLongitude);
+        checkPoint(maxLatitude, maxLongitude);
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude) {
+            throw new InvalidQueryException("Area minimum must not exceed its maximum");
+        }
+        return geoIndex.withinBox(minLatitude, minLongitude, maxLatitude, maxLongitude, statusFilter(statuses));
+    }
+
+    public List<StatusEntry> findNearest(double latitude, double longitude, int k, Set<String> statuses) {
+        checkPoint(latitude, longitude);
+        if (k <= 0) {
+            throw new InvalidQueryException("k must be positive: " + k);
+        }
+        return geoIndex.nearest(latitude, longitude, k, statusFilter(statuses));
+    }
+
+    private static Predicate<StatusEntry> statusFilter(Set<String> statuses) {
+        if (statuses == null || statuses.isEmpty()) {
+            return entry -> true;
+        }
+        return entry -> statuses.contains(entry.getStatus());
+    }
+
+    private static void checkPoint(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new InvalidQueryException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+    }
+
+    private void count(StatusEntry entry, int delta) {
+        if (entry == null) {
+            return;
+        }
+        userCount.add(delta);
+        LongAdder byStatus = entry.getStatus() != null ? statusCounts.get(entry.getStatus()) : null;
+        (byStatus != null ? byStatus : otherStatusCount).add(delta);
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.crisisconnect.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Blocking {@link ServerSocket} engine that gives each connection its own reader and writer thread. With a
+ * cached pool these are platform threads, two per device (a blocked read can't also drain the outbound
+ * queue, and a shared writer would let one slow device stall the rest); use the NIO engine, or a
+ * virtual-thread executor (Java 21+), for thousands of devices.
+ */
+@Slf4j
+class ThreadPerConnectionSocketEngine implements SocketEngine {
+
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final int WRITE_BUFFER_BYTES = 8192;
+
+    private final String name;
+    private final Supplier<ExecutorService> executorFactory;
+
+    private ServerSocket serverSocket;
+    private ExecutorService executorService;
+    private volatile boolean running;
+
+    private ThreadPerConnectionSocketEngine(String name, Supplier<ExecutorService> executorFactory) {
+        this.name = name;
+        this.executorFactory = executorFactory;
+    }
+
+    static ThreadPerConnectionSocketEngine platformThreads() {
+        return new ThreadPerConnectionSocketEngine("blocking", Executors::newCachedThreadPool);
+    }
+
+    static ThreadPerConnectionSocketEngine virtualThreads() {
+        // Resolved reflectively so the project still compiles for Java 17
+        return new ThreadPerConnectionSocketEngine("virtual", () -> {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("crisis.socket.engine=virtual requires Java 21 or newer", e);
+            }
+        });
+    }
+
+    @Override
+    public void start(int port, ConnectionHandler handler) throws IOException {
+        executorService = executorFactory.get();
+        serverSocket = new ServerSocket(port);
+        running = true;
+
+        // Accept connections in separate thread
+        executorService.submit(() -> {
+            while (running) {
+                try {
+                    Socket clientSocket = serverSocket.accept();
+                    StreamConnection connection = new StreamConnection(clientSocket, handler);
+                    executorService.submit(connection::readLoop);
+                    executorService.submit(connection::writeLoop);
+                } catch (IOException e) {
+                    if (running) {
+                        log.error("Error accepting connection", e);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.error("Error closing server socket", e);
+        }
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    private static class StreamConnection extends ClientConnection {
+        private final Socket socket;
+        private final OutputStream out;
+
+        StreamConnection(Socket socket, ConnectionHandler handler) throws IOException {
+            super(UUID.randomUUID().toString(), socket.getInetAddress(), handler);
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_BYTES);
+        }
+
+        void readLoop() {
+            try (InputStream in = socket.getInputStream()) {
+                opened();
+                byte[] buffer = new byte[READ_BUFFER_BYTES];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    received(ByteBuffer.wrap(buffer, 0, read));
+                }
+            } catch (IOException e) {
+                if (isOpen()) {
+                    log.error("Connection error for client {}", getClientId(), e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        // Only this thread touches the socket output, so a slow device stalls nobody else
+        void writeLoop() {
+            try {
+                OutboundFrame frame;
+                while ((frame = outbound().take()) != null) {
+                    MessageEvents.Written written = new MessageEvents.Written();
+                    written.begin();
+                    out.write(frame.bytes());
+                    if (outbound().isEmpty()) {
+                        out.flush();
+                    }
+                    written(written, frame);
+                }
+            } catch (IOException e) {
+                writeFailed(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        protected void framesQueued() {
+            // The writer thread is already waiting on the queue
+        }
+
+        @Override
+        protected void closeTransport() {
+            try {
+                if (!socket.isClosed()) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                log.error("Error closing socket", e);
+            }
+        }
+    }
+}
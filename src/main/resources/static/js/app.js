@@ -7,6 +7,9 @@ const app = {
     isReconnecting: false,
     reconnectTimeout: null,
     messageQueue: JSON.parse(localStorage.getItem('crisis_message_queue') || '[]'),
+    // Highest message sequence received; on reconnect only newer messages are fetched
+    lastSequence: null,
+    seenSequences: new Set(),
 
     init() {
         // Try to recover identity from storage
@@ -267,12 +270,13 @@ const app = {
                     this.clearDOMMessages();
                     this.showToast('Chat history cleared', 'info');
                 } else {
-                    this.displayMessage(msg);
+                    this.receiveMessage(msg);
                 }
             });
 
-            this.stompClient.subscribe('/topic/status', (status) => {
-                this.updateStatusBoard(JSON.parse(status.body));
+            // Status updates arrive batched: one frame holds the latest entry of every user that changed
+            this.stompClient.subscribe('/topic/status/batch', (frame) => {
+                JSON.parse(frame.body).forEach(entry => this.updateStatusBoard(entry));
             });
 
             this.stompClient.subscribe('/topic/status/removed', (id) => {
@@ -614,16 +618,18 @@ const app = {
 
     loadHistory() {
         const baseUrl = '';
-        fetch(`${baseUrl}/api/messages`).then(r => r.json()).then(msgs => {
-            // Remove empty state if messages exist
-            if (msgs.length > 0) {
-                this.dom.messagesContainer.innerHTML = '';
-                msgs.forEach(m => this.displayMessage(m));
-            } else {
-                // If 0 messages, keep empty state (or restore it) - implementation simplified
-                // this.dom.messagesContainer.innerHTML = '...empty state html...';
-            }
-        }).catch(e => console.error('Error loading history:', e));
+        if (this.lastSequence !== null) {
+            // Reconnected: fetch only what we missed, or reload if the server can't fill the gap
+            fetch(`${baseUrl}/api/messages?since=${this.lastSequence}`).then(r => r.json()).then(delta => {
+                if (delta.gap) {
+                    this.reloadMessages();
+                } else {
+                    delta.messages.forEach(m => this.receiveMessage(m));
+                }
+            }).catch(e => console.error('Error syncing history:', e));
+        } else {
+            this.reloadMessages();
+        }
 
         fetch(`${baseUrl}/api/status`).then(r => r.json()).then(statuses => {
             statuses.forEach(s => {
@@ -731,6 +737,36 @@ const app = {
         });
     },
 
+    reloadMessages() {
+        fetch('/api/messages').then(r => r.json()).then(msgs => {
+            // Remove empty state if messages exist
+            if (msgs.length > 0) {
+                this.dom.messagesContainer.innerHTML = '';
+                this.seenSequences.clear();
+                msgs.forEach(m => this.receiveMessage(m));
+            } else {
+                // If 0 messages, keep empty state (or restore it) - implementation simplified
+                // this.dom.messagesContainer.innerHTML = '...empty state html...';
+            }
+        }).catch(e => console.error('Error loading history:', e));
+    },
+
+    // Live and synced messages can overlap right after a reconnect; show each sequence once
+    receiveMessage(msg) {
+        if (msg.sequence != null) {
+            if (this.seenSequences.has(msg.sequence)) return;
+            this.seenSequences.add(msg.sequence);
+            if (this.seenSequences.size > 5000) {
+                // Oldest first (insertion order); only recent sequences can repeat
+                this.seenSequences.delete(this.seenSequences.values().next().value);
+            }
+            if (this.lastSequence === null || msg.sequence > this.lastSequence) {
+                this.lastSequence = msg.sequence;
+            }
+        }
+        this.displayMessage(msg);
+    },
+
     clearDOMMessages() {
         this.dom.messagesContainer.innerHTML = '';
         this.dom.messagesContainer.innerHTML = `
@@ -0,0 +1,45 @@
+package com.crisisconnect.client;
+
+import com.crisisconnect.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LoadProfileTest {
+
+    @Test
+    public void testParsesOptionsAndPriorityMix() {
+        LoadProfile profile = LoadProfile.parse(new String[] {
+                "--socket-devices=2000", "--stomp-devices=0", "--rate=250.5", "--duration=120", "--mix=critical:1",
+                "--socket-wire=binary" });
+
+        assertThat(profile.socketDevices()).isEqualTo(2000);
+        assertThat(profile.totalDevices()).isEqualTo(2000);
+        assertThat(profile.messagesPerSecond()).isEqualTo(250.5);
+        assertThat(profile.duration()).isEqualTo(Duration.ofMinutes(2));
+        assertThat(profile.socketPort()).isEqualTo(8888);
+        assertThat(profile.binarySocket()).isTrue();
+        assertThat(profile.nextPriority()).isEqualTo(Message.MessagePriority.CRITICAL);
+
+        assertThatThrownBy(() -> LoadProfile.parse(new String[] { "--devices=10" }))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LoadProfile.parseMix("urgent:5"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LoadProfile.parseWire("protobuf"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSendStampSurvivesTheRoundTrip() {
+        LatencyTracker tracker = new LatencyTracker();
+        long before = System.nanoTime();
+        String content = tracker.stamp("Need water at block C");
+
+        assertThat(content).endsWith("Need water at block C");
+        assertThat(LatencyTracker.sentNanos(content)).isBetween(before, System.nanoTime());
+        assertThat(LatencyTracker.sentNanos("Need water at block C")).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.crisisconnect.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopicSubscriptionRegistryTest {
+
+    private TopicSubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new TopicSubscriptionRegistry();
+    }
+
+    @Test
+    void testExactDestinationsOnlyReachTheirSubscribers() {
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/messages"));
+        registry.registerSubscription(subscribe("s1", "sub-1", "/topic/status"));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/messages"));
+        registry.registerSubscription(subscribe("s3", "sub-0", "/topic/area/10_20"));
+
+        MultiValueMap<String, String> messages = registry.findSubscriptions(send("/topic/messages"));
+        assertThat(messages).containsOnlyKeys("s1", "s2");
+        assertThat(messages.get("s1")).containsExactly("sub-0");
+
+        assertThat(registry.findSubscriptions(send("/topic/status"))).containsOnlyKeys("s1");
+        assertThat(registry.findSubscriptions(send("/topic/area/10_20"))).containsOnlyKeys("s3");
+        assertThat(registry.findSubscriptions(send("/topic/area/10_21"))).isEmpty();
+    }
+
+    @Test
+    void testUnsubscribeAndDisconnectUpdateRecipients() {
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/messages"));
+        registry.registerSubscription(subscribe("s1", "sub-1", "/topic/status"));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/messages"));
+        assertThat(registry.findSubscriptions(send("/topic/messages"))).containsOnlyKeys("s1", "s2");
+
+        registry.unregisterSubscription(unsubscribe("s2", "sub-0"));
+        assertThat(registry.findSubscriptions(send("/topic/messages"))).containsOnlyKeys("s1");
+
+        registry.unregisterAllSubscriptions("s1");
+        assertThat(registry.findSubscriptions(send("/topic/messages"))).isEmpty();
+        assertThat(registry.findSubscriptions(send("/topic/status"))).isEmpty();
+        assertThat(registry.getSessionCount()).isZero();
+    }
+
+    @Test
+    void testResubscribingWithTheSameIdMovesTheSubscription() {
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/area/1_1"));
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/area/1_2"));
+
+        assertThat(registry.findSubscriptions(send("/topic/area/1_1"))).isEmpty();
+        assertThat(registry.findSubscriptions(send("/topic/area/1_2")).get("s1")).containsExactly("sub-0");
+    }
+
+    @Test
+    void testPatternSubscriptionsAreMatchedAlongsideExactOnes() {
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/area/5_5"));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/area/*"));
+
+        MultiValueMap<String, String> recipients = registry.findSubscriptions(send("/topic/area/5_5"));
+        assertThat(recipients).containsOnlyKeys("s1", "s2");
+        assertThat(registry.findSubscriptions(send("/topic/area/6_6"))).containsOnlyKeys("s2");
+        assertThat(registry.findSubscriptions(send("/topic/messages"))).isEmpty();
+
+        registry.unregisterAllSubscriptions("s2");
+        assertThat(registry.findSubscriptions(send("/topic/area/6_6"))).isEmpty();
+    }
+
+    @Test
+    void testRecipientsAreSharedUntilTheNextChange() {
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/messages"));
+        MultiValueMap<String, String> first = registry.findSubscriptions(send("/topic/messages"));
+        assertThat(registry.findSubscriptions(send("/topic/messages"))).isSameAs(first);
+
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/messages"));
+        MultiValueMap<String, String> second = registry.findSubscriptions(send("/topic/messages"));
+        assertThat(second).containsOnlyKeys("s1", "s2");
+        assertThat(first).containsOnlyKeys("s1");
+        assertThat(second.get("s2")).isEqualTo(List.of("sub-0"));
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> send(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
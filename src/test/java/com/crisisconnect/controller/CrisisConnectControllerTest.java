@@ -1,19 +1,39 @@
 package com.crisisconnect.controller;
 
+import com.crisisconnect.exception.InvalidQueryException;
 import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.StatusEntry;
+import com.crisisconnect.service.GeoRoutingService;
 import com.crisisconnect.service.MessageBroadcastService;
+import com.crisisconnect.service.MessageDispatchService;
+import com.crisisconnect.service.RelayService;
 import com.crisisconnect.service.SocketServerService;
 import com.crisisconnect.service.StatusService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.endsWith;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(CrisisConnectController.class)
@@ -31,6 +51,15 @@ public class CrisisConnectControllerTest {
     @MockBean
     private SocketServerService socketServerService;
 
+    @MockBean
+    private MessageDispatchService dispatchService;
+
+    @MockBean
+    private GeoRoutingService geoRouting;
+
+    @MockBean
+    private RelayService relayService;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Test
@@ -60,4 +89,161 @@ public class CrisisConnectControllerTest {
                 .content(Objects.requireNonNull(objectMapper.writeValueAsString(message))))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    public void testGetMessagesSince_ReturnsDelta() throws Exception {
+        Message missed = new Message();
+        missed.setContent("Missed");
+        missed.setSequence(8L);
+        when(broadcastService.getMessagesSince(7)).thenReturn(new MessageDelta(List.of(missed), 8, false));
+
+        mockMvc.perform(get("/api/messages").param("since", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gap").value(false))
+                .andExpect(jsonPath("$.latestSequence").value(8))
+                .andExpect(jsonPath("$.messages[0].sequence").value(8));
+    }
+
+    @Test
+    public void testGetAllMessages_StreamsCompactArrayPage() throws Exception {
+        Message first = new Message();
+        first.setContent("First");
+        first.setSequence(5L);
+        Message second = new Message();
+        second.setContent("Second");
+        second.setSequence(6L);
+        when(broadcastService.streamMessages(4, 2)).thenAnswer(invocation -> List.of(first, second).iterator());
+
+        mockMvc.perform(get("/api/messages/all").param("after", "4").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].content").value("Second"));
+
+        mockMvc.perform(get("/api/messages/all").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testOnlyInvalidQueriesAreClientErrors() throws Exception {
+        when(statusService.findNearest(200, 0, 10, null)).thenThrow(new InvalidQueryException("Invalid coordinates"));
+        when(statusService.findNearest(0, 0, 10, null)).thenThrow(new IllegalArgumentException("bug"));
+
+        mockMvc.perform(get("/api/status/nearest").param("lat", "200").param("lon", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid coordinates"));
+        assertThatThrownBy(() -> mockMvc.perform(get("/api/status/nearest").param("lat", "0").param("lon", "0")))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testGetAllStatuses_StreamsNdjsonWhenAsked() throws Exception {
+        Iterator<StatusEntry> entries = List.of(statusEntry("a"), statusEntry("b")).iterator();
+        when(statusService.streamStatuses(null, Long.MAX_VALUE)).thenReturn(entries);
+
+        String body = mockMvc.perform(get("/api/status").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(body.split("\n")).hasSize(2).allSatisfy(line -> assertThat(line).startsWith("{\"userId\""));
+    }
+
+    @Test
+    public void testGetAllStatuses_DefaultsToJsonArray() throws Exception {
+        when(statusService.streamStatuses("a", 10)).thenAnswer(invocation -> List.of(statusEntry("b")).iterator());
+
+        mockMvc.perform(get("/api/status").param("after", "a").param("limit", "10").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].userId").value("b"));
+    }
+
+    @Test
+    public void testGetMessages_NotModifiedWhileVersionUnchanged() throws Exception {
+        when(broadcastService.getHistoryVersion()).thenReturn(3L);
+        when(broadcastService.getRecentMessages(50)).thenReturn(List.of(new Message()));
+
+        String etag = mockMvc.perform(get("/api/messages"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).startsWith("\"").endsWith("-messages.50-3\"");
+
+        mockMvc.perform(get("/api/messages").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        // A client without the tag gets the body rendered for the first poll
+        mockMvc.perform(get("/api/messages"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        verify(broadcastService, times(1)).getRecentMessages(50);
+
+        when(broadcastService.getHistoryVersion()).thenReturn(4L);
+        mockMvc.perform(get("/api/messages").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        verify(broadcastService, times(2)).getRecentMessages(50);
+    }
+
+    @Test
+    public void testGetAllStatuses_NotModifiedWhileBoardUnchanged() throws Exception {
+        when(statusService.getVersion()).thenReturn(7L);
+        when(statusService.getUserCount()).thenReturn(1L);
+        when(statusService.streamStatuses(null, Long.MAX_VALUE))
+                .thenAnswer(invocation -> List.of(statusEntry("a")).iterator());
+
+        String etag = mockMvc.perform(get("/api/status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].userId").value("a"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/status").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/status").accept(MediaType.APPLICATION_NDJSON).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].userId").value("a"));
+        // The second full read came from the cached body; the NDJSON read streamed
+        verify(statusService, times(2)).streamStatuses(null, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testCachedAndStreamedBodiesShareOneFormat() throws Exception {
+        // A version of its own: rendered bodies outlive a test in the shared controller
+        when(statusService.getVersion()).thenReturn(11L);
+        when(statusService.getUserCount()).thenReturn(1L);
+        when(statusService.streamStatuses(null, Long.MAX_VALUE))
+                .thenAnswer(invocation -> List.of(statusEntry("a")).iterator());
+        when(statusService.streamStatuses(null, 1)).thenAnswer(invocation -> List.of(statusEntry("a")).iterator());
+
+        String cached = mockMvc.perform(get("/api/status")).andReturn().getResponse().getContentAsString();
+        String streamed = mockMvc.perform(get("/api/status").param("limit", "1"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(cached).isEqualTo(streamed).doesNotContain("\n");
+    }
+
+    @Test
+    public void testPagesAreTaggedApart() throws Exception {
+        when(broadcastService.getHistoryVersion()).thenReturn(3L);
+        when(broadcastService.streamMessages(anyLong(), anyLong()))
+                .thenAnswer(invocation -> List.<Message>of().iterator());
+
+        String whole = mockMvc.perform(get("/api/messages/all"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String page = mockMvc.perform(get("/api/messages/all").param("after", "4").param("limit", "2"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(page).isNotEqualTo(whole).endsWith("-all.4.2-3\"");
+        mockMvc.perform(get("/api/messages/all").param("after", "5").param("limit", "2")
+                        .header(HttpHeaders.IF_NONE_MATCH, page))
+                .andExpect(status().isOk());
+        when(statusService.streamStatuses("\"x\"", 2)).thenAnswer(invocation -> List.<StatusEntry>of().iterator());
+        mockMvc.perform(get("/api/status").param("after", "\"x\"").param("limit", "2"))
+                .andExpect(header().string(HttpHeaders.ETAG, endsWith("-status.%22x%22.2-0\"")));
+    }
+
+    private static StatusEntry statusEntry(String userId) {
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setUserName("User " + userId);
+        entry.setStatus("SAFE");
+        return entry;
+    }
 }
@@ -0,0 +1,64 @@
+package com.crisisconnect.controller;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.service.FileStorageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlightRecorderEndpointTest {
+
+    @TempDir
+    Path directory;
+
+    private final FlightRecorderEndpoint endpoint = new FlightRecorderEndpoint();
+
+    @Test
+    public void testDumpHoldsMessageEventsUntilClosed() throws Exception {
+        WebEndpointResponse<Map<String, Object>> started = endpoint.start(null, null, 60L);
+        long id = (Long) started.getBody().get("id");
+        assertThat(started.getBody()).containsEntry("state", RecordingState.RUNNING);
+
+        FileStorageService storage = new FileStorageService(new ObjectMapper().registerModule(new JavaTimeModule()),
+                new SimpleMeterRegistry(), directory.resolve("data").toString(), "journal", 1024 * 1024, false,
+                false, 100);
+        storage.loadMessages();
+        Message message = new Message();
+        message.setId("traced-1");
+        message.setContent("trace me");
+        storage.appendMessages(List.of(message));
+        storage.close();
+
+        WebEndpointResponse<Resource> dump = endpoint.dump(id);
+        assertThat(dump.getStatus()).isEqualTo(WebEndpointResponse.STATUS_OK);
+        Path file = directory.resolve("dump.jfr");
+        try (InputStream in = dump.getBody().getInputStream()) {
+            Files.copy(in, file);
+        }
+        List<RecordedEvent> persisted = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.crisisconnect.MessagePersisted"))
+                .toList();
+        assertThat(persisted).anySatisfy(event -> {
+            assertThat(event.getString("messageId")).isEqualTo("traced-1");
+            assertThat(event.getString("mode")).isEqualTo("journal");
+        });
+
+        assertThat(endpoint.close(id).getStatus()).isEqualTo(WebEndpointResponse.STATUS_OK);
+        assertThat(endpoint.dump(id).getStatus()).isEqualTo(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+}
@@ -0,0 +1,99 @@
+package com.crisisconnect.listener;
+
+import com.crisisconnect.model.StatusEntry;
+import com.crisisconnect.service.GeoRoutingService;
+import com.crisisconnect.service.StatusService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WebSocketEventListenerTest {
+
+    private static final int USERS = 5000;
+    private static final int SESSIONS_PER_USER = 2;
+
+    private final StatusService statusService = new StatusService(new SimpMessagingTemplate((message, timeout) -> true),
+            new SimpleMeterRegistry(), 0.01, 0, true);
+    private final WebSocketEventListener listener = new WebSocketEventListener();
+
+    @Test
+    public void testDisconnectStormWhenHotspotDrops() throws Exception {
+        ReflectionTestUtils.setField(listener, "statusService", statusService);
+        ReflectionTestUtils.setField(listener, "geoRouting", new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, true));
+
+        List<String> dropped = new ArrayList<>();
+        for (int user = 0; user < USERS; user++) {
+            StatusEntry entry = new StatusEntry();
+            entry.setUserId("user-" + user);
+            entry.setUserName("User " + user);
+            entry.setStatus(user % 10 == 0 ? "CRITICAL" : "SAFE");
+            statusService.updateStatus(entry);
+            for (int session = 0; session < SESSIONS_PER_USER; session++) {
+                String sessionId = "session-" + user + "-" + session;
+                statusService.registerSession(sessionId, entry.getUserId());
+                // Odd users lose every session, even users keep their second one
+                if (user % 2 == 1 || session == 0) {
+                    dropped.add(sessionId);
+                }
+            }
+        }
+        Collections.shuffle(dropped);
+
+        // Fire every disconnect at once, including duplicate events for the same session
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (String sessionId : dropped) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                listener.handleWebSocketDisconnectListener(disconnect(sessionId));
+                listener.handleWebSocketDisconnectListener(disconnect(sessionId));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        for (int user = 0; user < USERS; user++) {
+            String expected = user % 2 == 1 ? "OFFLINE" : (user % 10 == 0 ? "CRITICAL" : "SAFE");
+            assertThat(statusService.getStatus("user-" + user).getStatus()).isEqualTo(expected);
+        }
+        assertThat(statusService.getActiveUserCount()).isEqualTo(USERS / 2);
+        assertThat(statusService.getCriticalUserCount()).isEqualTo(USERS / 10);
+        assertThat(statusService.getSessionCount()).isEqualTo(USERS / 2);
+
+        // The remaining sessions go too
+        for (int user = 0; user < USERS; user += 2) {
+            listener.handleWebSocketDisconnectListener(disconnect("session-" + user + "-1"));
+        }
+        assertThat(statusService.getActiveUserCount()).isZero();
+        assertThat(statusService.getSessionCount()).isZero();
+    }
+
+    private static SessionDisconnectEvent disconnect(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionDisconnectEvent(WebSocketEventListenerTest.class, message, sessionId, CloseStatus.NORMAL);
+    }
+}
@@ -0,0 +1,106 @@
+package com.crisisconnect.protocol;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompactCodecTest {
+
+    private final CompactCodec codec = new CompactCodec(512);
+
+    @Test
+    public void testMessageRoundTripsThroughSenderReference() throws IOException {
+        Message message = message("Water needed at shelter 4");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(codec.encodeSender(7, message.getSenderId(), message.getSenderName()));
+        stream.write(codec.encodeMessage(message, 7));
+        stream.write(codec.encodeText("RESUME 41"));
+
+        CompactDecoder decoder = new CompactDecoder();
+        ByteArrayInputStream in = new ByteArrayInputStream(stream.toByteArray());
+        assertThat(decoder.read(in).message()).isEqualTo(message);
+        assertThat(decoder.read(in).text()).isEqualTo("RESUME 41");
+        assertThat(decoder.read(in)).isNull();
+    }
+
+    @Test
+    public void testFramesSurviveArbitraryFragmentation() throws IOException {
+        Message inline = message("Bridge on route 5 is out");
+        inline.setId("not-a-uuid");
+        inline.setLatitude(null);
+        Message large = message("Roll call: " + "all volunteers at the north gate please report in. ".repeat(40));
+        byte[] stream = concat(codec.encodeMessage(inline, SenderTable.NO_REF), codec.encodeMessage(large, -1));
+        // Long repetitive content is deflated
+        assertThat(codec.encodeMessage(large, -1).length).isLessThan(large.getContent().length() / 4);
+
+        CompactDecoder decoder = new CompactDecoder();
+        List<Message> decoded = new ArrayList<>();
+        for (byte b : stream) {
+            CompactDecoder.Frame frame = decoder.next(ByteBuffer.wrap(new byte[] { b }));
+            if (frame != null) {
+                decoded.add(frame.message());
+            }
+        }
+        assertThat(decoded).containsExactly(inline, large);
+    }
+
+    @Test
+    public void testCompactFrameIsMuchSmallerThanJson() throws IOException {
+        Message message = message("Safe at the school");
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        int json = objectMapper.writeValueAsBytes(message).length + 1;
+        assertThat(codec.encodeMessage(message, 3).length).isLessThan(json / 3);
+    }
+
+    @Test
+    public void testUnknownSenderReferenceIsRejected() {
+        byte[] frame = codec.encodeMessage(message("hello"), 3);
+        assertThatThrownBy(() -> new CompactDecoder().read(new ByteArrayInputStream(frame)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("sender reference");
+    }
+
+    @Test
+    public void testSenderTableIsBounded() {
+        SenderTable table = new SenderTable(2);
+        assertThat(table.refFor("a", "A")).isEqualTo(0);
+        assertThat(table.refFor("b", "B")).isEqualTo(1);
+        assertThat(table.refFor("a", "A")).isEqualTo(0);
+        assertThat(table.refFor("c", "C")).isEqualTo(SenderTable.NO_REF);
+        assertThat(table.sender(1)).isEqualTo(new SenderTable.Sender("b", "B"));
+    }
+
+    private static Message message(String content) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID().toString());
+        message.setSequence(12345L);
+        message.setSenderId(UUID.randomUUID().toString());
+        message.setSenderName("Rescue Team 3");
+        message.setContent(content);
+        message.setType(Message.MessageType.TEXT);
+        message.setPriority(Message.MessagePriority.HIGH);
+        message.setTimestamp(LocalDateTime.of(2026, 3, 14, 9, 26, 53, 589_000_000));
+        message.setLatitude(23.8103);
+        message.setLongitude(90.4125);
+        return message;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] both = new byte[a.length + b.length];
+        System.arraycopy(a, 0, both, 0, a.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+}
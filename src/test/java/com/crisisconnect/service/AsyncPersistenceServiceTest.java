@@ -0,0 +1,136 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class AsyncPersistenceServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testClearDropsEverythingBroadcastBeforeIt() {
+        FileStorageService storage = newStorage();
+        storage.loadMessages();
+        // A long flush interval keeps everything queued until shutdown drains it in order
+        AsyncPersistenceService persistence = new AsyncPersistenceService(storage, new SimpleMeterRegistry(), true,
+                100, 100, 60_000);
+        persistence.start();
+
+        persistence.submit(message("before", 0));
+        persistence.submit(message("after", 2));
+        persistence.clear(2);
+        // Broadcast before the clear but only submitted once it was queued
+        persistence.submit(message("late", 1));
+        persistence.submit(message("next", 3));
+        persistence.shutdown();
+        storage.close();
+
+        FileStorageService reopened = newStorage();
+        assertThat(reopened.loadMessages()).extracting(Message::getContent).containsExactly("after", "next");
+        reopened.close();
+    }
+
+    @Test
+    public void testClearWithoutWriteBehindDropsLateWrites() {
+        FileStorageService storage = newStorage();
+        storage.loadMessages();
+        AsyncPersistenceService persistence = new AsyncPersistenceService(storage, new SimpleMeterRegistry(), false,
+                100, 100, 50);
+
+        persistence.submit(message("before", 0));
+        persistence.clear(1);
+        persistence.submit(message("late", 0));
+        persistence.submit(message("next", 1));
+        storage.close();
+
+        FileStorageService reopened = newStorage();
+        assertThat(reopened.loadMessages()).extracting(Message::getContent).containsExactly("next");
+        reopened.close();
+    }
+
+    @Test
+    public void testShutdownWritesEverythingStillQueued() {
+        FileStorageService storage = newStorage();
+        storage.loadMessages();
+        AsyncPersistenceService persistence = new AsyncPersistenceService(storage, new SimpleMeterRegistry(), true,
+                100, 100, 60_000);
+        persistence.start();
+
+        for (int i = 0; i < 10; i++) {
+            persistence.submit(message("m" + i, i));
+        }
+        assertThat(persistence.getQueueDepth()).isEqualTo(10);
+        persistence.shutdown();
+        assertThat(persistence.getQueueDepth()).isZero();
+        storage.close();
+
+        FileStorageService reopened = newStorage();
+        assertThat(reopened.loadMessages()).extracting(Message::getContent)
+                .containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9");
+        reopened.close();
+    }
+
+    @Test
+    public void testFullQueueBlocksTheProducerUntilTheWriterCatchesUp() throws Exception {
+        FileStorageService storage = mock(FileStorageService.class);
+        List<String> written = new CopyOnWriteArrayList<>();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            List<Message> batch = invocation.getArgument(0);
+            batch.forEach(message -> written.add(message.getContent()));
+            return null;
+        }).when(storage).appendMessages(anyList());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AsyncPersistenceService persistence = new AsyncPersistenceService(storage, registry, true, 2, 1, 60_000);
+        persistence.start();
+
+        // The writer takes m0 and stalls in storage, then m1 and m2 fill the queue
+        persistence.submit(message("m0", 0));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        persistence.submit(message("m1", 1));
+        persistence.submit(message("m2", 2));
+        Thread producer = new Thread(() -> persistence.submit(message("m3", 3)));
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive()).isTrue();
+        assertThat(registry.get("crisis.persistence.backpressure").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        producer.join(5_000);
+        assertThat(producer.isAlive()).isFalse();
+        persistence.shutdown();
+        assertThat(written).containsExactly("m0", "m1", "m2", "m3");
+    }
+
+    private FileStorageService newStorage() {
+        return new FileStorageService(new ObjectMapper().registerModule(new JavaTimeModule()),
+                new SimpleMeterRegistry(), directory.toString(), "journal", 1024 * 1024, false, false, 100);
+    }
+
+    private static Message message(String content, long sequence) {
+        Message message = new Message();
+        message.setId(content);
+        message.setContent(content);
+        message.setSequence(sequence);
+        return message;
+    }
+}
@@ -0,0 +1,203 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.crisisconnect.model.ReplicationBatch;
+import com.crisisconnect.model.StatusEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ClusterServiceTest {
+
+    private static final String NODE_ID = "node-a";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MessageBroadcastService broadcastService = mock(MessageBroadcastService.class);
+    private final StatusService statusService = new StatusService(
+            new SimpMessagingTemplate((message, timeout) -> true), registry, 0.01, 0, true);
+    // Dispatches on the caller's thread; its own replication target is a mock, this test drives the real one
+    private final MessageDispatchService dispatchService = new MessageDispatchService(broadcastService,
+            mock(SocketServerService.class), mock(RelayService.class), mock(ClusterService.class), registry,
+            false, 16, 200, 100);
+
+    // Stub peer: canned bodies by path and query, every request recorded
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer peer;
+    private ClusterService cluster;
+
+    @AfterEach
+    public void tearDown() {
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (peer != null) {
+            peer.stop(0);
+        }
+    }
+
+    @Test
+    public void testApplyingABatchTwiceChangesNothingTheSecondTime() {
+        cluster = newCluster("");
+        statusService.updateStatus(status("b", null));
+        LocalDateTime later = statusService.getStatus("b").getTimestamp().plusSeconds(1);
+        ReplicationBatch batch = new ReplicationBatch("node-b", List.of(message("m1")),
+                List.of(status("a", later)), Map.of("b", later));
+
+        cluster.apply(batch);
+        cluster.apply(batch);
+
+        verify(broadcastService, times(1)).broadcastMessage(any(EncodedMessage.class));
+        assertThat(applied("message")).isEqualTo(1);
+        // a added, b removed
+        assertThat(applied("status")).isEqualTo(2);
+        assertThat(statusService.getStatus("a")).isNotNull();
+        assertThat(statusService.getStatus("b")).isNull();
+    }
+
+    @Test
+    public void testGapFallsBackToTheFullHistory() throws Exception {
+        startPeer(new ClusterService.Digest("node-b", 0, 0));
+        respond("/api/messages?since=-1", MessageDelta.gap(7));
+        respond("/api/messages/all", List.of(message("m1"), message("m2")));
+
+        cluster = newCluster(peerAddress());
+        cluster.start();
+        awaitSync();
+
+        assertThat(requests).contains("/api/messages/all");
+        verify(broadcastService, times(2)).broadcastMessage(any(EncodedMessage.class));
+        assertThat(applied("message")).isEqualTo(2);
+    }
+
+    @Test
+    public void testMatchingDigestSkipsTheStatusPull() throws Exception {
+        // Both boards empty, so the digests agree
+        startPeer(new ClusterService.Digest("node-b", 0, 0));
+        respond("/api/messages?since=-1", new MessageDelta(List.of(message("m1")), 1, false));
+
+        cluster = newCluster(peerAddress());
+        cluster.start();
+        awaitSync();
+
+        assertThat(requests).containsExactly("/api/cluster/digest", "/api/messages?since=-1");
+        verify(broadcastService).broadcastMessage(any(EncodedMessage.class));
+    }
+
+    @Test
+    public void testDifferentDigestPullsTheStatusBoard() throws Exception {
+        startPeer(new ClusterService.Digest("node-b", 42, 1));
+        respond("/api/messages?since=-1", new MessageDelta(List.of(), 0, false));
+        respond("/api/cluster/statuses", new ReplicationBatch("node-b", List.of(),
+                List.of(status("a", LocalDateTime.now())), Map.of()));
+
+        cluster = newCluster(peerAddress());
+        cluster.start();
+        awaitSync();
+
+        assertThat(requests).contains("/api/cluster/statuses");
+        assertThat(statusService.getStatus("a")).isNotNull();
+    }
+
+    @Test
+    public void testPeerReportingThisNodesIdIsSkipped() throws Exception {
+        startPeer(new ClusterService.Digest(NODE_ID, 0, 0));
+
+        cluster = newCluster(peerAddress());
+        cluster.start();
+        awaitSync();
+        cluster.replicate(message("m1"));
+        cluster.push();
+
+        // Neither pulled from nor pushed to
+        assertThat(requests).containsExactly("/api/cluster/digest");
+        assertThat(cluster.getPeers().get(0).getNodeId()).isEqualTo(NODE_ID);
+    }
+
+    private ClusterService newCluster(String peers) {
+        // Anti-entropy runs once on start and then not again during the test
+        return new ClusterService(dispatchService, statusService, objectMapper, registry, peers, NODE_ID, 50, 256,
+                60_000, 2000, 60);
+    }
+
+    private void startPeer(ClusterService.Digest digest) throws IOException {
+        peer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        peer.createContext("/", exchange -> {
+            String request = exchange.getRequestURI().toString();
+            requests.add(request);
+            byte[] body = responses.getOrDefault(request, "POST".equals(exchange.getRequestMethod())
+                    ? new byte[0] : null);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        peer.start();
+        respond("/api/cluster/digest", digest);
+    }
+
+    private void respond(String request, Object body) throws IOException {
+        responses.put(request, objectMapper.writeValueAsBytes(body));
+    }
+
+    private String peerAddress() {
+        return "127.0.0.1:" + peer.getAddress().getPort();
+    }
+
+    // The first anti-entropy round has finished once the peer was last reached
+    private void awaitSync() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cluster.getPeers().get(0).getConnectedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(cluster.getPeers().get(0).getConnectedAt()).isNotNull();
+    }
+
+    private double applied(String kind) {
+        return registry.get("crisis.cluster.applied").tag("kind", kind).counter().count();
+    }
+
+    private static Message message(String id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setContent(id);
+        message.setSenderId("node-b-user");
+        message.setType(Message.MessageType.TEXT);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        return message;
+    }
+
+    private static StatusEntry status(String userId, LocalDateTime timestamp) {
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setUserName(userId);
+        entry.setStatus("SAFE");
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+}
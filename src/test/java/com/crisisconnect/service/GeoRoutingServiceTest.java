@@ -0,0 +1,82 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GeoRoutingServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final GeoRoutingService routing = new GeoRoutingService(registry, true, 0.05, true, true);
+
+    @Test
+    public void testTaggedMessagesRouteToTheirTile() {
+        // Dhaka and Chittagong
+        String dhaka = routing.destination(routing.tileOf(message(23.81, 90.41, Message.MessageType.TEXT)));
+        String chittagong = routing.destination(routing.tileOf(message(22.35, 91.78, Message.MessageType.TEXT)));
+
+        assertThat(dhaka).startsWith(GeoRoutingService.AREA_PREFIX).isNotEqualTo(chittagong);
+        assertThat(routing.destinationsFor(23.80, 90.40, 23.82, 90.42)).contains(dhaka).doesNotContain(chittagong);
+    }
+
+    @Test
+    public void testUntaggedAndEmergencyMessagesStayGlobal() {
+        assertThat(routing.tileOf(new Message())).isEqualTo(GeoRoutingService.GLOBAL);
+        assertThat(routing.tileOf(message(23.81, 90.41, Message.MessageType.EMERGENCY)))
+                .isEqualTo(GeoRoutingService.GLOBAL);
+        assertThat(routing.destination(GeoRoutingService.GLOBAL)).isEqualTo(GeoRoutingService.UNSCOPED_DESTINATION);
+
+        GeoRoutingService scopedEmergencies = new GeoRoutingService(registry, true, 0.05, false, true);
+        assertThat(scopedEmergencies.tileOf(message(23.81, 90.41, Message.MessageType.EMERGENCY)))
+                .isNotEqualTo(GeoRoutingService.GLOBAL);
+    }
+
+    @Test
+    public void testStompSubscriptionsDriveDeliveryMetrics() {
+        long dhaka = routing.tileOf(message(23.81, 90.41, Message.MessageType.TEXT));
+        long chittagong = routing.tileOf(message(22.35, 91.78, Message.MessageType.TEXT));
+        routing.stompSubscribed("s1", "sub-0", routing.destination(dhaka));
+        routing.stompSubscribed("s2", "sub-0", routing.destination(chittagong));
+        routing.stompSubscribed("s3", "sub-0", "/topic/messages");
+        assertThat(routing.hasStompSubscribers(dhaka)).isTrue();
+        assertThat(routing.hasStompSubscribers(GeoRoutingService.GLOBAL)).isFalse();
+
+        routing.recordStompDelivery(dhaka);
+        assertThat(count("crisis.geo.delivered")).isEqualTo(1);
+        assertThat(count("crisis.geo.suppressed")).isEqualTo(1);
+
+        routing.stompUnsubscribed("s2", "sub-0");
+        routing.stompSessionClosed("s1");
+        routing.recordStompDelivery(dhaka);
+        assertThat(count("crisis.geo.delivered")).isEqualTo(1);
+        assertThat(count("crisis.geo.suppressed")).isEqualTo(1);
+        assertThat(routing.hasStompSubscribers(dhaka)).isFalse();
+
+        routing.stompSubscribed("s4", "sub-0", GeoRoutingService.UNSCOPED_DESTINATION);
+        assertThat(routing.hasStompSubscribers(GeoRoutingService.GLOBAL)).isTrue();
+    }
+
+    @Test
+    public void testOversizedRegionIsRejected() {
+        assertThatThrownBy(() -> routing.destinationsFor(-10, -10, 10, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(routing.destinationsFor(0.01, 0.01, 0.02, 0.02)).hasSize(1);
+        assertThat(routing.tilesCovering(new GeoBox(0.01, 0.01, 0.12, 0.12))).hasSize(9);
+    }
+
+    private double count(String name) {
+        return registry.get(name).tag("transport", "stomp").counter().count();
+    }
+
+    private static Message message(double latitude, double longitude, Message.MessageType type) {
+        Message message = new Message();
+        message.setContent("hello");
+        message.setType(type);
+        message.setLatitude(latitude);
+        message.setLongitude(longitude);
+        return message;
+    }
+}
@@ -0,0 +1,45 @@
+package com.crisisconnect.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LineDecoderTest {
+
+    private final LineDecoder decoder = new LineDecoder();
+
+    @Test
+    public void testKeepsAPartialLineUntilItsNewlineArrives() throws IOException {
+        assertThat(decoder.next(bytes("{\"content\":\"hé"))).isNull();
+        assertThat(decoder.next(bytes("llo\"}\r"))).isNull();
+        assertThat(decoder.next(bytes("\n"))).isEqualTo("{\"content\":\"héllo\"}");
+    }
+
+    @Test
+    public void testHandsOutSeveralLinesOfOneReadOneAtATime() throws IOException {
+        ByteBuffer data = bytes("PING\n\nNAME alice\nPAR");
+
+        assertThat(decoder.next(data)).isEqualTo("PING");
+        assertThat(decoder.next(data)).isEmpty();
+        assertThat(decoder.next(data)).isEqualTo("NAME alice");
+        assertThat(decoder.next(data)).isNull();
+        assertThat(data.hasRemaining()).isFalse();
+        assertThat(decoder.next(bytes("TIAL\n"))).isEqualTo("PARTIAL");
+    }
+
+    @Test
+    public void testRejectsALineOverTheLimit() {
+        ByteBuffer data = ByteBuffer.allocate(LineDecoder.MAX_LINE_BYTES + 1);
+
+        assertThatThrownBy(() -> decoder.next(data)).isInstanceOf(IOException.class);
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
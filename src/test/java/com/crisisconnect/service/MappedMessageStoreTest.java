@@ -0,0 +1,212 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedMessageStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    public void testRecoversAppendedMessagesAfterReopen() throws IOException {
+        try (MappedMessageStore store = newStore(100)) {
+            assertThat(store.open()).isEmpty();
+            store.append(messages(0, 5));
+            store.append(messages(5, 10));
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            List<Message> recovered = store.open();
+            assertThat(recovered).hasSize(10);
+            assertThat(recovered.get(9).getContent()).isEqualTo("m9");
+            assertThat(recovered).extracting(Message::getContent)
+                    .containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9");
+        }
+    }
+
+    @Test
+    public void testReindexesRecordsMissingFromTheIndexAndDropsATornTail() throws IOException {
+        try (MappedMessageStore store = newStore(100)) {
+            store.open();
+            store.append(messages(0, 4));
+        }
+
+        // Crash after writing the data but before the index caught up, with the last record half-written
+        Path index = file(".idx");
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2 * 2 * Long.BYTES - 3);
+        }
+        try (FileChannel channel = FileChannel.open(file(".dat"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            assertThat(store.open()).extracting(Message::getContent).containsExactly("m0", "m1", "m2");
+            store.append(messages(4, 5));
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            assertThat(store.open()).extracting(Message::getContent).containsExactly("m0", "m1", "m2", "m4");
+        }
+    }
+
+    @Test
+    public void testCorruptRecordKeepsItsSequence() throws IOException {
+        try (MappedMessageStore store = newStore(100)) {
+            store.open();
+            store.append(messages(0, 4));
+        }
+
+        // Flip a byte inside the second record's JSON
+        try (FileChannel channel = FileChannel.open(file(".dat"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(header, 0);
+            long second = 2 * Integer.BYTES + header.getInt(0);
+            ByteBuffer flipped = ByteBuffer.allocate(1);
+            channel.read(flipped, second + 2 * Integer.BYTES + 4);
+            flipped.put(0, (byte) (flipped.get(0) ^ 0x20)).rewind();
+            channel.write(flipped, second + 2 * Integer.BYTES + 4);
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            List<Message> recovered = store.open();
+            assertThat(recovered).doesNotContainNull();
+            assertThat(recovered).extracting(Message::getContent)
+                    .containsExactly("m0", "(unreadable message)", "m2", "m3");
+            assertThat(recovered).extracting(Message::getSequence).containsExactly(100L, 101L, 102L, 103L);
+            assertThat(((MessageStore.Sequenced) recovered).sequence(1)).isEqualTo(101L);
+        }
+    }
+
+    @Test
+    public void testRebuildsAnIndexWithoutSequences() throws IOException {
+        try (MappedMessageStore store = newStore(100)) {
+            store.open();
+            store.append(messages(0, 3));
+        }
+
+        // The version 1 layout: the same header with version 1, then offsets only
+        Path index = file(".idx");
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+        ByteBuffer legacy = ByteBuffer.allocate(8 + 3 * Long.BYTES).putInt(entries.getInt(0)).putInt(1);
+        for (int i = 0; i < 3; i++) {
+            legacy.putLong(entries.getLong(8 + i * 2 * Long.BYTES));
+        }
+        Files.write(index, legacy.array());
+
+        try (MappedMessageStore store = newStore(100)) {
+            List<Message> recovered = store.open();
+            assertThat(recovered).extracting(Message::getContent).containsExactly("m0", "m1", "m2");
+            assertThat(((MessageStore.Sequenced) recovered).sequence(2)).isEqualTo(102L);
+        }
+    }
+
+    @Test
+    public void testCompactsToRetainedRecords() throws IOException {
+        try (MappedMessageStore store = newStore(10)) {
+            store.open();
+            for (int i = 0; i < 25; i++) {
+                store.append(messages(i, i + 1));
+            }
+        }
+
+        try (MappedMessageStore store = newStore(10)) {
+            List<Message> recovered = store.open();
+            assertThat(recovered).hasSize(10);
+            assertThat(recovered.get(0).getContent()).isEqualTo("m15");
+            assertThat(recovered.get(9).getContent()).isEqualTo("m24");
+        }
+        assertThat(files()).hasSize(2);
+    }
+
+    @Test
+    public void testClearDropsAllRecordsWhileOldViewsStayReadable() throws IOException {
+        try (MappedMessageStore store = newStore(100)) {
+            store.open();
+            store.append(messages(0, 3));
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            List<Message> before = store.open();
+            store.clear();
+            store.append(messages(3, 4));
+            assertThat(before.get(2).getContent()).isEqualTo("m2");
+        }
+
+        try (MappedMessageStore store = newStore(100)) {
+            assertThat(store.open()).extracting(Message::getContent).containsExactly("m3");
+        }
+    }
+
+    @Test
+    public void testMigratesTheJsonHistoryOnFirstStart() throws IOException {
+        File dataDir = directory.toFile();
+        objectMapper.writeValue(new File(dataDir, "messages.json"), messages(0, 3));
+
+        FileStorageService storage = new FileStorageService(objectMapper, new SimpleMeterRegistry(),
+                dataDir.getPath(), "mapped", 1024 * 1024, true, true, 100);
+        assertThat(storage.loadMessages()).extracting(Message::getContent).containsExactly("m0", "m1", "m2");
+        storage.close();
+        assertThat(new File(dataDir, "messages.json")).doesNotExist();
+        assertThat(new File(dataDir, "messages.json.migrated")).exists();
+
+        FileStorageService reopened = new FileStorageService(objectMapper, new SimpleMeterRegistry(),
+                dataDir.getPath(), "mapped", 1024 * 1024, true, true, 100);
+        assertThat(reopened.loadMessages()).extracting(Message::getContent).containsExactly("m0", "m1", "m2");
+        reopened.close();
+    }
+
+    private MappedMessageStore newStore(int retained) {
+        return new MappedMessageStore(directory, objectMapper, retained, true);
+    }
+
+    private Path file(String suffix) throws IOException {
+        return files().stream().filter(p -> p.toString().endsWith(suffix)).findFirst().orElseThrow();
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.sorted().toList();
+        }
+    }
+
+    private static List<Message> messages(int from, int to) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Message message = new Message();
+            message.setId("id-" + i);
+            message.setSenderId("user-1");
+            message.setSenderName("User 1");
+            message.setContent("m" + i);
+            message.setType(Message.MessageType.TEXT);
+            message.setPriority(Message.MessagePriority.NORMAL);
+            message.setTimestamp(LocalDateTime.now());
+            message.setSequence(100L + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+}
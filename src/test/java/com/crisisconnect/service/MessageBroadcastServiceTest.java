@@ -0,0 +1,200 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.crisisconnect.model.MessageDelta;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MessageBroadcastServiceTest {
+
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final AsyncPersistenceService persistenceService = mock(AsyncPersistenceService.class);
+
+    @Test
+    public void testSinceReturnsOnlyMissedMessages() {
+        MessageBroadcastService service = newService(10, 5);
+        for (int i = 0; i < 8; i++) {
+            service.broadcastMessage(message("m" + i));
+        }
+
+        MessageDelta delta = service.getMessagesSince(4);
+        assertThat(delta.isGap()).isFalse();
+        assertThat(delta.getMessages()).extracting(Message::getContent).containsExactly("m5", "m6", "m7");
+        assertThat(delta.getLatestSequence()).isEqualTo(7);
+
+        MessageDelta upToDate = service.getMessagesSince(7);
+        assertThat(upToDate.isGap()).isFalse();
+        assertThat(upToDate.getMessages()).isEmpty();
+    }
+
+    @Test
+    public void testGapWhenMissedMessagesAreGoneOrTooMany() {
+        MessageBroadcastService service = newService(4, 3);
+        for (int i = 0; i < 8; i++) {
+            service.broadcastMessage(message("m" + i));
+        }
+
+        // 0..3 were evicted by the ring, 8 missed messages exceed the sync limit, 20 is from an older history
+        assertThat(service.getMessagesSince(2).isGap()).isTrue();
+        assertThat(service.getMessagesSince(-1).isGap()).isTrue();
+        assertThat(service.getMessagesSince(20).isGap()).isTrue();
+        assertThat(service.getMessagesSince(4).getMessages()).hasSize(3);
+
+        service.clearHistory();
+        assertThat(service.getMessagesSince(6).isGap()).isTrue();
+        assertThat(service.getMessagesSince(7).isGap()).isFalse();
+    }
+
+    @Test
+    public void testSequenceContinuesAfterRestart() {
+        List<Message> persisted = new ArrayList<>();
+        for (long seq = 40; seq < 43; seq++) {
+            Message message = message("old" + seq);
+            message.setSequence(seq);
+            persisted.add(message);
+        }
+        when(fileStorageService.loadMessages()).thenReturn(persisted);
+
+        MessageBroadcastService service = newService(10, 5);
+        Message next = message("new");
+        service.broadcastMessage(next);
+
+        assertThat(next.getSequence()).isEqualTo(43);
+        assertThat(service.getMessagesSince(41).getMessages()).extracting(Message::getContent)
+                .containsExactly("old42", "new");
+    }
+
+    @Test
+    public void testRestoresStoredSequencesWithoutRenumbering() {
+        // Persisted out of order, with 12 and 13 never written
+        List<Message> persisted = new ArrayList<>();
+        for (long seq : new long[]{11, 10, 14, 15}) {
+            Message message = message("old" + seq);
+            message.setSequence(seq);
+            persisted.add(message);
+        }
+        when(fileStorageService.loadMessages()).thenReturn(persisted);
+
+        MessageBroadcastService service = newService(10, 5);
+        Message next = message("new");
+        service.broadcastMessage(next);
+
+        assertThat(next.getSequence()).isEqualTo(16);
+        assertThat(service.getAllMessages()).extracting(Message::getSequence).containsExactly(10L, 11L, 14L, 15L, 16L);
+        assertThat(service.getMessagesSince(10).getMessages()).isEmpty();
+        assertThat(service.getMessagesSince(10).isGap()).isTrue();
+        assertThat(service.getMessagesSince(12).isGap()).isTrue();
+        assertThat(service.getMessagesSince(13).getMessages()).extracting(Message::getContent)
+                .containsExactly("old14", "old15", "new");
+    }
+
+    @Test
+    public void testStreamsHeldMessagesInPagesUpToTheCallTime() {
+        MessageBroadcastService service = newService(600, 5);
+        for (int i = 0; i < 700; i++) {
+            service.broadcastMessage(message("m" + i));
+        }
+
+        // 0..99 were evicted; the stream crosses several internal pages. A message broadcast meanwhile
+        // evicts 100 and is not part of it
+        Iterator<Message> all = service.streamMessages(-1, Long.MAX_VALUE);
+        service.broadcastMessage(message("late"));
+        List<Message> streamed = new ArrayList<>();
+        all.forEachRemaining(streamed::add);
+        assertThat(streamed).hasSize(599);
+        assertThat(streamed.get(0).getSequence()).isEqualTo(101);
+        assertThat(streamed.get(598).getContent()).isEqualTo("m699");
+
+        List<Message> page = new ArrayList<>();
+        service.streamMessages(650, 3).forEachRemaining(page::add);
+        assertThat(page).extracting(Message::getContent).containsExactly("m651", "m652", "m653");
+        assertThat(service.streamMessages(700, 10).hasNext()).isFalse();
+    }
+
+    @Test
+    public void testPublishesOnlyToWatchedDestinations() {
+        List<String> destinations = new ArrayList<>();
+        GeoRoutingService routing = new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, true);
+        MessageBroadcastService service = newService(10, 5, routing, destinations);
+        Message tagged = message("here");
+        tagged.setLatitude(23.81);
+        tagged.setLongitude(90.41);
+
+        service.broadcastMessage(tagged);
+        assertThat(destinations).containsExactly("/topic/messages");
+
+        destinations.clear();
+        routing.stompSubscribed("s1", "sub-0", routing.destination(routing.tileOf(tagged)));
+        service.broadcastMessage(tagged);
+        service.broadcastMessage(message("untagged"));
+        assertThat(destinations).containsExactly("/topic/messages", routing.destination(routing.tileOf(tagged)),
+                "/topic/messages");
+
+        destinations.clear();
+        GeoRoutingService regionOnly = new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, false);
+        regionOnly.stompSubscribed("s1", "sub-0", GeoRoutingService.UNSCOPED_DESTINATION);
+        newService(10, 5, regionOnly, destinations).clearHistory();
+        assertThat(destinations).containsExactly(GeoRoutingService.UNSCOPED_DESTINATION);
+    }
+
+    @Test
+    public void testStompGetsTheJsonWithoutTheSocketLineTerminator() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        List<byte[]> payloads = new ArrayList<>();
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            payloads.add((byte[]) message.getPayload());
+            return true;
+        });
+        MessageBroadcastService service = new MessageBroadcastService(template, fileStorageService,
+                persistenceService, objectMapper,
+                new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, true), 10, 5, true);
+        service.init();
+        EncodedMessage encoded = new EncodedMessage(message("hello"));
+
+        service.broadcastMessage(encoded);
+
+        byte[] line = encoded.frame(objectMapper).bytes();
+        assertThat(payloads).hasSize(1);
+        assertThat(objectMapper.readValue(payloads.get(0), Message.class).getContent()).isEqualTo("hello");
+        assertThat(payloads.get(0)[payloads.get(0).length - 1]).isEqualTo((byte) '}');
+        // The socket wire carries the same bytes plus its newline
+        assertThat(line).startsWith(payloads.get(0)).hasSize(payloads.get(0).length + 1).endsWith('\n');
+    }
+
+    private MessageBroadcastService newService(int historySize, int maxSync) {
+        return newService(historySize, maxSync,
+                new GeoRoutingService(new SimpleMeterRegistry(), true, 0.05, true, true), new ArrayList<>());
+    }
+
+    private MessageBroadcastService newService(int historySize, int maxSync, GeoRoutingService routing,
+            List<String> destinations) {
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            destinations.add(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            return true;
+        });
+        MessageBroadcastService service = new MessageBroadcastService(template, fileStorageService,
+                persistenceService, new ObjectMapper().findAndRegisterModules(), routing, historySize, maxSync, true);
+        service.init();
+        return service;
+    }
+
+    private static Message message(String content) {
+        Message message = new Message();
+        message.setSenderId("user-1");
+        message.setContent(content);
+        message.setType(Message.MessageType.TEXT);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        return message;
+    }
+}
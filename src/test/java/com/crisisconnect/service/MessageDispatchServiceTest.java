@@ -0,0 +1,148 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MessageDispatchServiceTest {
+
+    private final MessageBroadcastService broadcastService = mock(MessageBroadcastService.class);
+    private final SocketServerService socketServerService = mock(SocketServerService.class);
+    private final RelayService relayService = mock(RelayService.class);
+    private final ClusterService clusterService = mock(ClusterService.class);
+
+    @Test
+    public void testOfferTurnsAwayWithoutRememberingTheId() {
+        // Never started, so nothing drains the one-message lanes
+        MessageDispatchService dispatch = newService(true, 1);
+
+        assertThat(dispatch.offer(message("first"), MessageDispatchService.Origin.SOCKET))
+                .isEqualTo(MessageDispatchService.Admission.ACCEPTED);
+        assertThat(dispatch.offer(message("second"), MessageDispatchService.Origin.SOCKET))
+                .isEqualTo(MessageDispatchService.Admission.BUSY);
+        // Sent again by the device: still busy, not a duplicate
+        assertThat(dispatch.offer(message("second"), MessageDispatchService.Origin.SOCKET))
+                .isEqualTo(MessageDispatchService.Admission.BUSY);
+        assertThat(dispatch.offer(message("first"), MessageDispatchService.Origin.SOCKET))
+                .isEqualTo(MessageDispatchService.Admission.DUPLICATE);
+    }
+
+    @Test
+    public void testLocalNoticesOnlyReachStomp() {
+        MessageDispatchService dispatch = newService(false, 1);
+
+        dispatch.offer(message("notice"), MessageDispatchService.Origin.LOCAL);
+
+        verify(broadcastService).broadcastMessage(any(EncodedMessage.class));
+        verify(socketServerService, never()).broadcastMessage(any(EncodedMessage.class));
+        verify(relayService, never()).forward(any());
+        verify(clusterService, never()).replicate(any());
+    }
+
+    @Test
+    public void testEchoOfAnIdLessMessageIsADuplicate() {
+        MessageDispatchService dispatch = newService(false, 1);
+        Message fromDevice = message(null);
+
+        assertThat(dispatch.submit(fromDevice, MessageDispatchService.Origin.SOCKET)).isTrue();
+        verify(relayService).forward(fromDevice);
+
+        // The upstream sends the forwarded message back down the relay link, now with the id it was given
+        Message echo = message(fromDevice.getId());
+        assertThat(dispatch.offer(echo, MessageDispatchService.Origin.UPSTREAM))
+                .isEqualTo(MessageDispatchService.Admission.DUPLICATE);
+        verify(broadcastService, times(1)).broadcastMessage(any(EncodedMessage.class));
+    }
+
+    @Test
+    public void testCriticalLaneIsServedFirst() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // Aging far slower than the test, so only priority decides
+        MessageDispatchService dispatch = newService(registry, 60_000);
+
+        // Queued before the dispatcher starts, so every lane is full when it first picks one
+        dispatch.submit(message("low", Message.MessagePriority.LOW), MessageDispatchService.Origin.REST);
+        dispatch.submit(message("normal", Message.MessagePriority.NORMAL), MessageDispatchService.Origin.REST);
+        dispatch.submit(message("high", Message.MessagePriority.HIGH), MessageDispatchService.Origin.REST);
+        dispatch.submit(message("critical", Message.MessagePriority.CRITICAL), MessageDispatchService.Origin.REST);
+        Message emergency = message("emergency", Message.MessagePriority.LOW);
+        emergency.setType(Message.MessageType.EMERGENCY);
+        dispatch.submit(emergency, MessageDispatchService.Origin.REST);
+        dispatch.start();
+        dispatch.shutdown();
+
+        assertThat(dispatched()).containsExactly("critical", "emergency", "high", "normal", "low");
+        assertThat(latencyCount(registry, "critical")).isEqualTo(2);
+        assertThat(latencyCount(registry, "high")).isEqualTo(1);
+        assertThat(latencyCount(registry, "normal")).isEqualTo(1);
+        assertThat(latencyCount(registry, "low")).isEqualTo(1);
+    }
+
+    @Test
+    public void testAgedLowOvertakesNewerTrafficButNeverCritical() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageDispatchService dispatch = newService(registry, 20);
+
+        dispatch.submit(message("low", Message.MessagePriority.LOW), MessageDispatchService.Origin.REST);
+        // Well past the two aging steps that lift LOW to HIGH (and the cap that keeps it there)
+        Thread.sleep(200);
+        dispatch.submit(message("high", Message.MessagePriority.HIGH), MessageDispatchService.Origin.REST);
+        dispatch.submit(message("normal", Message.MessagePriority.NORMAL), MessageDispatchService.Origin.REST);
+        dispatch.submit(message("critical", Message.MessagePriority.CRITICAL), MessageDispatchService.Origin.REST);
+        dispatch.start();
+        dispatch.shutdown();
+
+        // LOW ties with HIGH and wins as the older head; NORMAL can at most tie with the older HIGH
+        assertThat(dispatched()).containsExactly("critical", "low", "high", "normal");
+        Timer low = registry.get("crisis.dispatch.latency").tag("lane", "low").timer();
+        assertThat(low.count()).isEqualTo(1);
+        assertThat(low.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(200);
+        assertThat(latencyCount(registry, "critical")).isEqualTo(1);
+    }
+
+    private List<String> dispatched() {
+        ArgumentCaptor<EncodedMessage> captor = ArgumentCaptor.forClass(EncodedMessage.class);
+        verify(broadcastService, atLeastOnce()).broadcastMessage(captor.capture());
+        return captor.getAllValues().stream().map(encoded -> encoded.getMessage().getContent()).toList();
+    }
+
+    private static long latencyCount(SimpleMeterRegistry registry, String lane) {
+        return registry.get("crisis.dispatch.latency").tag("lane", lane).timer().count();
+    }
+
+    private MessageDispatchService newService(boolean enabled, int laneCapacity) {
+        return new MessageDispatchService(broadcastService, socketServerService, relayService, clusterService,
+                new SimpleMeterRegistry(), enabled, laneCapacity, 200, 100);
+    }
+
+    private MessageDispatchService newService(SimpleMeterRegistry registry, long agingMs) {
+        return new MessageDispatchService(broadcastService, socketServerService, relayService, clusterService,
+                registry, true, 16, agingMs, 100);
+    }
+
+    private static Message message(String id) {
+        return message(id, Message.MessagePriority.NORMAL);
+    }
+
+    private static Message message(String id, Message.MessagePriority priority) {
+        Message message = new Message();
+        message.setId(id);
+        message.setContent(id);
+        message.setType(Message.MessageType.TEXT);
+        message.setPriority(priority);
+        return message;
+    }
+}
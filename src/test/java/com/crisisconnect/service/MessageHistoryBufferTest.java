@@ -0,0 +1,74 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageHistoryBufferTest {
+
+    @Test
+    public void testKeepsOnlyNewestEntriesOnceFull() {
+        MessageHistoryBuffer buffer = new MessageHistoryBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(message("m" + i));
+        }
+
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(buffer.latest(10)).extracting(Message::getContent).containsExactly("m2", "m3", "m4");
+        assertThat(buffer.latest(2)).extracting(Message::getContent).containsExactly("m3", "m4");
+    }
+
+    @Test
+    public void testClearHidesPreviousEntries() {
+        MessageHistoryBuffer buffer = new MessageHistoryBuffer(3);
+        buffer.append(message("m0"));
+        buffer.append(message("m1"));
+        buffer.clear();
+        buffer.append(message("m2"));
+
+        assertThat(buffer.size()).isEqualTo(1);
+        assertThat(buffer.latest(10)).extracting(Message::getContent).containsExactly("m2");
+    }
+
+    @Test
+    public void testRestoredEntriesAreFetchedOnlyWhenRead() {
+        List<Integer> fetched = new ArrayList<>();
+        List<Message> stored = new AbstractList<>() {
+            @Override
+            public Message get(int index) {
+                fetched.add(index);
+                return message("s" + index);
+            }
+
+            @Override
+            public int size() {
+                return 5;
+            }
+        };
+
+        MessageHistoryBuffer buffer = new MessageHistoryBuffer(4);
+        buffer.restore(10, stored);
+        assertThat(fetched).isEmpty();
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.nextSequence()).isEqualTo(15);
+
+        assertThat(buffer.latest(2)).extracting(Message::getContent).containsExactly("s3", "s4");
+        assertThat(buffer.latest(2)).extracting(Message::getSequence).containsExactly(13L, 14L);
+        assertThat(fetched).containsExactly(3, 4);
+
+        buffer.append(message("m0"));
+        assertThat(buffer.after(11)).extracting(Message::getContent).containsExactly("s2", "s3", "s4", "m0");
+        assertThat(fetched).containsExactly(3, 4, 2);
+    }
+
+    private static Message message(String content) {
+        Message message = new Message();
+        message.setContent(content);
+        return message;
+    }
+}
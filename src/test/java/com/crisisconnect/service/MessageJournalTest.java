@@ -0,0 +1,126 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    public void testRecoversAppendedMessagesAfterReopen() throws IOException {
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            journal.open();
+            journal.append(messages(0, 5));
+            List<Message> batch = messages(5, 10);
+            long expected = 0;
+            for (Message message : batch) {
+                expected += MessageJournal.HEADER_BYTES + objectMapper.writeValueAsBytes(message).length;
+            }
+            assertThat(journal.append(batch)).isEqualTo(expected);
+        }
+
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            List<Message> recovered = journal.open();
+            assertThat(recovered).extracting(Message::getContent)
+                    .containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9");
+        }
+    }
+
+    @Test
+    public void testTruncatesTornTailInsteadOfDroppingHistory() throws IOException {
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            journal.open();
+            journal.append(messages(0, 3));
+        }
+
+        // Simulate a crash halfway through writing the last record
+        Path segment = files().get(files().size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            assertThat(journal.open()).extracting(Message::getContent).containsExactly("m0", "m1");
+            journal.append(messages(3, 4));
+        }
+
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            assertThat(journal.open()).extracting(Message::getContent).containsExactly("m0", "m1", "m3");
+        }
+    }
+
+    @Test
+    public void testRollsSegmentsAndCompactsToRetainedRecords() throws IOException {
+        try (MessageJournal journal = newJournal(512, 10)) {
+            journal.open();
+            for (int i = 0; i < 25; i++) {
+                journal.append(messages(i, i + 1));
+            }
+        }
+
+        try (MessageJournal journal = newJournal(512, 10)) {
+            List<Message> recovered = journal.open();
+            assertThat(recovered.size()).isBetween(10, 20);
+            assertThat(recovered.get(recovered.size() - 1).getContent()).isEqualTo("m24");
+        }
+    }
+
+    @Test
+    public void testClearDropsAllRecords() throws IOException {
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            journal.open();
+            journal.append(messages(0, 3));
+            journal.clear();
+            journal.append(messages(3, 4));
+        }
+
+        try (MessageJournal journal = newJournal(1024 * 1024, 100)) {
+            assertThat(journal.open()).extracting(Message::getContent).containsExactly("m3");
+        }
+    }
+
+    private MessageJournal newJournal(long segmentBytes, int retained) {
+        return new MessageJournal(directory, objectMapper, segmentBytes, retained, true);
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(p -> p.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static List<Message> messages(int from, int to) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Message message = new Message();
+            message.setId("id-" + i);
+            message.setSenderId("user-1");
+            message.setSenderName("User 1");
+            message.setContent("m" + i);
+            message.setType(Message.MessageType.TEXT);
+            message.setPriority(Message.MessagePriority.NORMAL);
+            message.setTimestamp(LocalDateTime.now());
+            messages.add(message);
+        }
+        return messages;
+    }
+}
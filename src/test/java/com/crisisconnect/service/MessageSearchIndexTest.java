@@ -0,0 +1,131 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageSearchIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @Test
+    public void testMatchesTermsPrefixesPhrasesAndAlternatives() {
+        MessageSearchIndex index = new MessageSearchIndex(100);
+        add(index, 0, "Need insulin at Block C", Message.MessageType.EMERGENCY);
+        add(index, 1, "Water delivered to block A", Message.MessageType.TEXT);
+        add(index, 2, "Insulation panels for the shelter", Message.MessageType.TEXT);
+        add(index, 3, "c block is dry", Message.MessageType.TEXT);
+
+        assertThat(search(index, "insulin")).containsExactly(0L);
+        assertThat(search(index, "BLOCK")).containsExactly(3L, 1L, 0L);
+        assertThat(search(index, "insul*")).containsExactly(2L, 0L);
+        assertThat(search(index, "\"block c\"")).containsExactly(0L);
+        assertThat(search(index, "block water")).containsExactly(1L);
+        assertThat(search(index, "insulin OR shelter")).containsExactly(2L, 0L);
+        assertThat(search(index, "generator")).isEmpty();
+        // Sender names are indexed too
+        assertThat(search(index, "medic")).containsExactly(3L, 2L, 1L, 0L);
+    }
+
+    @Test
+    public void testFiltersByTypePriorityAndTime() {
+        MessageSearchIndex index = new MessageSearchIndex(100);
+        for (int i = 0; i < 10; i++) {
+            add(index, i, "report " + i, i % 2 == 0 ? Message.MessageType.EMERGENCY : Message.MessageType.TEXT);
+        }
+
+        MessageSearchIndex.Filter emergencies = MessageSearchIndex.Filter.of(
+                EnumSet.of(Message.MessageType.EMERGENCY), null, T0.plusMinutes(2), T0.plusMinutes(6));
+        MessageSearchIndex.Hits hits = index.search(MessageSearchIndex.Query.parse("report"), emergencies, 2);
+        assertThat(hits.sequences()).containsExactly(6L, 4L);
+        assertThat(hits.total()).isEqualTo(3);
+
+        MessageSearchIndex.Filter critical = MessageSearchIndex.Filter.of(null,
+                EnumSet.of(Message.MessagePriority.CRITICAL), null, null);
+        assertThat(index.search(MessageSearchIndex.Query.parse(""), critical, 50).total()).isZero();
+    }
+
+    @Test
+    public void testEvictedMessagesStopMatchingAndAreCompactedAway() {
+        MessageSearchIndex index = new MessageSearchIndex(10);
+        for (int i = 0; i < 35; i++) {
+            add(index, i, (i < 5 ? "early " : "later ") + "message", Message.MessageType.TEXT);
+        }
+
+        assertThat(search(index, "early")).isEmpty();
+        assertThat(search(index, "message")).hasSize(10).startsWith(34L).endsWith(25L);
+        assertThat(index.termCount()).isEqualTo(4); // later, message, medic, team
+
+        index.reset(35);
+        assertThat(search(index, "message")).isEmpty();
+        add(index, 35, "fresh message", Message.MessageType.TEXT);
+        assertThat(search(index, "message")).containsExactly(35L);
+    }
+
+    @Test
+    public void testMergesRestoredHistoryBehindLiveMessages() {
+        MessageSearchIndex index = new MessageSearchIndex(100);
+        index.reset(40);
+        long generation = index.generation();
+        add(index, 50, "live insulin request", Message.MessageType.TEXT);
+
+        List<Message> restored = new ArrayList<>();
+        for (int i = 40; i < 50; i++) {
+            restored.add(message(i, "restored insulin " + i, Message.MessageType.TEXT));
+        }
+        restored.set(3, null);
+        assertThat(index.addRestored(40, restored, generation)).isEqualTo(10);
+
+        assertThat(search(index, "insulin")).hasSize(10).startsWith(50L, 49L).endsWith(44L, 42L, 41L, 40L);
+        assertThat(search(index, "\"restored insulin\"")).hasSize(9).doesNotContain(50L);
+
+        MessageSearchIndex.Filter window = MessageSearchIndex.Filter.of(null, null, T0.plusMinutes(45), null);
+        assertThat(index.search(MessageSearchIndex.Query.parse("insulin"), window, 50).total()).isEqualTo(6);
+
+        // A restore that started before a clear is dropped
+        index.reset(51);
+        assertThat(index.addRestored(40, restored, generation)).isZero();
+        assertThat(search(index, "insulin")).isEmpty();
+
+        // Restored history alone, before anything new was broadcast, is searchable and filterable
+        MessageSearchIndex fresh = new MessageSearchIndex(100);
+        fresh.reset(40);
+        fresh.addRestored(40, restored, fresh.generation());
+        MessageSearchIndex.Filter late = MessageSearchIndex.Filter.of(null, null, T0.plusMinutes(48), null);
+        assertThat(fresh.search(MessageSearchIndex.Query.parse("insulin"), late, 50).sequences())
+                .containsExactly(49L, 48L);
+    }
+
+    @Test
+    public void testTokenizesOnNonLetterOrDigitCharacters() {
+        assertThat(MessageSearchIndex.tokenize("Block-C: 3 people, NEED água!"))
+                .containsExactly("block", "c", "3", "people", "need", "água");
+        assertThat(MessageSearchIndex.Query.parse("  \"\" OR * ").isEmpty()).isTrue();
+    }
+
+    private static List<Long> search(MessageSearchIndex index, String query) {
+        return index.search(MessageSearchIndex.Query.parse(query), MessageSearchIndex.Filter.NONE, 50).sequences();
+    }
+
+    private static void add(MessageSearchIndex index, long sequence, String content, Message.MessageType type) {
+        index.add(message(sequence, content, type));
+    }
+
+    private static Message message(long sequence, String content, Message.MessageType type) {
+        Message message = new Message();
+        message.setSequence(sequence);
+        message.setSenderId("user-1");
+        message.setSenderName("Medic Team");
+        message.setContent(content);
+        message.setType(type);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        message.setTimestamp(T0.plusMinutes(sequence));
+        return message;
+    }
+}
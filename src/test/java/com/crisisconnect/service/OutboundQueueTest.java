@@ -0,0 +1,86 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboundQueueTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void testDropsLowestPriorityBeforeCritical() {
+        OutboundQueue queue = newQueue(3, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+        queue.offer(frame("critical-1", 3, "a"));
+        queue.offer(frame("low-1", 0, "b"));
+        queue.offer(frame("normal-1", 1, "c"));
+
+        assertThat(queue.offer(frame("critical-2", 3, "d"))).isTrue();
+        // A new LOW frame loses against everything already queued
+        assertThat(queue.offer(frame("low-2", 0, "e"))).isTrue();
+
+        assertThat(drain(queue)).containsExactly("critical-1", "normal-1", "critical-2");
+        assertThat(registry.counter("dropped").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCoalescesSameSenderAndType() {
+        OutboundQueue queue = newQueue(2, OutboundQueue.OverflowPolicy.COALESCE);
+        queue.offer(frame("location-1", 1, "alice/LOCATION"));
+        queue.offer(frame("text-1", 1, "bob/TEXT"));
+
+        assertThat(queue.offer(frame("location-2", 1, "alice/LOCATION"))).isTrue();
+
+        assertThat(drain(queue)).containsExactly("text-1", "location-2");
+    }
+
+    @Test
+    public void testNeverCoalescesChat() {
+        OutboundQueue queue = newQueue(2, OutboundQueue.OverflowPolicy.COALESCE);
+        queue.offer(OutboundFrame.of("text-1".getBytes(), message("alice", Message.MessageType.TEXT)));
+        queue.offer(OutboundFrame.of("location-1".getBytes(), message("bob", Message.MessageType.LOCATION)));
+
+        // Same sender and type as text-1, but chat is never superseded: the oldest frame goes instead
+        queue.offer(OutboundFrame.of("text-2".getBytes(), message("alice", Message.MessageType.TEXT)));
+
+        assertThat(drain(queue)).containsExactly("location-1", "text-2");
+        assertThat(registry.counter("dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDisconnectPolicyRejectsOverflow() {
+        OutboundQueue queue = newQueue(1, OutboundQueue.OverflowPolicy.DISCONNECT);
+        assertThat(queue.offer(frame("m1", 1, "a"))).isTrue();
+        assertThat(queue.offer(frame("m2", 3, "b"))).isFalse();
+    }
+
+    private OutboundQueue newQueue(int capacity, OutboundQueue.OverflowPolicy policy) {
+        return new OutboundQueue(capacity, policy, registry.timer("lag"), registry.counter("dropped"));
+    }
+
+    private static OutboundFrame frame(String body, int rank, String key) {
+        return new OutboundFrame(body.getBytes(), rank, key, body, System.nanoTime());
+    }
+
+    private static Message message(String senderId, Message.MessageType type) {
+        Message message = new Message();
+        message.setSenderId(senderId);
+        message.setType(type);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        return message;
+    }
+
+    private static List<String> drain(OutboundQueue queue) {
+        List<String> bodies = new ArrayList<>();
+        OutboundFrame frame;
+        while ((frame = queue.poll()) != null) {
+            bodies.add(new String(frame.bytes()));
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,166 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class RelayServiceTest {
+
+    @TempDir
+    Path dataDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final MessageDispatchService dispatchService = mock(MessageDispatchService.class);
+    private RelayService relay;
+
+    @AfterEach
+    public void tearDown() {
+        if (relay != null) {
+            relay.stop();
+        }
+    }
+
+    @Test
+    public void testQueuesWhileUpstreamIsDownAndDrainsInOrderAfterRestart() throws Exception {
+        int port = freePort();
+
+        relay = newRelay(port);
+        relay.start();
+        for (int i = 0; i < 5; i++) {
+            relay.forward(message("SENDER", "m" + i));
+        }
+        assertThat(relay.getOutboxDepth()).isEqualTo(5);
+        relay.stop();
+
+        // The outbox survives a restart of the relay itself
+        relay = newRelay(port);
+        relay.start();
+        assertThat(relay.getOutboxDepth()).isEqualTo(5);
+
+        try (ServerSocket upstream = new ServerSocket(port);
+             Socket link = upstream.accept()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(link.getOutputStream(), true, StandardCharsets.UTF_8);
+            assertThat(in.readLine()).isEqualTo("RELAY b1 9001");
+            for (int i = 0; i < 5; i++) {
+                Message queued = objectMapper.readValue(in.readLine(), Message.class);
+                assertThat(queued.getContent()).isEqualTo("m" + i);
+                out.println("ACK " + queued.getId());
+            }
+
+            relay.forward(message("SENDER", "live"));
+            Message live = objectMapper.readValue(in.readLine(), Message.class);
+            assertThat(live.getContent()).isEqualTo("live");
+            out.println("ACK " + live.getId());
+            awaitOutboxDepth(0);
+            assertThat(relay.getUpstream()).isNotNull();
+        }
+    }
+
+    @Test
+    public void testSendsUnacknowledgedMessagesAgainOnTheNextLink() throws Exception {
+        int port = freePort();
+        try (ServerSocket upstream = new ServerSocket(port)) {
+            relay = newRelay(port);
+            relay.start();
+            try (Socket link = upstream.accept()) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(link.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(link.getOutputStream(), true, StandardCharsets.UTF_8);
+                assertThat(in.readLine()).startsWith("RELAY");
+                relay.forward(message("SENDER", "acked"));
+                relay.forward(message("SENDER", "lost"));
+                out.println("ACK " + objectMapper.readValue(in.readLine(), Message.class).getId());
+                // Written to the socket, but the upstream dies before confirming it
+                assertThat(objectMapper.readValue(in.readLine(), Message.class).getContent()).isEqualTo("lost");
+                awaitOutboxDepth(1);
+            }
+
+            try (Socket link = upstream.accept()) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(link.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(link.getOutputStream(), true, StandardCharsets.UTF_8);
+                assertThat(in.readLine()).startsWith("RELAY");
+                Message again = objectMapper.readValue(in.readLine(), Message.class);
+                assertThat(again.getContent()).isEqualTo("lost");
+                out.println("BUSY " + again.getId());
+                // Turned away: sent once more on the same link
+                assertThat(objectMapper.readValue(in.readLine(), Message.class).getId()).isEqualTo(again.getId());
+                out.println("ACK " + again.getId());
+                awaitOutboxDepth(0);
+            }
+        }
+    }
+
+    @Test
+    public void testDispatchesUpstreamMessagesWithoutServerNotices() throws Exception {
+        int port = freePort();
+        try (ServerSocket upstream = new ServerSocket(port)) {
+            relay = newRelay(port);
+            relay.start();
+            try (Socket link = upstream.accept()) {
+                PrintWriter out = new PrintWriter(link.getOutputStream(), true, StandardCharsets.UTF_8);
+                out.println(objectMapper.writeValueAsString(message("SYSTEM", "Connected to CrisisConnect.")));
+                out.println(objectMapper.writeValueAsString(message("hub-user", "from hub")));
+
+                verify(dispatchService, timeout(2000))
+                        .submit(argThat(m -> "from hub".equals(m.getContent())), eq(MessageDispatchService.Origin.UPSTREAM));
+                verify(dispatchService, never()).submit(argThat(m -> "SYSTEM".equals(m.getSenderId())), any());
+            }
+        }
+    }
+
+    private void awaitOutboxDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (relay.getOutboxDepth() != depth && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(relay.getOutboxDepth()).isEqualTo(depth);
+    }
+
+    private RelayService newRelay(int port) {
+        return new RelayService(dispatchService, objectMapper, new SimpleMeterRegistry(), "127.0.0.1", port, "b1",
+                9001, 16, 50, 1000, dataDir.toString());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Message message(String senderId, String content) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID().toString());
+        message.setSenderId(senderId);
+        message.setSenderName(senderId);
+        message.setContent(content);
+        message.setType(Message.MessageType.TEXT);
+        message.setPriority(Message.MessagePriority.NORMAL);
+        return message;
+    }
+}
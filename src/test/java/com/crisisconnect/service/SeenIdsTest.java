@@ -0,0 +1,50 @@
+package com.crisisconnect.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SeenIdsTest {
+
+    @Test
+    public void testRejectsRepeatsWhileRemembered() {
+        SeenIds seen = new SeenIds(3);
+
+        assertThat(seen.add("a")).isTrue();
+        assertThat(seen.add("b")).isTrue();
+        assertThat(seen.add("a")).isFalse();
+    }
+
+    @Test
+    public void testForgetsOldestIdOnceFull() {
+        SeenIds seen = new SeenIds(3);
+        seen.add("a");
+        seen.add("b");
+        seen.add("c");
+        seen.add("d");
+
+        assertThat(seen.size()).isEqualTo(3);
+        assertThat(seen.contains("a")).isFalse();
+        assertThat(seen.contains("d")).isTrue();
+        assertThat(seen.add("a")).isTrue();
+    }
+
+    @Test
+    public void testForgottenIdAddedAgainOutlivesItsOldSlot() {
+        SeenIds seen = new SeenIds(3);
+        seen.add("a");
+        seen.forget("a");
+        seen.add("b");
+        assertThat(seen.add("a")).isTrue();
+
+        // Wraps around to the slot "a" had first
+        seen.add("c");
+        assertThat(seen.contains("a")).isTrue();
+        seen.add("d");
+        assertThat(seen.add("a")).isFalse();
+
+        // Its own slot comes round
+        seen.add("e");
+        assertThat(seen.contains("a")).isFalse();
+    }
+}
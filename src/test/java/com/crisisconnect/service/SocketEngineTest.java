@@ -0,0 +1,187 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The same loopback checks against every engine, through a handler that keeps the connection map the way
+ * {@link SocketServerService} does.
+ */
+public class SocketEngineTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RecordingHandler handler = new RecordingHandler();
+    private SocketEngine engine;
+    private int port;
+
+    static Stream<Supplier<SocketEngine>> engines() {
+        return Stream.of(NioSocketEngine::new, ThreadPerConnectionSocketEngine::platformThreads);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void testLineSplitAcrossReads(Supplier<SocketEngine> factory) throws Exception {
+        try (Socket device = connect(factory)) {
+            OutputStream out = device.getOutputStream();
+            out.write("NAME al".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // Long enough for the first half to be read on its own
+            Thread.sleep(100);
+            out.write("ice\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertThat(handler.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("NAME alice");
+            assertThat(handler.lines).isEmpty();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void testSeveralLinesInOneRead(Supplier<SocketEngine> factory) throws Exception {
+        try (Socket device = connect(factory)) {
+            device.getOutputStream().write("one\ntwo\r\nthree\n".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(handler.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("one");
+            assertThat(handler.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("two");
+            assertThat(handler.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("three");
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void testDrainsABacklogLargerThanTheSocketBuffers(Supplier<SocketEngine> factory) throws Exception {
+        int frames = 4000;
+        String padding = "x".repeat(1024);
+        // Queued the moment the device connects, before it reads anything
+        handler.onOpen = connection -> {
+            for (int i = 0; i < frames; i++) {
+                connection.send(OutboundFrame.control((i + " " + padding + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+        };
+
+        try (Socket device = connect(factory)) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(device.getInputStream(), StandardCharsets.UTF_8));
+            // Let the server run into a full send buffer first
+            Thread.sleep(200);
+            for (int i = 0; i < frames; i++) {
+                assertThat(in.readLine()).isEqualTo(i + " " + padding);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void testClosesAreReportedOnceAndLeaveNoConnections(Supplier<SocketEngine> factory) throws Exception {
+        Socket first = connect(factory);
+        Socket second = new Socket(InetAddress.getLoopbackAddress(), port);
+        awaitConnections(2);
+
+        // Closed by the device
+        first.close();
+        awaitConnections(1);
+
+        // Closed by the server: the device sees the end of the stream
+        ClientConnection remaining = handler.active.values().iterator().next();
+        remaining.close();
+        remaining.close();
+        assertThat(second.getInputStream().read()).isEqualTo(-1);
+        second.close();
+        awaitConnections(0);
+        assertThat(handler.opened.get()).isEqualTo(2);
+        assertThat(handler.closed.get()).isEqualTo(2);
+    }
+
+    private Socket connect(Supplier<SocketEngine> factory) throws Exception {
+        port = freePort();
+        engine = factory.get();
+        engine.start(port, handler);
+        Socket device = new Socket(InetAddress.getLoopbackAddress(), port);
+        awaitConnections(1);
+        return device;
+    }
+
+    private void awaitConnections(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handler.active.size() != count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(handler.active).hasSize(count);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private class RecordingHandler implements ConnectionHandler {
+        final Map<String, ClientConnection> active = new ConcurrentHashMap<>();
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        volatile Consumer<ClientConnection> onOpen = connection -> { };
+
+        @Override
+        public OutboundQueue newOutboundQueue() {
+            return new OutboundQueue(10_000, OutboundQueue.OverflowPolicy.DROP_OLDEST, registry.timer("lag"),
+                    registry.counter("dropped"));
+        }
+
+        @Override
+        public void onOpen(ClientConnection connection) {
+            opened.incrementAndGet();
+            active.put(connection.getClientId(), connection);
+            onOpen.accept(connection);
+        }
+
+        @Override
+        public void onLine(ClientConnection connection, String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public void onMessage(ClientConnection connection, Message message) {
+        }
+
+        @Override
+        public void onSendFailure(ClientConnection connection, SendFailure failure) {
+        }
+
+        @Override
+        public void onClose(ClientConnection connection) {
+            closed.incrementAndGet();
+            active.remove(connection.getClientId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpatialGridIndexTest {
+
+    private final SpatialGridIndex index = new SpatialGridIndex(0.01);
+    private final List<StatusEntry> entries = new ArrayList<>();
+
+    @Test
+    public void testQueriesMatchAFullScan() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StatusEntry entry = entry("user-" + i, 23.6 + random.nextDouble() * 0.4, 90.2 + random.nextDouble() * 0.4);
+            entry.setStatus(i % 7 == 0 ? "CRITICAL" : "SAFE");
+            entries.add(entry);
+            index.put(entry);
+        }
+
+        double lat = 23.81;
+        double lon = 90.41;
+        List<String> expectedRadius = entries.stream()
+                .filter(e -> SpatialGridIndex.distanceKm(lat, lon, e) <= 3 && e.getStatus().equals("CRITICAL"))
+                .sorted(Comparator.comparingDouble(e -> SpatialGridIndex.distanceKm(lat, lon, e)))
+                .map(StatusEntry::getUserId).toList();
+        assertThat(index.withinRadius(lat, lon, 3, e -> e.getStatus().equals("CRITICAL")))
+                .extracting(StatusEntry::getUserId).containsExactlyElementsOf(expectedRadius);
+
+        List<String> expectedBox = entries.stream()
+                .filter(e -> e.getLatitude() >= 23.7 && e.getLatitude() <= 23.75
+                        && e.getLongitude() >= 90.3 && e.getLongitude() <= 90.32)
+                .map(StatusEntry::getUserId).toList();
+        assertThat(index.withinBox(23.7, 90.3, 23.75, 90.32, e -> true))
+                .extracting(StatusEntry::getUserId).containsExactlyInAnyOrderElementsOf(expectedBox);
+
+        List<String> expectedNearest = entries.stream()
+                .sorted(Comparator.comparingDouble(e -> SpatialGridIndex.distanceKm(lat, lon, e)))
+                .limit(25).map(StatusEntry::getUserId).toList();
+        assertThat(index.nearest(lat, lon, 25, e -> true))
+                .extracting(StatusEntry::getUserId).containsExactlyElementsOf(expectedNearest);
+
+        // A point far outside the populated area falls back to scanning occupied cells
+        assertThat(index.nearest(-33.9, 18.4, 3, e -> true)).hasSize(3);
+    }
+
+    @Test
+    public void testMovesAndRemovals() {
+        StatusEntry first = entry("a", 23.80, 90.40);
+        index.put(first);
+        index.put(entry("a", 24.90, 91.80));
+        assertThat(index.withinRadius(23.80, 90.40, 1, e -> true)).isEmpty();
+        assertThat(index.nearest(24.90, 91.80, 5, e -> true)).extracting(StatusEntry::getUserId).containsExactly("a");
+
+        // No coordinates any more
+        index.put(entry("a", null, null));
+        assertThat(index.size()).isZero();
+        assertThat(index.nearest(24.90, 91.80, 5, e -> true)).isEmpty();
+    }
+
+    private static StatusEntry entry(String userId, Double latitude, Double longitude) {
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setStatus("SAFE");
+        entry.setLatitude(latitude);
+        entry.setLongitude(longitude);
+        return entry;
+    }
+}
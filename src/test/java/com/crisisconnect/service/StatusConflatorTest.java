@@ -0,0 +1,114 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatusConflatorTest {
+
+    private static final int USERS = 1000;
+
+    private final List<Object> frames = new ArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+        frames.add(message.getPayload());
+        return true;
+    });
+    // Flushed by hand below instead of by the background thread; only the batched frames
+    private final StatusService statusService = new StatusService(template, registry, 0.01, 250, false);
+
+    @Test
+    public void testHeartbeatsAreConflatedIntoOneFramePerWindow() {
+        for (int beat = 0; beat < 10; beat++) {
+            for (int user = 0; user < USERS; user++) {
+                StatusEntry entry = entry("user-" + user, "SAFE");
+                entry.setBatteryLevel(100 - beat);
+                statusService.updateStatus(entry);
+            }
+        }
+        assertThat(frames).isEmpty();
+
+        flush();
+        assertThat(frames).hasSize(1);
+        assertThat(registry.get("crisis.status.updates").counter().count()).isEqualTo(10 * USERS);
+        assertThat(registry.get("crisis.status.frames").tag("trigger", "window").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUrgentTransitionsBypassTheWindow() {
+        statusService.updateStatus(entry("a", "SAFE"));
+        statusService.updateStatus(entry("a", "CRITICAL"));
+        assertThat(frames).hasSize(1);
+
+        // Staying CRITICAL is a heartbeat again; the superseded SAFE entry never goes out
+        statusService.updateStatus(entry("a", "CRITICAL"));
+        assertThat(frames).hasSize(1);
+        flush();
+        assertThat(frames).hasSize(2);
+        flush();
+        assertThat(frames).hasSize(2);
+    }
+
+    @Test
+    public void testRemovalDropsPendingUpdate() {
+        statusService.updateStatus(entry("a", "SAFE"));
+        statusService.removeStatus("a");
+        flush();
+        // Only the removal notice
+        assertThat(frames).hasSize(1);
+    }
+
+    @Test
+    public void testHeartbeatThatLostTheRaceIsDropped() {
+        StatusEntry heartbeat = entry("a", "SAFE");
+        statusService.updateStatus(heartbeat);
+        statusService.updateStatus(entry("a", "CRITICAL"));
+        assertThat(frames).hasSize(1);
+
+        // The older entry reaches the conflator only after the urgent one went out
+        publisher().submit(heartbeat, false);
+        flush();
+        assertThat(frames).hasSize(1);
+    }
+
+    @Test
+    public void testSingleEntryFramesKeepTheirShape() {
+        List<String> destinations = new ArrayList<>();
+        List<Object> payloads = new ArrayList<>();
+        StatusService singles = new StatusService(new SimpMessagingTemplate((message, timeout) -> {
+            destinations.add(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            payloads.add(message.getPayload());
+            return true;
+        }), registry, 0.01, 0, true);
+
+        singles.updateStatus(entry("a", "SAFE"));
+        assertThat(destinations).containsExactly(StatusConflator.BATCH_DESTINATION,
+                StatusConflator.STATUS_DESTINATION);
+        assertThat(payloads.get(0)).isInstanceOf(List.class);
+        assertThat(payloads.get(1)).isInstanceOf(StatusEntry.class);
+    }
+
+    private StatusConflator publisher() {
+        return (StatusConflator) ReflectionTestUtils.getField(statusService, "publisher");
+    }
+
+    private void flush() {
+        publisher().flush();
+    }
+
+    private static StatusEntry entry(String userId, String status) {
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setUserName("User " + userId);
+        entry.setStatus(status);
+        return entry;
+    }
+}
@@ -0,0 +1,123 @@
+package com.crisisconnect.service;
+
+import com.crisisconnect.model.StatusEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatusServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StatusService statusService = new StatusService(new SimpMessagingTemplate((message, timeout) -> true),
+            meterRegistry, 0.01, 0, true);
+
+    @Test
+    public void testCountersFollowStatusTransitions() {
+        statusService.updateStatus(entry("a", "SAFE"));
+        statusService.updateStatus(entry("b", "CRITICAL"));
+        statusService.updateStatus(entry("c", "NEED_HELP"));
+        assertThat(statusService.getActiveUserCount()).isEqualTo(3);
+        assertThat(statusService.getCriticalUserCount()).isEqualTo(2);
+
+        // b recovers, c's only session drops
+        statusService.updateStatus(entry("b", "SAFE"));
+        statusService.registerSession("session-c", "c");
+        statusService.handleDisconnect("session-c");
+        assertThat(statusService.getStatus("c").getStatus()).isEqualTo("OFFLINE");
+        assertThat(statusService.getActiveUserCount()).isEqualTo(2);
+        assertThat(statusService.getCriticalUserCount()).isZero();
+
+        statusService.removeStatus("c");
+        statusService.removeStatus("a");
+        long version = statusService.getVersion();
+        statusService.removeStatus("missing");
+        assertThat(statusService.getVersion()).isEqualTo(version);
+        assertThat(statusService.getActiveUserCount()).isEqualTo(1);
+        assertThat(statusService.getCriticalUserCount()).isZero();
+    }
+
+    @Test
+    public void testBoardSizeByStatusAndUpdateSourcesAreMetered() {
+        statusService.updateStatus(entry("a", "SAFE"));
+        statusService.updateStatus(entry("b", "CRITICAL"), StatusService.UpdateSource.STOMP);
+        statusService.updateStatus(entry("c", "TRAPPED"));
+        statusService.updateStatus(entry("b", "SAFE"), StatusService.UpdateSource.STOMP);
+
+        assertThat(boardGauge("safe")).isEqualTo(2);
+        assertThat(boardGauge("critical")).isZero();
+        assertThat(boardGauge("other")).isEqualTo(1);
+        assertThat(meterRegistry.get("crisis.ingest.status").tag("source", "rest").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("crisis.ingest.status").tag("source", "stomp").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRemoteEntriesMergeByLatestTimestamp() {
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+        assertThat(statusService.mergeRemote(entry("a", "SAFE", t0.plusSeconds(10)))).isTrue();
+        assertThat(statusService.mergeRemote(entry("a", "CRITICAL", t0))).isFalse();
+        assertThat(statusService.getStatus("a").getStatus()).isEqualTo("SAFE");
+
+        // Same timestamp on two nodes: both pick the same winner
+        assertThat(statusService.mergeRemote(entry("a", "INJURED", t0.plusSeconds(10)))).isFalse();
+        assertThat(statusService.mergeRemote(entry("a", "TRAPPED", t0.plusSeconds(10)))).isTrue();
+        assertThat(statusService.getCriticalUserCount()).isZero();
+        assertThat(statusService.getActiveUserCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemovalWinsOverOlderUpdates() {
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+        statusService.mergeRemote(entry("a", "SAFE", t0));
+
+        assertThat(statusService.mergeRemoval("a", t0.plusSeconds(5))).isTrue();
+        assertThat(statusService.mergeRemote(entry("a", "SAFE", t0.plusSeconds(1)))).isFalse();
+        assertThat(statusService.getStatus("a")).isNull();
+
+        assertThat(statusService.mergeRemote(entry("a", "NEED_HELP", t0.plusSeconds(6)))).isTrue();
+        assertThat(statusService.getCriticalUserCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStreamsBoardInUserIdPages() {
+        for (String userId : List.of("d", "a", "c", "b", "e")) {
+            statusService.updateStatus(entry(userId, "SAFE"));
+        }
+        statusService.removeStatus("c");
+
+        assertThat(userIds(statusService.streamStatuses(null, 2))).containsExactly("a", "b");
+        assertThat(userIds(statusService.streamStatuses("b", 2))).containsExactly("d", "e");
+        assertThat(userIds(statusService.streamStatuses("e", 2))).isEmpty();
+        assertThat(userIds(statusService.streamStatuses(null, Long.MAX_VALUE))).containsExactly("a", "b", "d", "e");
+    }
+
+    private static List<String> userIds(Iterator<StatusEntry> entries) {
+        List<String> userIds = new ArrayList<>();
+        entries.forEachRemaining(entry -> userIds.add(entry.getUserId()));
+        return userIds;
+    }
+
+    private double boardGauge(String status) {
+        return meterRegistry.get("crisis.status.users").tag("status", status).gauge().value();
+    }
+
+    private static StatusEntry entry(String userId, String status, LocalDateTime timestamp) {
+        StatusEntry entry = entry(userId, status);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+
+    private static StatusEntry entry(String userId, String status) {
+        StatusEntry entry = new StatusEntry();
+        entry.setUserId(userId);
+        entry.setUserName("User " + userId);
+        entry.setStatus(status);
+        return entry;
+    }
+}